@@ -65,8 +65,86 @@
  * ═══════════════════════════════════════════════════════════════════════════════════════
  */
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToIntFunction;
+import java.util.stream.Stream;
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
 public class UT5_ClasesObjetosCompleto {
     public static void main(String[] args) {
+        // ? Reflexión frente a accesores con un millón de registros: java UT5_ClasesObjetosCompleto --rendimiento-accesores
+        if (args.length == 1 && args[0].equals("--rendimiento-accesores")) {
+            medirAccesores(1_000_000);
+            return;
+        }
         
         // ═══════════════════════════════════════════════════════════════════════════════
         // * 📌 EJEMPLO 1: CREACIÓN DE OBJETOS Y USO DE CONSTRUCTORES
@@ -234,6 +312,363 @@ public class UT5_ClasesObjetosCompleto {
         
         System.out.println("\nTotal de libros en el sistema: " + Libro.getTotalLibros());
         
+        // ! Reservas: si el libro está prestado, se espera turno en una cola FIFO
+        libro2.prestar();
+        Libro.Reserva reservaAna = libro2.reservar("Ana");
+        Libro.Reserva reservaLuis = libro2.reservar("Luis");
+        libro2.devolver();  // Pasa directamente a Ana
+        System.out.println(reservaAna + " | " + reservaLuis);
+        
+        
+        // ═══════════════════════════════════════════════════════════════════════════════
+        // * 📌 EJEMPLO 11: JERARQUÍA UNIVERSITARIA CON TOTALES ACUMULADOS
+        // ═══════════════════════════════════════════════════════════════════════════════
+        
+        System.out.println("\n╔═══════════════════════════════════════════════════════════╗");
+        System.out.println("║  EJEMPLO 11: Jerarquía Universitaria (Clases Estáticas)  ║");
+        System.out.println("╚═══════════════════════════════════════════════════════════╝\n");
+        
+        JerarquiaUniversitaria upm = new JerarquiaUniversitaria("Universidad Politécnica");
+        JerarquiaUniversitaria.Facultad informatica = upm.agregarFacultad("Informática");
+        JerarquiaUniversitaria.Curso daw = informatica.agregarCurso("DAW");
+        daw.matricular(estudiante1, 120.0);
+        daw.matricular(estudiante3, 95.5);
+        daw.asignarProfesor(profesor1);
+        informatica.agregarCurso("ASIR").matricular(estudiante2, 110.0);
+        
+        // * Los totales se leen en O(1) en cualquier nivel
+        System.out.println(daw);
+        System.out.println(informatica);
+        System.out.println(upm);
+        
+        
+        // ═══════════════════════════════════════════════════════════════════════════════
+        // * 📌 EJEMPLO 12: ÍNDICE DE PROFESORES POR UBICACIÓN
+        // ═══════════════════════════════════════════════════════════════════════════════
+        
+        System.out.println("\n╔═══════════════════════════════════════════════════════════╗");
+        System.out.println("║  EJEMPLO 12: Índice por Código Postal y Ciudad           ║");
+        System.out.println("╚═══════════════════════════════════════════════════════════╝\n");
+        
+        IndiceUbicacionProfesores indiceUbicacion = new IndiceUbicacionProfesores();
+        indiceUbicacion.agregar(profesor1);
+        indiceUbicacion.agregar(new Profesor("Dra. López", "Bases de Datos",
+                new Direccion("Gran Vía", 45, "Madrid", "28080")));
+        indiceUbicacion.agregar(new Profesor("Dr. Puig", "Redes",
+                new Direccion("Diagonal", 300, "Barcelona", "08029")));
+        
+        System.out.println("CP 28013: " + indiceUbicacion.buscarPorCodigoPostal("28013").size() + " profesor(es)");
+        System.out.println("Provincia 28: " + indiceUbicacion.contarPorPrefijoCodigoPostal("28") + " profesor(es)");
+        for (Profesor p : indiceUbicacion.buscarPorCiudad("Barcelona")) {
+            System.out.println("En Barcelona: " + p.getNombre());
+        }
+        
+        
+        // ═══════════════════════════════════════════════════════════════════════════════
+        // * 📌 EJEMPLO 13: ÍNDICE DE EDADES (CONSULTAS POR RANGO)
+        // ═══════════════════════════════════════════════════════════════════════════════
+        
+        System.out.println("\n╔═══════════════════════════════════════════════════════════╗");
+        System.out.println("║  EJEMPLO 13: Índice de Edades (Árbol de Fenwick)         ║");
+        System.out.println("╚═══════════════════════════════════════════════════════════╝\n");
+        
+        IndiceEdades indiceEdades = new IndiceEdades();
+        indiceEdades.agregar(estudiante1);
+        indiceEdades.agregar(estudiante2);
+        indiceEdades.agregar(estudiante3);
+        System.out.println("Estudiantes de 18 a 25 años: " + indiceEdades.contar(18, 25));
+        
+        // ! El índice se actualiza solo al cambiar la edad
+        estudiante3.setEdad(30);
+        System.out.println("Tras cumplir años, de 18 a 25: " + indiceEdades.contar(18, 25));
+        System.out.println("Mayores de 25: " + indiceEdades.listar(26, Estudiante.EDAD_MAXIMA));
+        indiceEdades.cerrar();
+        
+        
+        // ═══════════════════════════════════════════════════════════════════════════════
+        // * 📌 EJEMPLO 14: CLASIFICACIÓN POR NOTA MEDIA (TOP-K)
+        // ═══════════════════════════════════════════════════════════════════════════════
+        
+        System.out.println("\n╔═══════════════════════════════════════════════════════════╗");
+        System.out.println("║  EJEMPLO 14: Clasificación Top-K por Nota Media          ║");
+        System.out.println("╚═══════════════════════════════════════════════════════════╝\n");
+        
+        ClasificacionNotas clasificacion = new ClasificacionNotas();
+        estudiante1.setNotaMedia(7.5);
+        estudiante2.setNotaMedia(8.25);
+        clasificacion.agregar(estudiante1);
+        clasificacion.agregar(estudiante2);
+        clasificacion.agregar(estudiante3);
+        System.out.println("🏆 Top 2 global: " + clasificacion.top(2));
+        
+        // ! Se actualiza al vuelo con cada nueva nota
+        estudiante1.setNotaMedia(9.0);
+        System.out.println("🏆 Top 1 de DAW: " + clasificacion.topCurso("DAW", 1));
+        clasificacion.cerrar();
+        
+        
+        // ═══════════════════════════════════════════════════════════════════════════════
+        // * 📌 EJEMPLO 15: REGISTRO DE SESIONES DE ESTUDIO
+        // ═══════════════════════════════════════════════════════════════════════════════
+        
+        System.out.println("\n╔═══════════════════════════════════════════════════════════╗");
+        System.out.println("║  EJEMPLO 15: Registro de Sesiones de Estudio             ║");
+        System.out.println("╚═══════════════════════════════════════════════════════════╝\n");
+        
+        RegistroSesionesEstudio sesiones = new RegistroSesionesEstudio(1024);
+        sesiones.escuchar();
+        estudiante1.estudiar("Java", 2);
+        estudiante3.estudiar("Java", 3);
+        estudiante3.estudiar("SQL", 1);
+        sesiones.cerrar();
+        
+        long ahora = System.currentTimeMillis();
+        long haceUnaHora = ahora - 3_600_000L;
+        System.out.println("Horas de Java (última hora): " + sesiones.horasAsignatura("Java", haceUnaHora, ahora + 1));
+        System.out.println("Horas de María (hoy): " + sesiones.horasAlumno(estudiante3, haceUnaHora, ahora + 1));
+        System.out.println("Últimas sesiones: " + sesiones.sesionesRecientes(2));
+        
+        
+        // ═══════════════════════════════════════════════════════════════════════════════
+        // * 📌 EJEMPLO 16: VENCIMIENTO DE PRÉSTAMOS (RUEDA DE TIEMPO)
+        // ═══════════════════════════════════════════════════════════════════════════════
+        
+        System.out.println("\n╔═══════════════════════════════════════════════════════════╗");
+        System.out.println("║  EJEMPLO 16: Vencimiento de Préstamos (Timing Wheel)     ║");
+        System.out.println("╚═══════════════════════════════════════════════════════════╝\n");
+        
+        // ? Reloj simulado: cada tick es un día y el préstamo dura 14 días
+        long[] relojSimulado = {0};
+        long unDia = 86_400_000L;
+        PlanificadorVencimientos vencimientos = new PlanificadorVencimientos(unDia, 14 * unDia,
+                () -> relojSimulado[0],
+                lote -> System.out.println("⏰ Préstamos vencidos: " + lote.size()));
+        vencimientos.escuchar();
+        Libro libro3 = new Libro("Refactoring", "Martin Fowler", "978-0134757599", 448);
+        libro1.prestar();
+        libro3.prestar();
+        relojSimulado[0] = 7 * unDia;
+        libro3.devolver();  // Cancela su vencimiento
+        relojSimulado[0] = 20 * unDia;
+        vencimientos.avanzar();  // Solo vence libro1
+        vencimientos.cerrar();
+        libro1.devolver();
+        
+        
+        // ═══════════════════════════════════════════════════════════════════════════════
+        // * 📌 EJEMPLO 17: SERVIDOR DE BIBLIOTECA NO BLOQUEANTE (NIO)
+        // ═══════════════════════════════════════════════════════════════════════════════
+        
+        System.out.println("\n╔═══════════════════════════════════════════════════════════╗");
+        System.out.println("║  EJEMPLO 17: Servidor de Biblioteca en localhost (NIO)   ║");
+        System.out.println("╚═══════════════════════════════════════════════════════════╝\n");
+        
+        ServidorBiblioteca servidorBiblioteca = new ServidorBiblioteca(2);
+        servidorBiblioteca.registrar(libro1);
+        servidorBiblioteca.registrar(libro3);
+        try {
+            int puerto = servidorBiblioteca.iniciar(0);
+            try (SocketChannel cliente = SocketChannel.open(new InetSocketAddress(InetAddress.getLoopbackAddress(), puerto))) {
+                // ! Pipelining: enviamos 4 órdenes seguidas y luego leemos las 4 respuestas
+                String ordenes = "PRESTAR " + libro3.getIsbn() + "\nPRESTAR " + libro3.getIsbn()
+                        + "\nCONSULTAR " + libro3.getIsbn() + "\nCONTAR\n";
+                cliente.write(ByteBuffer.wrap(ordenes.getBytes(StandardCharsets.UTF_8)));
+                ByteBuffer respuesta = ByteBuffer.allocate(1024);
+                int lineas = 0;
+                while (lineas < 4 && cliente.read(respuesta) >= 0) {
+                    lineas = 0;
+                    for (int i = 0; i < respuesta.position(); i++) {
+                        if (respuesta.get(i) == '\n') lineas++;
+                    }
+                }
+                System.out.print("🌐 Respuestas:\n" + new String(respuesta.array(), 0, respuesta.position(), StandardCharsets.UTF_8));
+            }
+            servidorBiblioteca.detener();
+        } catch (IOException e) {
+            System.out.println("⚠️ Error de red: " + e.getMessage());
+        }
+        
+        
+        // ═══════════════════════════════════════════════════════════════════════════════
+        // * 📌 EJEMPLO 18: ORDENACIÓN EXTERNA DE EXPEDIENTES
+        // ═══════════════════════════════════════════════════════════════════════════════
+        
+        System.out.println("\n╔═══════════════════════════════════════════════════════════╗");
+        System.out.println("║  EJEMPLO 18: Ordenación Externa (Tramos + Mezcla K-way)  ║");
+        System.out.println("╚═══════════════════════════════════════════════════════════╝\n");
+        
+        // ? 300.000 expedientes generados al vuelo: nunca están todos en memoria a la vez
+        String[] cursosDemo = {"DAW", "DAM", "ASIR", "SMR"};
+        Random azar = new Random(42);
+        Iterator<OrdenacionExterna.Registro> expedientes = new Iterator<>() {
+            private int generados = 0;
+            
+            @Override
+            public boolean hasNext() {
+                return generados < 300_000;
+            }
+            
+            @Override
+            public OrdenacionExterna.Registro next() {
+                generados++;
+                return new OrdenacionExterna.Registro("Alumno " + azar.nextInt(1_000_000), 16 + azar.nextInt(30),
+                        cursosDemo[azar.nextInt(cursosDemo.length)], azar.nextInt(101) / 10.0);
+            }
+        };
+        OrdenacionExterna ordenacion = new OrdenacionExterna(OrdenacionExterna.POR_CURSO_NOTA_NOMBRE, 25_000, 4, 8);
+        List<OrdenacionExterna.Registro> primeros = new ArrayList<>();
+        OrdenacionExterna.Registro[] anterior = new OrdenacionExterna.Registro[1];
+        boolean[] enOrden = {true};
+        try {
+            long ordenados = ordenacion.ordenar(expedientes, r -> {
+                if (anterior[0] != null && OrdenacionExterna.POR_CURSO_NOTA_NOMBRE.compare(anterior[0], r) > 0) {
+                    enOrden[0] = false;
+                }
+                anterior[0] = r;
+                if (primeros.size() < 3) primeros.add(r);
+            });
+            System.out.println("🗂️ " + ordenados + " expedientes en " + ordenacion.getTramosGenerados()
+                    + " tramos, orden correcto: " + enOrden[0]);
+            System.out.println("Primeros: " + primeros);
+            System.out.println("Último:   " + anterior[0]);
+        } catch (IOException e) {
+            System.out.println("⚠️ Error al ordenar: " + e.getMessage());
+        }
+        
+        
+        // ═══════════════════════════════════════════════════════════════════════════════
+        // * 📌 EJEMPLO 19: INFORME POR CURSO EN PARALELO (GROUP BY)
+        // ═══════════════════════════════════════════════════════════════════════════════
+        
+        System.out.println("\n╔═══════════════════════════════════════════════════════════╗");
+        System.out.println("║  EJEMPLO 19: Informe por Curso en Paralelo (Group By)    ║");
+        System.out.println("╚═══════════════════════════════════════════════════════════╝\n");
+        
+        // ? 200.000 filas en formato columnar (un array por atributo)
+        int filasDemo = 200_000;
+        int[] columnaCurso = new int[filasDemo];  // ? Cursos codificados, como en Estudiante
+        int[] columnaEdad = new int[filasDemo];
+        double[] columnaNota = new double[filasDemo];
+        for (int i = 0; i < filasDemo; i++) {
+            columnaCurso[i] = DiccionarioCadenas.CURSOS.codificar(cursosDemo[azar.nextInt(cursosDemo.length)]);
+            columnaEdad[i] = 16 + azar.nextInt(30);
+            columnaNota[i] = azar.nextInt(101) / 10.0;
+        }
+        AgregacionPorCurso agregacion = new AgregacionPorCurso(Runtime.getRuntime().availableProcessors(), 64);
+        try {
+            Map<String, AgregacionPorCurso.Resumen> informe =
+                    agregacion.agrupar(AgregacionPorCurso.Filas.de(columnaCurso, columnaEdad, columnaNota));
+            informe.forEach((curso, resumen) -> System.out.println("📊 " + curso + ": " + resumen
+                    + ", alumnos de 18 años: " + resumen.getAlumnosConEdad(18)));
+            
+            // ! La misma consulta sobre objetos Estudiante
+            System.out.println("📊 Demo: " + agregacion.agrupar(
+                    AgregacionPorCurso.Filas.de(Arrays.asList(estudiante1, estudiante2, estudiante3))));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        
+        
+        // ═══════════════════════════════════════════════════════════════════════════════
+        // * 📌 EJEMPLO 20: INTERCAMBIO EN JSON SIN REFLEXIÓN
+        // ═══════════════════════════════════════════════════════════════════════════════
+        
+        System.out.println("\n╔═══════════════════════════════════════════════════════════╗");
+        System.out.println("║  EJEMPLO 20: Intercambio en JSON (Codecs sin Reflexión)  ║");
+        System.out.println("╚═══════════════════════════════════════════════════════════╝\n");
+        
+        try {
+            ByteArrayOutputStream jsonProfesores = new ByteArrayOutputStream();
+            CodecProfesor codecProfesor = new CodecProfesor();
+            codecProfesor.escribirTodos(List.of(profesor1), new EscritorJson(Channels.newChannel(jsonProfesores), 4096));
+            System.out.println("🔤 " + jsonProfesores.toString(StandardCharsets.UTF_8));
+            
+            ByteArrayOutputStream jsonLibros = new ByteArrayOutputStream();
+            CodecLibro codecLibro = new CodecLibro();
+            codecLibro.escribirTodos(List.of(libro1, libro3), new EscritorJson(Channels.newChannel(jsonLibros), 4096));
+            System.out.println("🔤 " + jsonLibros.toString(StandardCharsets.UTF_8));
+            
+            // ! Lectura incremental: cada libro llega al consumidor en cuanto se decodifica
+            codecLibro.leerTodos(new LectorJson(Channels.newChannel(new ByteArrayInputStream(jsonLibros.toByteArray())), 4096),
+                    libro -> System.out.println("📥 " + libro));
+        } catch (IOException e) {
+            System.out.println("⚠️ Error de JSON: " + e.getMessage());
+        }
+        
+        
+        // ═══════════════════════════════════════════════════════════════════════════════
+        // * 📌 EJEMPLO 21: ACCESORES GENERADOS (ORDENAR Y PROYECTAR POR NOMBRE)
+        // ═══════════════════════════════════════════════════════════════════════════════
+        
+        System.out.println("\n╔═══════════════════════════════════════════════════════════╗");
+        System.out.println("║  EJEMPLO 21: Accesores Generados (Ordenar por Nombre)    ║");
+        System.out.println("╚═══════════════════════════════════════════════════════════╝\n");
+        
+        RegistroAccesores.Accesores<Estudiante> accesoresEstudiante = RegistroAccesores.de(Estudiante.class);
+        System.out.println("🔑 Campos de Estudiante: " + accesoresEstudiante.campos());
+        for (Estudiante e : accesoresEstudiante.ordenar(List.of(estudiante1, estudiante2, estudiante3), "notaMedia")) {
+            System.out.println("   " + e.getNombre() + " → " + e.getNotaMedia());
+        }
+        RegistroAccesores.Accesores<Libro> accesoresLibro = RegistroAccesores.de(Libro.class);
+        System.out.println("🔑 Libro.titulo: " + accesoresLibro.proyectar(List.of(libro1, libro2, libro3), "titulo"));
+        System.out.println("🔑 Libros por páginas: " + accesoresLibro.proyectar(
+                accesoresLibro.ordenar(List.of(libro1, libro2, libro3), "numeroPaginas"), "isbn"));
+        
+        // ? Reflexión (Method.invoke) frente a accesor generado y llamada directa: --rendimiento-accesores
+        
+        
+        // ═══════════════════════════════════════════════════════════════════════════════
+        // * 📌 EJEMPLO 22: DICCIONARIO DE CADENAS (CÓDIGOS EN LUGAR DE TEXTO)
+        // ═══════════════════════════════════════════════════════════════════════════════
+        
+        System.out.println("\n╔═══════════════════════════════════════════════════════════╗");
+        System.out.println("║  EJEMPLO 22: Diccionario de Cadenas (Códigos int)        ║");
+        System.out.println("╚═══════════════════════════════════════════════════════════╝\n");
+        
+        // ? Simula una carga desde fichero: cada fila trae su propia copia del texto
+        String[][] ubicacionesDemo = {{"Madrid", "28001"}, {"Sevilla", "41001"}, {"Valencia", "46001"}, {"Madrid", "28080"}};
+        List<Direccion> direccionesCargadas = new ArrayList<>();
+        for (int i = 0; i < 200_000; i++) {
+            String[] ubicacion = ubicacionesDemo[i % ubicacionesDemo.length];
+            direccionesCargadas.add(new Direccion("Calle " + i, i % 200, new String(ubicacion[0]), new String(ubicacion[1])));
+        }
+        System.out.println("🔢 " + DiccionarioCadenas.CIUDADES + " | " + DiccionarioCadenas.CODIGOS_POSTALES);
+        Direccion primera = direccionesCargadas.get(0);
+        Direccion otraMadrid = direccionesCargadas.get(199_996);
+        System.out.println("🔢 " + primera.getCiudad() + " = " + otraMadrid.getCiudad() + " → código "
+                + primera.getCodigoCiudad() + ", misma instancia de texto: " + (primera.getCiudad() == otraMadrid.getCiudad()));
+        System.out.println("🔢 Curso de " + estudiante1.getNombre() + ": " + estudiante1.getCurso()
+                + " (código " + estudiante1.getCodigoCurso() + ")");
+        
+        
+        // ═══════════════════════════════════════════════════════════════════════════════
+        // * 📌 EJEMPLO 23: ALMACÉN DE ESTUDIANTES FUERA DEL HEAP
+        // ═══════════════════════════════════════════════════════════════════════════════
+        
+        System.out.println("\n╔═══════════════════════════════════════════════════════════╗");
+        System.out.println("║  EJEMPLO 23: Almacén Fuera del Heap (Vistas Flyweight)   ║");
+        System.out.println("╚═══════════════════════════════════════════════════════════╝\n");
+        
+        // ! La memoria directa tiene su propio límite (-XX:MaxDirectMemorySize, por defecto = -Xmx)
+        AlmacenEstudiantesOffHeap almacen = new AlmacenEstudiantesOffHeap();
+        for (int i = 0; i < 1_000_000; i++) {
+            almacen.agregar("Alumno" + i, 16 + i % 30, cursosDemo[i % cursosDemo.length], (i % 101) / 10.0);
+        }
+        // ? En el heap solo quedan los arrays de losas: unas decenas de referencias
+        System.out.printf("🧱 %d fichas en %d MB de memoria directa%n", almacen.tamano(), almacen.bytesReservados() >> 20);
+        System.out.printf("🧱 Nota media de %s (recorrido secuencial): %.2f%n", cursosDemo[0], almacen.notaMediaDelCurso(cursosDemo[0]));
+        
+        // ? La vista valida igual que Estudiante
+        AlmacenEstudiantesOffHeap.Vista ficha = almacen.vista(almacen.agregar(estudiante1));
+        ficha.setEdad(150);
+        ficha.setNotaMedia(7.5);
+        System.out.println("🧱 " + ficha);
+        
+        // ? Un nombre más corto se sobrescribe en su sitio; uno más largo deja un hueco
+        for (int i = 0; i < 100_000; i++) almacen.vista(i).setNombre("Alumno con apellidos " + i);
+        System.out.printf("🧱 Tras 100000 renombrados: %d KB desperdiciados, compactar libera %d MB%n",
+                almacen.bytesTextoDesperdiciados() >> 10, almacen.compactar() >> 20);
+        
         
         // ═══════════════════════════════════════════════════════════════════════════════
         // * 🎯 EJERCICIOS PROPUESTOS PARA EL ALUMNO
@@ -278,6 +713,47 @@ public class UT5_ClasesObjetosCompleto {
     private static void modificarEstudiante(Estudiante estudiante) {
         estudiante.setNombre("Nombre Cambiado en Método");
     }
+    
+    // ═══════════════════════════════════════════════════════════════════════════════
+    // * 🔧 MÉTODO AUXILIAR: Medición de accesores
+    // ═══════════════════════════════════════════════════════════════════════════════
+    
+    /**
+     * * Lee la nota de 'n' registros por reflexión, con el accesor generado y con el getter.
+     * * Tres rondas: solo se imprime la última, con el JIT ya caliente.
+     * 
+     * @param n Número de registros
+     */
+    private static void medirAccesores(int n) {
+        List<OrdenacionExterna.Registro> registrosAccesores = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            registrosAccesores.add(new OrdenacionExterna.Registro("Alumno" + i, 16 + i % 30, "DAW", (i % 101) / 10.0));
+        }
+        ToDoubleFunction<OrdenacionExterna.Registro> nota =
+                RegistroAccesores.de(OrdenacionExterna.Registro.class).comoDouble("notaMedia");
+        try {
+            Method getterReflexivo = OrdenacionExterna.Registro.class.getMethod("getNotaMedia");
+            for (int ronda = 0; ronda < 3; ronda++) {
+                long t0 = System.nanoTime();
+                double sumaReflexion = 0;
+                for (OrdenacionExterna.Registro r : registrosAccesores) sumaReflexion += (Double) getterReflexivo.invoke(r);
+                long t1 = System.nanoTime();
+                double sumaAccesor = 0;
+                for (OrdenacionExterna.Registro r : registrosAccesores) sumaAccesor += nota.applyAsDouble(r);
+                long t2 = System.nanoTime();
+                double sumaDirecta = 0;
+                for (OrdenacionExterna.Registro r : registrosAccesores) sumaDirecta += r.getNotaMedia();
+                long t3 = System.nanoTime();
+                if (ronda == 2) {
+                    System.out.printf("⏱️ %d lecturas: reflexión %.1f ms | accesor %.1f ms | directa %.1f ms (sumas %s)%n",
+                            n, (t1 - t0) / 1e6, (t2 - t1) / 1e6, (t3 - t2) / 1e6,
+                            sumaReflexion == sumaAccesor && sumaAccesor == sumaDirecta ? "iguales" : "distintas");
+                }
+            }
+        } catch (ReflectiveOperationException e) {
+            System.out.println("⚠️ Error de reflexión: " + e.getMessage());
+        }
+    }
 }
 
 
@@ -300,16 +776,17 @@ public class UT5_ClasesObjetosCompleto {
  * ? - Sobrecarga de métodos
  * ? - Métodos toString() y equals()
  */
-class Estudiante {
+class Estudiante implements FichaEstudiante {
     
     // ═══════════════════════════════════════════════════════════════════════════════
     // * 🔒 ATRIBUTOS PRIVADOS (ENCAPSULACIÓN)
     // ═══════════════════════════════════════════════════════════════════════════════
     
     // ! Atributos de instancia (cada objeto tiene sus propios valores)
+    private final int expediente;  // ? Identificador estable (el nombre puede cambiar)
     private String nombre;
     private int edad;
-    private String curso;
+    private int codigoCurso;     // ? Código en DiccionarioCadenas.CURSOS (se repiten mucho)
     private double notaMedia;
     
     // ═══════════════════════════════════════════════════════════════════════════════
@@ -319,6 +796,13 @@ class Estudiante {
     // ! Variable estática: compartida por todas las instancias de la clase
     private static int totalEstudiantes = 0;
     
+    // ? Contador atómico de expedientes: dos hilos que crean estudiantes no repiten número
+    private static final AtomicInteger SIGUIENTE_EXPEDIENTE = new AtomicInteger();
+    
+    // ! Observadores de cambios (índices que deben seguir a los setters)
+    // ? Copy-on-write: cada setter recorre la lista sin bloquear
+    private static final List<ObservadorEstudiante> OBSERVADORES = new CopyOnWriteArrayList<>();
+    
     // ! Constantes: valores que no cambian (final)
     public static final int EDAD_MINIMA = 16;
     public static final int EDAD_MAXIMA = 120;
@@ -337,9 +821,10 @@ class Estudiante {
      * @param curso Curso en el que está matriculado
      */
     public Estudiante(String nombre, int edad, String curso) {
+        this.expediente = SIGUIENTE_EXPEDIENTE.incrementAndGet();
         this.nombre = nombre;
         setEdad(edad);  // * Usar setter para validación
-        this.curso = curso;
+        this.codigoCurso = DiccionarioCadenas.CURSOS.codificar(curso);
         this.notaMedia = 0.0;
         totalEstudiantes++;  // * Incrementar contador estático
         System.out.println("✅ Estudiante creado (Constructor completo)");
@@ -368,6 +853,14 @@ class Estudiante {
     // * 📖 GETTERS (Métodos de acceso a los atributos)
     // ═══════════════════════════════════════════════════════════════════════════════
     
+    /**
+     * ? Obtener el número de expediente (no cambia durante la vida del objeto)
+     * @return El expediente del estudiante
+     */
+    public int getExpediente() {
+        return expediente;
+    }
+    
     /**
      * ? Obtener el nombre del estudiante
      * @return El nombre del estudiante
@@ -389,7 +882,12 @@ class Estudiante {
      * @return El curso del estudiante
      */
     public String getCurso() {
-        return curso;
+        return DiccionarioCadenas.CURSOS.decodificar(codigoCurso);
+    }
+    
+    // ? Código del curso: igualdad y agrupación sin comparar textos
+    int getCodigoCurso() {
+        return codigoCurso;
     }
     
     /**
@@ -409,10 +907,14 @@ class Estudiante {
      * @param nombre El nuevo nombre (no puede estar vacío)
      */
     public void setNombre(String nombre) {
+        EventoSetterEstudiante evento = new EventoSetterEstudiante();
+        evento.begin();
         if (nombre != null && !nombre.trim().isEmpty()) {
             this.nombre = nombre;
+            evento.finalizar(this, "setNombre", "OK");
         } else {
             System.out.println("⚠️ El nombre no puede estar vacío");
+            evento.finalizar(this, "setNombre", "INVALIDO");
         }
     }
     
@@ -421,12 +923,22 @@ class Estudiante {
      * @param edad La nueva edad (debe estar entre EDAD_MINIMA y EDAD_MAXIMA)
      */
     public void setEdad(int edad) {
+        EventoSetterEstudiante evento = new EventoSetterEstudiante();
+        evento.begin();
+        int anterior = this.edad;
+        String resultado = "OK";
         if (edad >= EDAD_MINIMA && edad <= EDAD_MAXIMA) {
             this.edad = edad;
         } else {
             System.out.println("⚠️ Edad inválida. Debe estar entre " + EDAD_MINIMA + " y " + EDAD_MAXIMA);
             this.edad = EDAD_MINIMA;  // * Valor por defecto
+            resultado = "CORREGIDO";
         }
+        // ? anterior == 0 solo ocurre dentro del constructor: nadie sigue aún a este objeto
+        if (anterior != 0 && anterior != this.edad) {
+            for (ObservadorEstudiante o : OBSERVADORES) o.edadCambiada(this, anterior);
+        }
+        evento.finalizar(this, "setEdad", resultado);
     }
     
     /**
@@ -434,11 +946,21 @@ class Estudiante {
      * @param curso El nuevo curso
      */
     public void setCurso(String curso) {
+        EventoSetterEstudiante evento = new EventoSetterEstudiante();
+        evento.begin();
+        int anterior = this.codigoCurso;
+        String resultado = "OK";
         if (curso != null && !curso.trim().isEmpty()) {
-            this.curso = curso;
+            this.codigoCurso = DiccionarioCadenas.CURSOS.codificar(curso);
         } else {
-            this.curso = "Sin asignar";
+            this.codigoCurso = DiccionarioCadenas.CURSOS.codificar("Sin asignar");
+            resultado = "CORREGIDO";
         }
+        if (this.codigoCurso != anterior) {
+            String cursoAnterior = DiccionarioCadenas.CURSOS.decodificar(anterior);
+            for (ObservadorEstudiante o : OBSERVADORES) o.cursoCambiado(this, cursoAnterior);
+        }
+        evento.finalizar(this, "setCurso", resultado);
     }
     
     /**
@@ -446,10 +968,18 @@ class Estudiante {
      * @param notaMedia La nueva nota media (debe estar entre 0 y 10)
      */
     public void setNotaMedia(double notaMedia) {
+        EventoSetterEstudiante evento = new EventoSetterEstudiante();
+        evento.begin();
         if (notaMedia >= NOTA_MINIMA && notaMedia <= NOTA_MAXIMA) {
+            double anterior = this.notaMedia;
             this.notaMedia = notaMedia;
+            if (anterior != notaMedia) {
+                for (ObservadorEstudiante o : OBSERVADORES) o.notaCambiada(this, anterior);
+            }
+            evento.finalizar(this, "setNotaMedia", "OK");
         } else {
             System.out.println("⚠️ Nota inválida. Debe estar entre " + NOTA_MINIMA + " y " + NOTA_MAXIMA);
+            evento.finalizar(this, "setNotaMedia", "INVALIDO");
         }
     }
     
@@ -466,7 +996,7 @@ class Estudiante {
         System.out.println("├─────────────────────────────────────────┤");
         System.out.println("│  Nombre:     " + nombre);
         System.out.println("│  Edad:       " + edad + " años");
-        System.out.println("│  Curso:      " + curso);
+        System.out.println("│  Curso:      " + getCurso());
         System.out.println("│  Nota Media: " + notaMedia);
         System.out.println("└─────────────────────────────────────────┘");
     }
@@ -497,6 +1027,7 @@ class Estudiante {
      */
     public void estudiar(String asignatura, int horas) {
         System.out.println("📚 " + nombre + " estudió " + asignatura + " durante " + horas + " hora(s)");
+        for (ObservadorEstudiante o : OBSERVADORES) o.sesionEstudio(this, asignatura, horas);
     }
     
     // ═══════════════════════════════════════════════════════════════════════════════
@@ -511,6 +1042,22 @@ class Estudiante {
         return totalEstudiantes;
     }
     
+    /**
+     * ? Registrar un observador que será avisado en cada cambio de los setters
+     * @param observador El observador (por ejemplo, un índice)
+     */
+    public static void registrarObservador(ObservadorEstudiante observador) {
+        OBSERVADORES.add(observador);
+    }
+    
+    /**
+     * ? Dejar de avisar a un observador
+     * @param observador El observador a eliminar
+     */
+    public static void eliminarObservador(ObservadorEstudiante observador) {
+        OBSERVADORES.remove(observador);
+    }
+    
     // ═══════════════════════════════════════════════════════════════════════════════
     // * 🔍 MÉTODOS ESPECIALES: toString() y equals()
     // ═══════════════════════════════════════════════════════════════════════════════
@@ -525,7 +1072,7 @@ class Estudiante {
         return "Estudiante{" +
                "nombre='" + nombre + '\'' +
                ", edad=" + edad +
-               ", curso='" + curso + '\'' +
+               ", curso='" + getCurso() + '\'' +
                ", notaMedia=" + notaMedia +
                '}';
     }
@@ -547,8 +1094,113 @@ class Estudiante {
         // ! Convertir a Estudiante y comparar atributos
         Estudiante otro = (Estudiante) obj;
         return edad == otro.edad &&
-               nombre.equals(otro.nombre) &&
-               curso.equals(otro.curso);
+               codigoCurso == otro.codigoCurso &&
+               nombre.equals(otro.nombre);
+    }
+}
+
+/**
+ * * Observador de cambios en Estudiante
+ * ? Métodos default: cada observador implementa solo los cambios que le interesan
+ */
+interface ObservadorEstudiante {
+    default void edadCambiada(Estudiante estudiante, int anterior) {}
+    default void cursoCambiado(Estudiante estudiante, String anterior) {}
+    default void notaCambiada(Estudiante estudiante, double anterior) {}
+    default void sesionEstudio(Estudiante estudiante, String asignatura, int horas) {}
+}
+
+/**
+ * * Contrato de datos de un estudiante (getters y setters con validación)
+ * ? Lo cumplen Estudiante y las vistas de AlmacenEstudiantesOffHeap
+ */
+interface FichaEstudiante {
+    String getNombre();
+    int getEdad();
+    String getCurso();
+    double getNotaMedia();
+    void setNombre(String nombre);
+    void setEdad(int edad);
+    void setCurso(String curso);
+    void setNotaMedia(double notaMedia);
+}
+
+
+// ═══════════════════════════════════════════════════════════════════════════════════════
+// ║                                                                                       ║
+// ║                 🔢 CLASE: DICCIONARIO DE CADENAS (CÓDIGOS INT)                        ║
+// ║                                                                                       ║
+// ═══════════════════════════════════════════════════════════════════════════════════════
+
+/**
+ * * Codificación por diccionario para atributos con pocos valores distintos
+ * 
+ * ? Curso, especialidad, ciudad y código postal se repiten en millones de objetos.
+ * ? Cada objeto guarda solo un int; el texto vive una única vez en el diccionario.
+ * ? Comparar dos objetos es comparar dos int, y agrupar puede indexar arrays por código.
+ * ? Al decodificar siempre se devuelve la misma instancia de String (canónica).
+ * 
+ * ! Solo crece: los códigos nunca se reutilizan. Lecturas sin bloqueo; las altas
+ * ! nuevas se serializan con el monitor del diccionario.
+ */
+final class DiccionarioCadenas {
+    public static final int SIN_VALOR = -1;     // ? Código de null
+    
+    public static final DiccionarioCadenas CURSOS = new DiccionarioCadenas("cursos");
+    public static final DiccionarioCadenas ESPECIALIDADES = new DiccionarioCadenas("especialidades");
+    public static final DiccionarioCadenas CIUDADES = new DiccionarioCadenas("ciudades");
+    public static final DiccionarioCadenas CODIGOS_POSTALES = new DiccionarioCadenas("códigos postales");
+    
+    private final String nombre;
+    private final ConcurrentHashMap<String, Integer> codigos = new ConcurrentHashMap<>();
+    // ! Se publica (volatile) después de escribir el nuevo valor: quien ve un código ve su texto
+    private volatile String[] valores = new String[16];
+    private int tamano;
+    
+    DiccionarioCadenas(String nombre) {
+        this.nombre = nombre;
+    }
+    
+    /**
+     * * Código del valor, dándolo de alta si es nuevo
+     */
+    public int codificar(String valor) {
+        if (valor == null) return SIN_VALOR;
+        Integer codigo = codigos.get(valor);
+        return codigo != null ? codigo : alta(valor);
+    }
+    
+    /**
+     * ? Código del valor sin darlo de alta (SIN_VALOR si no existe): para búsquedas
+     */
+    public int buscar(String valor) {
+        if (valor == null) return SIN_VALOR;
+        Integer codigo = codigos.get(valor);
+        return codigo != null ? codigo : SIN_VALOR;
+    }
+    
+    public String decodificar(int codigo) {
+        return codigo == SIN_VALOR ? null : valores[codigo];
+    }
+    
+    public int tamano() {
+        return codigos.size();
+    }
+    
+    private synchronized int alta(String valor) {
+        Integer existente = codigos.get(valor);
+        if (existente != null) return existente;
+        String[] actuales = valores;
+        if (tamano == actuales.length) actuales = Arrays.copyOf(actuales, tamano * 2);
+        actuales[tamano] = valor;
+        valores = actuales;
+        codigos.put(valor, tamano);
+        return tamano++;
+    }
+    
+    @Override
+    public String toString() {
+        return "Diccionario de " + nombre + " (" + tamano() + " valores)";
     }
 }
 
@@ -565,8 +1217,9 @@ class Estudiante {
 class Direccion {
     private String calle;
     private int numero;
-    private String ciudad;
-    private String codigoPostal;
+    // ? Ciudad y código postal como códigos de diccionario (muchos profesores comparten valores)
+    private int codigoCiudad;
+    private int codigoCp;
     
     /**
      * ! Constructor de Direccion
@@ -574,8 +1227,8 @@ class Direccion {
     public Direccion(String calle, int numero, String ciudad, String codigoPostal) {
         this.calle = calle;
         this.numero = numero;
-        this.ciudad = ciudad;
-        this.codigoPostal = codigoPostal;
+        this.codigoCiudad = DiccionarioCadenas.CIUDADES.codificar(ciudad);
+        this.codigoCp = DiccionarioCadenas.CODIGOS_POSTALES.codificar(codigoPostal);
     }
     
     /**
@@ -583,14 +1236,18 @@ class Direccion {
      * @return La dirección completa
      */
     public String getDireccionCompleta() {
-        return calle + " " + numero + ", " + ciudad + " (" + codigoPostal + ")";
+        return calle + " " + numero + ", " + getCiudad() + " (" + getCodigoPostal() + ")";
     }
     
     // * Getters básicos
     public String getCalle() { return calle; }
     public int getNumero() { return numero; }
-    public String getCiudad() { return ciudad; }
-    public String getCodigoPostal() { return codigoPostal; }
+    public String getCiudad() { return DiccionarioCadenas.CIUDADES.decodificar(codigoCiudad); }
+    public String getCodigoPostal() { return DiccionarioCadenas.CODIGOS_POSTALES.decodificar(codigoCp); }
+    
+    // ? Códigos de diccionario: comparar ubicaciones sin comparar textos
+    int getCodigoCiudad() { return codigoCiudad; }
+    int getCodigoCp() { return codigoCp; }
     
     @Override
     public String toString() {
@@ -611,7 +1268,7 @@ class Direccion {
  */
 class Profesor {
     private String nombre;
-    private String especialidad;
+    private int codigoEspecialidad;  // ? Código en DiccionarioCadenas.ESPECIALIDADES
     private Direccion direccion;  // ! Composición: Profesor tiene una Direccion
     
     /**
@@ -619,7 +1276,7 @@ class Profesor {
      */
     public Profesor(String nombre, String especialidad, Direccion direccion) {
         this.nombre = nombre;
-        this.especialidad = especialidad;
+        this.codigoEspecialidad = DiccionarioCadenas.ESPECIALIDADES.codificar(especialidad);
         this.direccion = direccion;
     }
     
@@ -631,138 +1288,3549 @@ class Profesor {
         System.out.println("│  👨‍🏫 INFORMACIÓN DEL PROFESOR           │");
         System.out.println("├─────────────────────────────────────────┤");
         System.out.println("│  Nombre:       " + nombre);
-        System.out.println("│  Especialidad: " + especialidad);
+        System.out.println("│  Especialidad: " + getEspecialidad());
         System.out.println("│  Dirección:    " + direccion.getDireccionCompleta());
         System.out.println("└─────────────────────────────────────────┘");
     }
     
     // * Getters
     public String getNombre() { return nombre; }
-    public String getEspecialidad() { return especialidad; }
+    public String getEspecialidad() { return DiccionarioCadenas.ESPECIALIDADES.decodificar(codigoEspecialidad); }
+    int getCodigoEspecialidad() { return codigoEspecialidad; }
     public Direccion getDireccion() { return direccion; }
 }
 
 
 // ═══════════════════════════════════════════════════════════════════════════════════════
 // ║                                                                                       ║
-// ║                    🏫 CLASE: UNIVERSIDAD (CON CLASE ANIDADA)                         ║
+// ║                   🎂 CLASE: INDICE DE EDADES (ÁRBOL DE FENWICK)                       ║
 // ║                                                                                       ║
 // ═══════════════════════════════════════════════════════════════════════════════════════
 
 /**
- * * Clase Universidad que contiene una clase anidada (Inner Class)
+ * * Índice de estudiantes por edad para consultas de rango ("de 18 a 25 años")
+ * 
+ * ? Las edades están acotadas por EDAD_MINIMA y EDAD_MAXIMA, así que basta con
+ * ? un cubo por edad (105 cubos) y un árbol de Fenwick sobre sus tamaños:
+ * ?   - contar(desde, hasta): O(log rango) sin recorrer estudiantes
+ * ?   - listar(desde, hasta): recorre solo los cubos del rango
+ * 
+ * ! Se registra como ObservadorEstudiante: setEdad mueve al estudiante de cubo.
+ * ! Usa identidad (IdentityHashMap) porque Estudiante redefine equals() sin hashCode().
+ * ! El índice recuerda en qué cubo puso a cada estudiante y lo lleva a su edad ACTUAL,
+ * ! sin fiarse de la 'anterior' del aviso: con dos setEdad concurrentes los avisos
+ * ! pueden llegar desordenados, pero el último en ejecutarse ve la edad definitiva.
  */
-class Universidad {
-    private String nombre;
+class IndiceEdades implements ObservadorEstudiante {
+    private static final int NUMERO_EDADES = Estudiante.EDAD_MAXIMA - Estudiante.EDAD_MINIMA + 1;
     
-    public Universidad(String nombre) {
-        this.nombre = nombre;
+    // ? Cubo y posición de un estudiante dentro del índice
+    private static final class Ubicacion {
+        int edad;
+        int posicion;
+    }
+    
+    private final Estudiante[][] cubos = new Estudiante[NUMERO_EDADES][];
+    private final int[] tamanos = new int[NUMERO_EDADES];
+    private final int[] fenwick = new int[NUMERO_EDADES + 1];  // * Índices 1..NUMERO_EDADES
+    private final Map<Estudiante, Ubicacion> posiciones = new IdentityHashMap<>();
+    
+    public IndiceEdades() {
+        for (int i = 0; i < NUMERO_EDADES; i++) {
+            cubos[i] = new Estudiante[4];
+        }
+        Estudiante.registrarObservador(this);
     }
     
     /**
-     * ! CLASE ANIDADA (INNER CLASS)
-     * * Una clase dentro de otra clase
-     * * Tiene acceso a los miembros de la clase externa
+     * * Dejar de seguir los cambios de edad
      */
-    class Facultad {
-        private String nombreFacultad;
-        private int numeroEstudiantes;
-        
-        public Facultad(String nombreFacultad, int numeroEstudiantes) {
-            this.nombreFacultad = nombreFacultad;
-            this.numeroEstudiantes = numeroEstudiantes;
-        }
-        
-        public void mostrarInfo() {
-            // * Puede acceder a los atributos de la clase externa (Universidad)
-            System.out.println("📍 Facultad: " + nombreFacultad);
-            System.out.println("📍 Universidad: " + nombre);  // ! Accede a 'nombre' de Universidad
-            System.out.println("📍 Estudiantes: " + numeroEstudiantes);
-        }
+    public void cerrar() {
+        Estudiante.eliminarObservador(this);
     }
-}
-
-
-// ═══════════════════════════════════════════════════════════════════════════════════════
-// ║                                                                                       ║
-// ║                         📚 CLASE: LIBRO (EJEMPLO COMPLETO)                           ║
-// ║                                                                                       ║
-// ═══════════════════════════════════════════════════════════════════════════════════════
-
-/**
- * * Clase Libro que representa un libro en una biblioteca
- * * Demuestra todos los conceptos de POO en un ejemplo práctico
- */
-class Libro {
-    // * Atributos privados
-    private String titulo;
-    private String autor;
-    private String isbn;
-    private int numeroPaginas;
-    private boolean prestado;
     
-    // * Variable estática - contador de libros
-    private static int totalLibros = 0;
+    public synchronized void agregar(Estudiante estudiante) {
+        if (!posiciones.containsKey(estudiante)) {
+            insertar(estudiante, estudiante.getEdad());
+        }
+    }
     
-    // * Constantes
-    public static final int PAGINAS_MINIMAS = 10;
+    public synchronized boolean eliminar(Estudiante estudiante) {
+        Ubicacion ubicacion = posiciones.remove(estudiante);
+        if (ubicacion == null) {
+            return false;
+        }
+        quitar(ubicacion);
+        return true;
+    }
     
     /**
-     * ! Constructor completo
+     * ? Número de estudiantes con edad en [desde, hasta] (ambos incluidos)
      */
-    public Libro(String titulo, String autor, String isbn, int numeroPaginas) {
-        this.titulo = titulo;
-        this.autor = autor;
-        this.isbn = isbn;
-        this.numeroPaginas = numeroPaginas;
-        this.prestado = false;
-        totalLibros++;
+    public synchronized int contar(int desde, int hasta) {
+        int inicio = Math.max(desde, Estudiante.EDAD_MINIMA);
+        int fin = Math.min(hasta, Estudiante.EDAD_MAXIMA);
+        if (inicio > fin) {
+            return 0;
+        }
+        return sumaHasta(fin - Estudiante.EDAD_MINIMA + 1) - sumaHasta(inicio - Estudiante.EDAD_MINIMA);
     }
     
     /**
-     * * Prestar el libro
+     * ? Estudiantes con edad en [desde, hasta], ordenados por edad
      */
-    public void prestar() {
-        if (!prestado) {
-            prestado = true;
-            System.out.println("✅ Libro '" + titulo + "' prestado correctamente");
-        } else {
-            System.out.println("⚠️ El libro '" + titulo + "' ya está prestado");
+    public synchronized List<Estudiante> listar(int desde, int hasta) {
+        int inicio = Math.max(desde, Estudiante.EDAD_MINIMA) - Estudiante.EDAD_MINIMA;
+        int fin = Math.min(hasta, Estudiante.EDAD_MAXIMA) - Estudiante.EDAD_MINIMA;
+        List<Estudiante> resultado = new ArrayList<>();
+        for (int cubo = inicio; cubo <= fin; cubo++) {
+            for (int i = 0; i < tamanos[cubo]; i++) {
+                resultado.add(cubos[cubo][i]);
+            }
+        }
+        return resultado;
+    }
+    
+    public synchronized int size() {
+        return posiciones.size();
+    }
+    
+    @Override
+    public synchronized void edadCambiada(Estudiante estudiante, int anterior) {
+        Ubicacion ubicacion = posiciones.get(estudiante);
+        if (ubicacion == null) {
+            return;  // ? No pertenece a este índice
+        }
+        int actual = estudiante.getEdad();
+        if (actual == ubicacion.edad) {
+            return;  // ? Aviso atrasado: ya está en su cubo
+        }
+        quitar(ubicacion);
+        insertar(estudiante, actual);
+    }
+    
+    private void insertar(Estudiante estudiante, int edad) {
+        int cubo = edad - Estudiante.EDAD_MINIMA;
+        if (tamanos[cubo] == cubos[cubo].length) {
+            cubos[cubo] = Arrays.copyOf(cubos[cubo], tamanos[cubo] * 2);
+        }
+        cubos[cubo][tamanos[cubo]] = estudiante;
+        Ubicacion ubicacion = posiciones.computeIfAbsent(estudiante, e -> new Ubicacion());
+        ubicacion.edad = edad;
+        ubicacion.posicion = tamanos[cubo]++;
+        actualizar(cubo + 1, 1);
+    }
+    
+    // ? Borrado O(1): el último del cubo ocupa el hueco
+    private void quitar(Ubicacion ubicacion) {
+        int cubo = ubicacion.edad - Estudiante.EDAD_MINIMA;
+        int ultimo = --tamanos[cubo];
+        if (ubicacion.posicion != ultimo) {
+            Estudiante movido = cubos[cubo][ultimo];
+            cubos[cubo][ubicacion.posicion] = movido;
+            posiciones.get(movido).posicion = ubicacion.posicion;
         }
+        cubos[cubo][ultimo] = null;
+        actualizar(cubo + 1, -1);
     }
     
+    // * Operaciones del árbol de Fenwick (índices base 1)
+    private void actualizar(int i, int delta) {
+        for (; i <= NUMERO_EDADES; i += i & -i) {
+            fenwick[i] += delta;
+        }
+    }
+    
+    private int sumaHasta(int i) {
+        int suma = 0;
+        for (; i > 0; i -= i & -i) {
+            suma += fenwick[i];
+        }
+        return suma;
+    }
+}
+
+
+// ═══════════════════════════════════════════════════════════════════════════════════════
+// ║                                                                                       ║
+// ║                 🏆 CLASE: CLASIFICACION POR NOTA MEDIA (TOP-K)                        ║
+// ║                                                                                       ║
+// ═══════════════════════════════════════════════════════════════════════════════════════
+
+/**
+ * * Clasificación incremental de estudiantes por nota media: global y por curso
+ * 
+ * ? Cada estudiante tiene una entrada inmutable (nota, secuencia) dentro de una
+ * ? ConcurrentSkipListSet ordenada de mayor a menor nota. Un cambio de nota
+ * ? sustituye la entrada: O(log n), sin reordenar a toda la población.
+ * ? Las lecturas del top-K recorren solo las K primeras entradas y no bloquean.
+ * 
+ * ! Se guarda a todos los estudiantes (no solo a los K mejores) para que una bajada
+ * ! de nota dentro del top deje entrar al siguiente sin recalcular nada.
+ * ! Los cursos se indexan por su código en DiccionarioCadenas.CURSOS (posición código + 1,
+ * ! la 0 es "sin curso"): ni se decodifica ni se calcula el hash de ningún String.
+ */
+class ClasificacionNotas implements ObservadorEstudiante {
+    
     /**
-     * * Devolver el libro
+     * ? Entrada de la clasificación: la secuencia desempata notas iguales (llega antes, va antes)
      */
-    public void devolver() {
-        if (prestado) {
-            prestado = false;
-            System.out.println("✅ Libro '" + titulo + "' devuelto correctamente");
-        } else {
-            System.out.println("⚠️ El libro '" + titulo + "' no estaba prestado");
+    private static final class Entrada implements Comparable<Entrada> {
+        final Estudiante estudiante;
+        final double nota;
+        final int curso;  // ? Código del curso
+        final long secuencia;
+        
+        Entrada(Estudiante estudiante, double nota, int curso, long secuencia) {
+            this.estudiante = estudiante;
+            this.nota = nota;
+            this.curso = curso;
+            this.secuencia = secuencia;
+        }
+        
+        @Override
+        public int compareTo(Entrada otra) {
+            int porNota = Double.compare(otra.nota, nota);  // ! Descendente
+            return porNota != 0 ? porNota : Long.compare(secuencia, otra.secuencia);
         }
     }
     
+    private final NavigableSet<Entrada> global = new ConcurrentSkipListSet<>();
+    // ! Solo crece (copia) con el cerrojo tomado; topCurso lo lee sin bloquear
+    private volatile NavigableSet<Entrada>[] porCurso = nuevosConjuntos(16);
+    private final Map<Estudiante, Entrada> entradas = new IdentityHashMap<>();  // * Protegido por 'this'
+    private long secuencia;
+    
+    public ClasificacionNotas() {
+        Estudiante.registrarObservador(this);
+    }
+    
     /**
-     * ? Método estático para obtener el total de libros
+     * * Dejar de seguir los cambios de nota y de curso
      */
-    public static int getTotalLibros() {
-        return totalLibros;
+    public void cerrar() {
+        Estudiante.eliminarObservador(this);
     }
     
-    // * Getters
-    public String getTitulo() { return titulo; }
-    public String getAutor() { return autor; }
-    public String getIsbn() { return isbn; }
-    public int getNumeroPaginas() { return numeroPaginas; }
-    public boolean isPrestado() { return prestado; }
+    public synchronized void agregar(Estudiante estudiante) {
+        if (!entradas.containsKey(estudiante)) {
+            insertar(estudiante);
+        }
+    }
+    
+    public synchronized boolean eliminar(Estudiante estudiante) {
+        Entrada entrada = entradas.remove(estudiante);
+        if (entrada == null) {
+            return false;
+        }
+        quitar(entrada);
+        return true;
+    }
+    
+    /**
+     * ? Los K mejores de toda la población (de mayor a menor nota)
+     */
+    public List<Estudiante> top(int k) {
+        return primeros(global, k);
+    }
+    
+    /**
+     * ? Los K mejores de un curso (de mayor a menor nota)
+     */
+    public List<Estudiante> topCurso(String curso, int k) {
+        int codigo = DiccionarioCadenas.CURSOS.buscar(curso);
+        if (codigo == DiccionarioCadenas.SIN_VALOR && curso != null) {
+            return List.of();  // ? Curso que nadie ha usado nunca
+        }
+        NavigableSet<Entrada>[] conjuntos = porCurso;
+        NavigableSet<Entrada> conjunto = codigo + 1 < conjuntos.length ? conjuntos[codigo + 1] : null;
+        return conjunto == null ? List.of() : primeros(conjunto, k);
+    }
+    
+    public synchronized int size() {
+        return entradas.size();
+    }
     
     @Override
-    public String toString() {
-        return "📖 Libro: '" + titulo + "' por " + autor + 
-               " | ISBN: " + isbn + 
-               " | Páginas: " + numeroPaginas +
-               " | " + (prestado ? "🔴 PRESTADO" : "🟢 DISPONIBLE");
+    public void notaCambiada(Estudiante estudiante, double anterior) {
+        reinsertar(estudiante);
+    }
+    
+    @Override
+    public void cursoCambiado(Estudiante estudiante, String anterior) {
+        reinsertar(estudiante);
+    }
+    
+    // ! Idempotente: se quita la entrada tal como se archivó y se vuelve a archivar con el
+    // ! estado ACTUAL del estudiante, no con los valores del aviso. Los avisos de setters
+    // ! concurrentes pueden llegar desordenados; el último en ejecutarse (todos pasan por
+    // ! este monitor) ya ve la nota y el curso definitivos, así que el índice acaba igual
+    // ! que el objeto. Si la entrada ya coincide, el aviso llegó tarde y no se toca nada.
+    private synchronized void reinsertar(Estudiante estudiante) {
+        Entrada entrada = entradas.get(estudiante);
+        if (entrada == null) {
+            return;  // ? No pertenece a esta clasificación
+        }
+        if (Double.compare(entrada.nota, estudiante.getNotaMedia()) == 0
+                && entrada.curso == estudiante.getCodigoCurso()) {
+            return;
+        }
+        quitar(entrada);
+        insertar(estudiante);
+    }
+    
+    private void insertar(Estudiante estudiante) {
+        int curso = estudiante.getCodigoCurso();
+        Entrada entrada = new Entrada(estudiante, estudiante.getNotaMedia(), curso, secuencia++);
+        entradas.put(estudiante, entrada);
+        global.add(entrada);
+        conjuntoDe(curso).add(entrada);
+    }
+    
+    private void quitar(Entrada entrada) {
+        global.remove(entrada);
+        porCurso[entrada.curso + 1].remove(entrada);
+    }
+    
+    // ? Conjunto del curso, creándolo (y ampliando el array) si hace falta; con el cerrojo tomado
+    private NavigableSet<Entrada> conjuntoDe(int curso) {
+        NavigableSet<Entrada>[] conjuntos = porCurso;
+        int i = curso + 1;
+        if (i >= conjuntos.length) {
+            NavigableSet<Entrada>[] mayor = nuevosConjuntos(Math.max(i + 1, conjuntos.length * 2));
+            System.arraycopy(conjuntos, 0, mayor, 0, conjuntos.length);
+            porCurso = conjuntos = mayor;
+        }
+        if (conjuntos[i] == null) {
+            conjuntos[i] = new ConcurrentSkipListSet<>();
+            porCurso = conjuntos;  // ! Escritura volatile: publica el hueco nuevo a topCurso
+        }
+        return conjuntos[i];
+    }
+    
+    @SuppressWarnings("unchecked")
+    private static NavigableSet<Entrada>[] nuevosConjuntos(int tamano) {
+        return (NavigableSet<Entrada>[]) new NavigableSet<?>[tamano];
+    }
+    
+    private static List<Estudiante> primeros(NavigableSet<Entrada> conjunto, int k) {
+        List<Estudiante> resultado = new ArrayList<>(Math.min(k, 64));
+        for (Entrada entrada : conjunto) {
+            if (resultado.size() == k) {
+                break;
+            }
+            resultado.add(entrada.estudiante);
+        }
+        return resultado;
+    }
+}
+
+
+// ═══════════════════════════════════════════════════════════════════════════════════════
+// ║                                                                                       ║
+// ║                  ⏱️ CLASE: REGISTRO DE SESIONES DE ESTUDIO                            ║
+// ║                                                                                       ║
+// ═══════════════════════════════════════════════════════════════════════════════════════
+
+/**
+ * * Registro sin bloqueos de las sesiones de estudiar(asignatura, horas)
+ * 
+ * ? Cada sesión se guarda dos veces:
+ * ?   1. En un anillo de sesiones inmutables (las últimas N en bruto). Cada hueco se
+ * ?      publica con una sola escritura de referencia: un lector ve la sesión entera
+ * ?      o no la ve, nunca una mezcla de la vieja y la nueva.
+ * ?   2. En totales por cubos de tiempo: por minuto (últimas 24 h) y por día
+ * ?      (último año) para cada asignatura, y por día (último mes) para cada alumno.
+ * ? Las consultas por ventana suman cubos, nunca vuelven a leer las sesiones.
+ * 
+ * ! Cada cubo es un long que empaqueta [marca de tiempo (32 bits) | horas (32 bits)]
+ * ! y se actualiza con CAS: si la marca es antigua el cubo se reinicia en el mismo CAS.
+ * ! Los cubos de asignatura están repartidos en franjas (una por hilo, módulo el número
+ * ! de franjas): muchos hilos sumando a la misma asignatura y minuto no compiten por el
+ * ! mismo CAS. Las consultas suman todas las franjas.
+ * ! Las ventanas por días cuentan los días del borde completos.
+ */
+class RegistroSesionesEstudio implements ObservadorEstudiante {
+    private static final long MILIS_MINUTO = 60_000L;
+    private static final long MILIS_DIA = 86_400_000L;
+    public static final int MINUTOS_RETENIDOS = 24 * 60;
+    public static final int DIAS_RETENIDOS_ASIGNATURA = 366;
+    public static final int DIAS_RETENIDOS_ALUMNO = 32;
+    
+    /**
+     * ? Sesión en bruto (inmutable: se publica entera en su hueco del anillo)
+     */
+    static final class Sesion {
+        private final long secuencia;
+        private final long instante;
+        private final Estudiante estudiante;
+        private final String asignatura;
+        private final int horas;
+        
+        Sesion(long secuencia, long instante, Estudiante estudiante, String asignatura, int horas) {
+            this.secuencia = secuencia;
+            this.instante = instante;
+            this.estudiante = estudiante;
+            this.asignatura = asignatura;
+            this.horas = horas;
+        }
+        
+        public long getInstante() { return instante; }
+        public Estudiante getEstudiante() { return estudiante; }
+        public String getAsignatura() { return asignatura; }
+        public int getHoras() { return horas; }
+        
+        @Override
+        public String toString() {
+            return estudiante.getNombre() + " → " + asignatura + " (" + horas + " h)";
+        }
+    }
+    
+    /**
+     * ? Anillo de cubos empaquetados [marca | horas] para una granularidad de tiempo,
+     * ? repetido en 'franjas' copias independientes (cada hilo escribe en la suya)
+     */
+    private static final class Cubos {
+        private final AtomicLongArray[] franjas;
+        private final int numero;
+        private final long milisPorCubo;
+        
+        Cubos(int numero, long milisPorCubo, int franjas) {
+            this.franjas = new AtomicLongArray[franjas];
+            for (int f = 0; f < franjas; f++) {
+                this.franjas[f] = new AtomicLongArray(numero);
+            }
+            this.numero = numero;
+            this.milisPorCubo = milisPorCubo;
+        }
+        
+        void sumar(long instante, int horas) {
+            AtomicLongArray cubos = franjas[(int) (Thread.currentThread().getId() % franjas.length)];
+            long marca = instante / milisPorCubo;
+            int i = (int) (marca % numero);
+            while (true) {
+                long actual = cubos.get(i);
+                long marcaActual = actual >>> 32;
+                long nuevo;
+                if (marcaActual == marca) {
+                    nuevo = actual + horas;
+                } else if (marcaActual < marca) {
+                    nuevo = (marca << 32) | (horas & 0xFFFFFFFFL);  // * Reinicia el cubo reciclado
+                } else {
+                    return;  // ! Sesión más antigua que la retención: ya no cabe
+                }
+                if (cubos.compareAndSet(i, actual, nuevo)) {
+                    return;
+                }
+            }
+        }
+        
+        // * Suma de los cubos cuyo intervalo toca [desde, hasta)
+        long total(long desde, long hasta) {
+            long primera = desde / milisPorCubo;
+            long ultima = (hasta - 1) / milisPorCubo;
+            primera = Math.max(primera, ultima - numero + 1);
+            long total = 0;
+            for (AtomicLongArray cubos : franjas) {
+                for (long marca = primera; marca <= ultima; marca++) {
+                    long valor = cubos.get((int) (marca % numero));
+                    if ((valor >>> 32) == marca) {
+                        total += valor & 0xFFFFFFFFL;
+                    }
+                }
+            }
+            return total;
+        }
+        
+        // ? ¿Cubre la retención toda la ventana que empieza en 'desde'?
+        boolean cubre(long desde, long ahora) {
+            return ahora / milisPorCubo - desde / milisPorCubo < numero;
+        }
+    }
+    
+    /**
+     * ? Clave por identidad: Estudiante redefine equals() sin hashCode()
+     */
+    private static final class ClaveIdentidad {
+        Estudiante estudiante;
+        
+        ClaveIdentidad(Estudiante estudiante) { this.estudiante = estudiante; }
+        
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof ClaveIdentidad && ((ClaveIdentidad) o).estudiante == estudiante;
+        }
+        
+        @Override
+        public int hashCode() { return System.identityHashCode(estudiante); }
+    }
+    
+    private final LongSupplier reloj;
+    
+    // * Anillo de sesiones en bruto (capacidad potencia de 2)
+    private final int mascara;
+    private final AtomicReferenceArray<Sesion> anillo;
+    private final AtomicLong cursor = new AtomicLong();
+    
+    // ? Franjas de los cubos por asignatura (potencia de 2 ≥ núcleos)
+    private static final int FRANJAS = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() * 2 - 1));
+    
+    // * Totales por cubos
+    private final Map<String, Cubos[]> porAsignatura = new ConcurrentHashMap<>();
+    private final Map<ClaveIdentidad, Cubos> porAlumno = new ConcurrentHashMap<>();
+    private final ThreadLocal<ClaveIdentidad> sonda = ThreadLocal.withInitial(() -> new ClaveIdentidad(null));
+    
+    /**
+     * ! Constructor
+     * @param capacidadAnillo Sesiones en bruto que se conservan (se redondea a potencia de 2)
+     * @param reloj Fuente de tiempo en milisegundos (inyectable para pruebas)
+     */
+    public RegistroSesionesEstudio(int capacidadAnillo, LongSupplier reloj) {
+        if (capacidadAnillo <= 0) {
+            throw new IllegalArgumentException("La capacidad debe ser positiva");
+        }
+        int capacidad = Integer.highestOneBit(Math.max(2, capacidadAnillo - 1)) << 1;
+        this.mascara = capacidad - 1;
+        this.anillo = new AtomicReferenceArray<>(capacidad);
+        this.reloj = reloj;
+    }
+    
+    public RegistroSesionesEstudio(int capacidadAnillo) {
+        this(capacidadAnillo, System::currentTimeMillis);
+    }
+    
+    /**
+     * * Seguir automáticamente las llamadas a estudiar(asignatura, horas)
+     */
+    public void escuchar() {
+        Estudiante.registrarObservador(this);
+    }
+    
+    public void cerrar() {
+        Estudiante.eliminarObservador(this);
+    }
+    
+    @Override
+    public void sesionEstudio(Estudiante estudiante, String asignatura, int horas) {
+        registrar(estudiante, asignatura, horas);
+    }
+    
+    /**
+     * * Registrar una sesión con el instante actual del reloj
+     */
+    public void registrar(Estudiante estudiante, String asignatura, int horasSesion) {
+        if (horasSesion <= 0) {
+            return;  // ? Sesiones vacías o negativas no suman
+        }
+        long ahora = reloj.getAsLong();
+        
+        // ! 1) Anillo: reservamos secuencia con getAndIncrement y publicamos la sesión entera.
+        // ! Si un escritor más lento llega cuando su hueco ya tiene una sesión más nueva
+        // ! (el anillo dio la vuelta), la suya se descarta: no pisa a la nueva.
+        long secuencia = cursor.getAndIncrement();
+        int i = (int) (secuencia & mascara);
+        Sesion sesion = new Sesion(secuencia, ahora, estudiante, asignatura, horasSesion);
+        Sesion actual = anillo.get(i);
+        while ((actual == null || actual.secuencia < secuencia) && !anillo.compareAndSet(i, actual, sesion)) {
+            actual = anillo.get(i);
+        }
+        
+        // ! 2) Totales por cubos
+        Cubos[] cubosAsignatura = porAsignatura.get(asignatura);
+        if (cubosAsignatura == null) {
+            cubosAsignatura = porAsignatura.computeIfAbsent(asignatura, a -> new Cubos[] {
+                new Cubos(MINUTOS_RETENIDOS, MILIS_MINUTO, FRANJAS), new Cubos(DIAS_RETENIDOS_ASIGNATURA, MILIS_DIA, FRANJAS)
+            });
+        }
+        cubosAsignatura[0].sumar(ahora, horasSesion);
+        cubosAsignatura[1].sumar(ahora, horasSesion);
+        cubosAlumno(estudiante).sumar(ahora, horasSesion);
+    }
+    
+    /**
+     * ? Horas de una asignatura en [desde, hasta): por minutos si la ventana entra
+     * ? en las últimas 24 h, si no por días
+     */
+    public long horasAsignatura(String asignatura, long desde, long hasta) {
+        Cubos[] cubos = porAsignatura.get(asignatura);
+        if (cubos == null || hasta <= desde) {
+            return 0;
+        }
+        Cubos elegido = cubos[0].cubre(desde, reloj.getAsLong()) ? cubos[0] : cubos[1];
+        return elegido.total(desde, hasta);
+    }
+    
+    /**
+     * ? Horas de un alumno en [desde, hasta), con granularidad de días
+     */
+    public long horasAlumno(Estudiante estudiante, long desde, long hasta) {
+        ClaveIdentidad clave = sonda.get();
+        clave.estudiante = estudiante;
+        Cubos cubos = porAlumno.get(clave);
+        clave.estudiante = null;
+        return cubos == null || hasta <= desde ? 0 : cubos.total(desde, hasta);
+    }
+    
+    public long totalSesiones() {
+        return cursor.get();
+    }
+    
+    /**
+     * ? Hasta 'maximo' sesiones recientes (de la más nueva a la más antigua)
+     * ! Se omiten las secuencias aún no publicadas o ya sustituidas por otra vuelta del anillo
+     */
+    public List<Sesion> sesionesRecientes(int maximo) {
+        long fin = cursor.get();
+        long inicio = Math.max(0, Math.max(fin - maximo, fin - mascara - 1));
+        List<Sesion> resultado = new ArrayList<>();
+        for (long secuencia = fin - 1; secuencia >= inicio; secuencia--) {
+            Sesion sesion = anillo.get((int) (secuencia & mascara));
+            if (sesion != null && sesion.secuencia == secuencia) {
+                resultado.add(sesion);
+            }
+        }
+        return resultado;
+    }
+    
+    private Cubos cubosAlumno(Estudiante estudiante) {
+        ClaveIdentidad clave = sonda.get();
+        clave.estudiante = estudiante;
+        Cubos cubos = porAlumno.get(clave);
+        clave.estudiante = null;
+        if (cubos == null) {
+            cubos = porAlumno.computeIfAbsent(new ClaveIdentidad(estudiante),
+                    c -> new Cubos(DIAS_RETENIDOS_ALUMNO, MILIS_DIA, 1));
+        }
+        return cubos;
+    }
+}
+
+// ═══════════════════════════════════════════════════════════════════════════════════════
+// ║                                                                                       ║
+// ║                 🗂️ CLASE: ORDENACIÓN EXTERNA DE ESTUDIANTES                           ║
+// ║                                                                                       ║
+// ═══════════════════════════════════════════════════════════════════════════════════════
+
+/**
+ * * Ordenación externa (merge sort en disco) para listados de estudiantes que no caben en memoria
+ * 
+ * ? Fase 1: la entrada se lee por tramos de N registros; cada tramo se ordena en un
+ * ? hilo del pool y se vuelca a un fichero temporal en binario compacto.
+ * ? Fase 2: los tramos se mezclan con un montículo (k-way merge) de K en K ficheros;
+ * ? si hay más de K tramos se hacen pasadas intermedias hasta quedar K o menos.
+ * 
+ * ! Se trabaja con Registro (datos planos) y no con Estudiante: su constructor imprime
+ * ! por consola y cuenta instancias, algo inviable con millones de filas.
+ * ! Memoria máxima ≈ (paralelismo + 1) tramos en la fase 1 y K búferes en la fase 2.
+ */
+class OrdenacionExterna {
+    
+    /**
+     * ? Fila de un listado: copia inmutable de los datos de un Estudiante
+     */
+    static final class Registro {
+        private final String nombre;
+        private final int edad;
+        private final String curso;
+        private final double notaMedia;
+        
+        Registro(String nombre, int edad, String curso, double notaMedia) {
+            this.nombre = nombre;
+            this.edad = edad;
+            this.curso = curso;
+            this.notaMedia = notaMedia;
+        }
+        
+        static Registro de(Estudiante estudiante) {
+            return new Registro(estudiante.getNombre(), estudiante.getEdad(), estudiante.getCurso(), estudiante.getNotaMedia());
+        }
+        
+        public String getNombre() { return nombre; }
+        public int getEdad() { return edad; }
+        public String getCurso() { return curso; }
+        public double getNotaMedia() { return notaMedia; }
+        
+        // * Formato binario: curso (UTF), nota (double), nombre (UTF), edad (byte)
+        void escribir(DataOutputStream salida) throws IOException {
+            salida.writeUTF(curso);
+            salida.writeDouble(notaMedia);
+            salida.writeUTF(nombre);
+            salida.writeByte(edad);
+        }
+        
+        static Registro leer(DataInputStream entrada) throws IOException {
+            String curso = entrada.readUTF();
+            double nota = entrada.readDouble();
+            String nombre = entrada.readUTF();
+            int edad = entrada.readUnsignedByte();
+            return new Registro(nombre, edad, curso, nota);
+        }
+        
+        @Override
+        public String toString() {
+            return curso + " | " + notaMedia + " | " + nombre + " (" + edad + ")";
+        }
+    }
+    
+    // * Orden de los expedientes: curso, después nota media y después nombre (todo ascendente)
+    public static final Comparator<Registro> POR_CURSO_NOTA_NOMBRE = Comparator
+            .comparing(Registro::getCurso)
+            .thenComparingDouble(Registro::getNotaMedia)
+            .thenComparing(Registro::getNombre);
+    
+    private static final int TAMANO_BUFFER = 64 * 1024;
+    
+    private final Comparator<Registro> comparador;
+    private final int registrosPorTramo;
+    private final int paralelismo;
+    private final int maxFusion;
+    private int tramosGenerados;
+    
+    /**
+     * @param comparador Orden deseado
+     * @param registrosPorTramo Registros que se ordenan en memoria de una vez
+     * @param paralelismo Hilos que ordenan y vuelcan tramos en paralelo
+     * @param maxFusion Ficheros que se mezclan a la vez (K)
+     */
+    public OrdenacionExterna(Comparator<Registro> comparador, int registrosPorTramo, int paralelismo, int maxFusion) {
+        if (registrosPorTramo <= 0 || paralelismo <= 0 || maxFusion < 2) {
+            throw new IllegalArgumentException("Parámetros de ordenación inválidos");
+        }
+        this.comparador = comparador;
+        this.registrosPorTramo = registrosPorTramo;
+        this.paralelismo = paralelismo;
+        this.maxFusion = maxFusion;
+    }
+    
+    /**
+     * * Ordenar la entrada completa y entregar cada registro, en orden, a la salida
+     * @return Número de registros ordenados
+     */
+    public long ordenar(Iterator<Registro> entrada, Consumer<Registro> salida) throws IOException {
+        Path directorio = Files.createTempDirectory("ordenacion-estudiantes");
+        try {
+            List<Path> tramos = generarTramos(entrada, directorio);
+            tramosGenerados = tramos.size();
+            while (tramos.size() > maxFusion) {
+                List<Path> siguientes = new ArrayList<>();
+                for (int i = 0; i < tramos.size(); i += maxFusion) {
+                    List<Path> grupo = tramos.subList(i, Math.min(tramos.size(), i + maxFusion));
+                    Path fusionado = Files.createTempFile(directorio, "fusion", ".bin");
+                    try (DataOutputStream out = abrirEscritura(fusionado)) {
+                        // ? El tramo fusionado lleva en la cabecera la suma de los de su grupo
+                        int total = 0;
+                        for (Path p : grupo) total += contar(p);
+                        out.writeInt(total);
+                        mezclar(grupo, r -> {
+                            try {
+                                r.escribir(out);
+                            } catch (IOException e) {
+                                throw new UncheckedIOException(e);
+                            }
+                        });
+                    } catch (UncheckedIOException e) {
+                        throw e.getCause();
+                    }
+                    for (Path p : grupo) Files.delete(p);
+                    siguientes.add(fusionado);
+                }
+                tramos = siguientes;
+            }
+            return mezclar(tramos, salida);
+        } finally {
+            try (Stream<Path> ficheros = Files.list(directorio)) {
+                for (Path p : (Iterable<Path>) ficheros::iterator) Files.deleteIfExists(p);
+            }
+            Files.deleteIfExists(directorio);
+        }
+    }
+    
+    /**
+     * ? Tramos volcados en la última ordenación (antes de las pasadas intermedias)
+     */
+    public int getTramosGenerados() {
+        return tramosGenerados;
+    }
+    
+    // ! Fase 1: como mucho 'paralelismo' tramos en vuelo; el lector espera si el pool va lleno
+    private List<Path> generarTramos(Iterator<Registro> entrada, Path directorio) throws IOException {
+        ExecutorService pool = Executors.newFixedThreadPool(paralelismo);
+        Semaphore enVuelo = new Semaphore(paralelismo);
+        List<Future<Path>> pendientes = new ArrayList<>();
+        try {
+            while (entrada.hasNext()) {
+                Registro[] tramo = new Registro[registrosPorTramo];
+                int n = 0;
+                while (n < registrosPorTramo && entrada.hasNext()) {
+                    tramo[n++] = entrada.next();
+                }
+                final int tamano = n;
+                enVuelo.acquireUninterruptibly();
+                pendientes.add(pool.submit(() -> {
+                    try {
+                        Arrays.sort(tramo, 0, tamano, comparador);
+                        Path fichero = Files.createTempFile(directorio, "tramo", ".bin");
+                        try (DataOutputStream out = abrirEscritura(fichero)) {
+                            out.writeInt(tamano);
+                            for (int i = 0; i < tamano; i++) tramo[i].escribir(out);
+                        }
+                        return fichero;
+                    } finally {
+                        enVuelo.release();
+                    }
+                }));
+            }
+            List<Path> tramos = new ArrayList<>();
+            for (Future<Path> f : pendientes) tramos.add(esperar(f));
+            return tramos;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+    
+    // ! Fase 2: el montículo guarda la cabeza de cada tramo; a igualdad gana el tramo anterior (estable)
+    private long mezclar(List<Path> tramos, Consumer<Registro> salida) throws IOException {
+        PriorityQueue<Cursor> monticulo = new PriorityQueue<>(Math.max(1, tramos.size()), (a, b) -> {
+            int c = comparador.compare(a.actual, b.actual);
+            return c != 0 ? c : Integer.compare(a.orden, b.orden);
+        });
+        List<Cursor> abiertos = new ArrayList<>();
+        long total = 0;
+        try {
+            for (int i = 0; i < tramos.size(); i++) {
+                Cursor cursor = new Cursor(tramos.get(i), i);
+                abiertos.add(cursor);
+                if (cursor.avanzar()) monticulo.add(cursor);
+            }
+            while (!monticulo.isEmpty()) {
+                Cursor menor = monticulo.poll();
+                salida.accept(menor.actual);
+                total++;
+                if (menor.avanzar()) monticulo.add(menor);
+            }
+            return total;
+        } finally {
+            for (Cursor c : abiertos) c.entrada.close();
+        }
+    }
+    
+    private static int contar(Path tramo) throws IOException {
+        try (DataInputStream entrada = new DataInputStream(Files.newInputStream(tramo))) {
+            return entrada.readInt();
+        }
+    }
+    
+    private static DataOutputStream abrirEscritura(Path fichero) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(fichero), TAMANO_BUFFER));
+    }
+    
+    private static Path esperar(Future<Path> futuro) throws IOException {
+        try {
+            return futuro.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Ordenación interrumpida", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            throw new IOException("Fallo al generar un tramo", e.getCause());
+        }
+    }
+    
+    /**
+     * ? Lector secuencial de un tramo: mantiene el registro actual para el montículo
+     */
+    private static final class Cursor {
+        private final DataInputStream entrada;
+        private final int orden;
+        private int restantes;
+        private Registro actual;
+        
+        Cursor(Path fichero, int orden) throws IOException {
+            this.entrada = new DataInputStream(new BufferedInputStream(Files.newInputStream(fichero), TAMANO_BUFFER));
+            this.orden = orden;
+            this.restantes = entrada.readInt();
+        }
+        
+        boolean avanzar() throws IOException {
+            if (restantes == 0) return false;
+            restantes--;
+            actual = Registro.leer(entrada);
+            return true;
+        }
+    }
+}
+
+// ═══════════════════════════════════════════════════════════════════════════════════════
+// ║                                                                                       ║
+// ║                 📊 CLASE: AGREGACIÓN POR CURSO EN PARALELO                            ║
+// ║                                                                                       ║
+// ═══════════════════════════════════════════════════════════════════════════════════════
+
+/**
+ * * Informe por curso (número de alumnos, nota media y distribución de edades) en paralelo
+ * 
+ * ? Las filas se reparten en bloques contiguos, uno por hilo. Cada hilo agrupa en su
+ * ? propio array de acumuladores indexado por el código del curso en
+ * ? DiccionarioCadenas.CURSOS (sin sincronizar, sin hash); al final los parciales de
+ * ? todos los hilos se suman posición a posición y solo entonces se decodifican los nombres.
+ * 
+ * ! Si aparecen más de 'maxGrupos' cursos distintos se aborta con IllegalStateException.
+ * ! Las filas sin curso (SIN_VALOR) se agrupan bajo "" (como en ClasificacionNotas).
+ */
+class AgregacionPorCurso {
+    private static final int NUMERO_EDADES = Estudiante.EDAD_MAXIMA - Estudiante.EDAD_MINIMA + 1;
+    
+    /**
+     * ? Origen de las filas: acceso por posición para poder repartirlas en bloques
+     */
+    interface Filas {
+        int tamano();
+        int codigoCurso(int fila);  // ? Código en DiccionarioCadenas.CURSOS (o SIN_VALOR)
+        int edad(int fila);
+        double nota(int fila);
+        
+        static Filas de(List<Estudiante> estudiantes) {
+            return new Filas() {
+                public int tamano() { return estudiantes.size(); }
+                public int codigoCurso(int fila) { return estudiantes.get(fila).getCodigoCurso(); }
+                public int edad(int fila) { return estudiantes.get(fila).getEdad(); }
+                public double nota(int fila) { return estudiantes.get(fila).getNotaMedia(); }
+            };
+        }
+        
+        // * Formato columnar: un array por atributo (lo habitual con cientos de millones de filas)
+        // ? El curso va ya codificado, igual que lo guarda Estudiante
+        static Filas de(int[] codigosCurso, int[] edades, double[] notas) {
+            if (codigosCurso.length != edades.length || codigosCurso.length != notas.length) {
+                throw new IllegalArgumentException("Las columnas deben tener la misma longitud");
+            }
+            return new Filas() {
+                public int tamano() { return codigosCurso.length; }
+                public int codigoCurso(int fila) { return codigosCurso[fila]; }
+                public int edad(int fila) { return edades[fila]; }
+                public double nota(int fila) { return notas[fila]; }
+            };
+        }
+    }
+    
+    /**
+     * ? Resumen de un curso; también sirve de acumulador parcial de un hilo
+     */
+    static final class Resumen {
+        private long cantidad;
+        private double sumaNotas;
+        private final long[] edades = new long[NUMERO_EDADES];
+        
+        void acumular(int edad, double nota) {
+            cantidad++;
+            sumaNotas += nota;
+            // ? Edades fuera del rango válido se cuentan en el extremo más cercano
+            edades[Math.max(0, Math.min(NUMERO_EDADES - 1, edad - Estudiante.EDAD_MINIMA))]++;
+        }
+        
+        void sumar(Resumen otro) {
+            cantidad += otro.cantidad;
+            sumaNotas += otro.sumaNotas;
+            for (int i = 0; i < NUMERO_EDADES; i++) edades[i] += otro.edades[i];
+        }
+        
+        public long getCantidad() { return cantidad; }
+        
+        public double getNotaMedia() {
+            return cantidad == 0 ? 0 : sumaNotas / cantidad;
+        }
+        
+        /**
+         * ? Alumnos con la edad indicada
+         */
+        public long getAlumnosConEdad(int edad) {
+            if (edad < Estudiante.EDAD_MINIMA || edad > Estudiante.EDAD_MAXIMA) return 0;
+            return edades[edad - Estudiante.EDAD_MINIMA];
+        }
+        
+        /**
+         * ? Distribución de edades (solo las que tienen algún alumno), ordenada por edad
+         */
+        public Map<Integer, Long> getDistribucionEdades() {
+            Map<Integer, Long> distribucion = new TreeMap<>();
+            for (int i = 0; i < NUMERO_EDADES; i++) {
+                if (edades[i] > 0) distribucion.put(i + Estudiante.EDAD_MINIMA, edades[i]);
+            }
+            return distribucion;
+        }
+        
+        @Override
+        public String toString() {
+            return String.format("%d alumnos, nota media %.2f", cantidad, getNotaMedia());
+        }
+    }
+    
+    private final int paralelismo;
+    private final int maxGrupos;
+    
+    public AgregacionPorCurso(int paralelismo, int maxGrupos) {
+        if (paralelismo <= 0 || maxGrupos <= 0) {
+            throw new IllegalArgumentException("Parámetros de agregación inválidos");
+        }
+        this.paralelismo = paralelismo;
+        this.maxGrupos = maxGrupos;
+    }
+    
+    /**
+     * * Agrupar todas las filas por curso
+     * @return Resumen por curso, ordenado alfabéticamente
+     */
+    public Map<String, Resumen> agrupar(Filas filas) throws InterruptedException {
+        int total = filas.tamano();
+        int hilos = (int) Math.max(1, Math.min(paralelismo, total / 10_000L));
+        ExecutorService pool = Executors.newFixedThreadPool(hilos);
+        List<Future<Resumen[]>> parciales = new ArrayList<>();
+        try {
+            for (int h = 0; h < hilos; h++) {
+                int desde = (int) ((long) total * h / hilos);
+                int hasta = (int) ((long) total * (h + 1) / hilos);
+                parciales.add(pool.submit(() -> agruparBloque(filas, desde, hasta)));
+            }
+            // ? Suma por código (posición código + 1; la 0 es "sin curso")
+            Resumen[] suma = new Resumen[0];
+            for (Future<Resumen[]> f : parciales) {
+                Resumen[] parcial = obtener(f);
+                if (parcial.length > suma.length) suma = Arrays.copyOf(suma, parcial.length);
+                for (int i = 0; i < parcial.length; i++) {
+                    if (parcial[i] == null) continue;
+                    if (suma[i] == null) suma[i] = new Resumen();
+                    suma[i].sumar(parcial[i]);
+                }
+            }
+            // * Solo aquí se pasa de códigos a nombres
+            Map<String, Resumen> resultado = new TreeMap<>();
+            for (int i = 0; i < suma.length; i++) {
+                if (suma[i] != null) {
+                    String curso = DiccionarioCadenas.CURSOS.decodificar(i - 1);
+                    resultado.put(curso == null ? "" : curso, suma[i]);
+                }
+            }
+            if (resultado.size() > maxGrupos) {
+                throw new IllegalStateException("Demasiados cursos distintos: " + resultado.size());
+            }
+            return resultado;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+    
+    private Resumen[] agruparBloque(Filas filas, int desde, int hasta) {
+        Resumen[] grupos = new Resumen[DiccionarioCadenas.CURSOS.tamano() + 1];
+        int distintos = 0;
+        for (int i = desde; i < hasta; i++) {
+            int posicion = filas.codigoCurso(i) + 1;
+            if (posicion >= grupos.length) {
+                grupos = Arrays.copyOf(grupos, Math.max(posicion + 1, grupos.length * 2));  // ? Curso dado de alta después
+            }
+            Resumen grupo = grupos[posicion];
+            if (grupo == null) {
+                if (distintos == maxGrupos) {
+                    throw new IllegalStateException("Más de " + maxGrupos + " cursos distintos");
+                }
+                grupo = grupos[posicion] = new Resumen();
+                distintos++;
+            }
+            grupo.acumular(filas.edad(i), filas.nota(i));
+        }
+        return grupos;
+    }
+    
+    private static <T> T obtener(Future<T> futuro) throws InterruptedException {
+        try {
+            return futuro.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+}
+
+// ═══════════════════════════════════════════════════════════════════════════════════════
+// ║                                                                                       ║
+// ║                 🧱 CLASE: ALMACÉN DE ESTUDIANTES FUERA DEL HEAP                        ║
+// ║                                                                                       ║
+// ═══════════════════════════════════════════════════════════════════════════════════════
+
+/**
+ * * Almacén de estudiantes fuera del heap: cientos de millones de fichas sin presión de GC
+ * 
+ * ? Cada ficha ocupa 32 bytes en una losa (slab) de memoria directa de 1 MB:
+ * ?   [0] nota (double) · [8] posición del nombre (long) · [16] bytes del nombre (int)
+ * ?   [20] edad (int) · [24] código de curso (int, DiccionarioCadenas.CURSOS) · [28] libre
+ * ? Los nombres van en UTF-8 en otras losas, una detrás de otra. En el heap solo quedan
+ * ? los arrays de losas: su tamaño no depende del número de fichas y el GC no las recorre.
+ * ? Las fichas se leen con vistas (flyweight) que cumplen el contrato de FichaEstudiante,
+ * ? validaciones incluidas; un recorrido reutiliza una sola vista moviéndola de ficha en ficha.
+ * 
+ * ! Las vistas no avisan a ObservadorEstudiante ni emiten eventos JFR: son datos planos.
+ * ! Cambiar un nombre por otro que ocupe lo mismo o menos lo sobrescribe en su sitio; uno
+ * ! más largo se escribe al final y el antiguo queda como hueco. compactar() reescribe
+ * ! los nombres vivos en losas nuevas y recupera esos huecos (bytesTextoDesperdiciados()).
+ * ! La memoria directa se libera cuando el GC recoge el almacén (Java 17 no tiene free).
+ * ! No es thread-safe.
+ */
+class AlmacenEstudiantesOffHeap {
+    private static final int TAMANO_FICHA = 32;
+    private static final int NOTA = 0;
+    private static final int NOMBRE = 8;
+    private static final int BYTES_NOMBRE = 16;
+    private static final int EDAD = 20;
+    private static final int CURSO = 24;
+    
+    private static final int BITS_LOSA = 20;                                   // ? 1 MB por losa
+    private static final int TAMANO_LOSA = 1 << BITS_LOSA;
+    private static final int BITS_FICHAS = BITS_LOSA - 5;                      // ? 32 bytes por ficha
+    private static final int MASCARA_FICHAS = (1 << BITS_FICHAS) - 1;
+    private static final int MAXIMO_BYTES_NOMBRE = 4096;
+    
+    private ByteBuffer[] losasFichas = new ByteBuffer[4];
+    private ByteBuffer[] losasTexto = new ByteBuffer[4];
+    private int numeroLosasFichas;
+    private int numeroLosasTexto;
+    private int tamano;
+    private long finTexto;          // ? Posición global donde se escribirá el próximo nombre
+    private long textoVivo;         // ? Bytes de los nombres actuales (el resto son huecos)
+    
+    /**
+     * * Dar de alta una ficha; los valores pasan por las mismas validaciones que Estudiante
+     * ! El nombre se valida antes de ocupar la ficha: si falla no queda ninguna ficha a medias
+     * @return Índice de la ficha
+     */
+    public int agregar(String nombre, int edad, String curso, double notaMedia) {
+        if (tamano == Integer.MAX_VALUE) throw new IllegalStateException("Almacén lleno");
+        if (nombre == null || nombre.trim().isEmpty()) {
+            System.out.println("⚠️ El nombre no puede estar vacío");
+            nombre = "Sin nombre";
+        }
+        byte[] bytesNombre = codificarNombre(nombre);
+        if ((tamano & MASCARA_FICHAS) == 0 && tamano >>> BITS_FICHAS == numeroLosasFichas) nuevaLosaFichas();
+        int indice = tamano;
+        Vista vista = new Vista(indice);
+        vista.escribirNombre(bytesNombre);
+        tamano++;
+        vista.setEdad(edad);
+        vista.setCurso(curso);
+        vista.setNotaMedia(notaMedia);
+        return indice;
+    }
+    
+    public int agregar(FichaEstudiante estudiante) {
+        return agregar(estudiante.getNombre(), estudiante.getEdad(), estudiante.getCurso(), estudiante.getNotaMedia());
+    }
+    
+    public int tamano() {
+        return tamano;
+    }
+    
+    public Vista vista(int indice) {
+        Objects.checkIndex(indice, tamano);
+        return new Vista(indice);
+    }
+    
+    /**
+     * ? Recorre todas las fichas con una única vista (no crea un objeto por ficha)
+     */
+    public void recorrer(Consumer<? super Vista> accion) {
+        Vista vista = new Vista(0);
+        for (int i = 0; i < tamano; i++) {
+            vista.indice = i;
+            accion.accept(vista);
+        }
+    }
+    
+    /**
+     * * Nota media de un curso leyendo las losas en orden (acceso secuencial, sin objetos)
+     */
+    public double notaMediaDelCurso(String curso) {
+        int codigo = DiccionarioCadenas.CURSOS.buscar(curso);
+        if (codigo == DiccionarioCadenas.SIN_VALOR) return 0;
+        double suma = 0;
+        long cantidad = 0;
+        for (int l = 0; l < numeroLosasFichas; l++) {
+            ByteBuffer losa = losasFichas[l];
+            int fichas = Math.min(1 << BITS_FICHAS, tamano - (l << BITS_FICHAS));
+            for (int f = 0, base = 0; f < fichas; f++, base += TAMANO_FICHA) {
+                if (losa.getInt(base + CURSO) == codigo) {
+                    suma += losa.getDouble(base + NOTA);
+                    cantidad++;
+                }
+            }
+        }
+        return cantidad == 0 ? 0 : suma / cantidad;
+    }
+    
+    // ? Memoria directa reservada (fichas + nombres)
+    public long bytesReservados() {
+        return (long) (numeroLosasFichas + numeroLosasTexto) * TAMANO_LOSA;
+    }
+    
+    // ? Bytes de texto escritos que ya no pertenecen a ningún nombre (incluye finales de losa)
+    public long bytesTextoDesperdiciados() {
+        return finTexto - textoVivo;
+    }
+    
+    /**
+     * * Reescribe los nombres vivos, uno tras otro, en losas de texto nuevas
+     * ! Mientras dura conviven las losas viejas y las nuevas (el doble de memoria de texto)
+     * @return Bytes de losas de texto liberados
+     */
+    public long compactar() {
+        ByteBuffer[] viejas = losasTexto;
+        int losasViejas = numeroLosasTexto;
+        losasTexto = new ByteBuffer[4];
+        numeroLosasTexto = 0;
+        finTexto = 0;
+        byte[] bytes = new byte[MAXIMO_BYTES_NOMBRE];
+        for (int i = 0; i < tamano; i++) {
+            ByteBuffer losa = losasFichas[i >>> BITS_FICHAS];
+            int base = (i & MASCARA_FICHAS) * TAMANO_FICHA;
+            int longitud = losa.getInt(base + BYTES_NOMBRE);
+            long posicion = losa.getLong(base + NOMBRE);
+            viejas[(int) (posicion >> BITS_LOSA)].get((int) (posicion & (TAMANO_LOSA - 1)), bytes, 0, longitud);
+            losa.putLong(base + NOMBRE, escribirTexto(Arrays.copyOf(bytes, longitud)));
+        }
+        return (long) (losasViejas - numeroLosasTexto) * TAMANO_LOSA;
+    }
+    
+    private static byte[] codificarNombre(String nombre) {
+        byte[] bytes = nombre.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAXIMO_BYTES_NOMBRE) {
+            throw new IllegalArgumentException("Nombre demasiado largo: " + bytes.length + " bytes (máximo " + MAXIMO_BYTES_NOMBRE + ")");
+        }
+        return bytes;
+    }
+    
+    private void nuevaLosaFichas() {
+        if (numeroLosasFichas == losasFichas.length) losasFichas = Arrays.copyOf(losasFichas, numeroLosasFichas * 2);
+        losasFichas[numeroLosasFichas++] = ByteBuffer.allocateDirect(TAMANO_LOSA).order(ByteOrder.nativeOrder());
+    }
+    
+    // ! Un nombre nunca cruza de losa: si no cabe en el hueco restante se empieza otra
+    private long escribirTexto(byte[] bytes) {
+        if ((finTexto & (TAMANO_LOSA - 1)) + bytes.length > TAMANO_LOSA) {
+            finTexto = ((finTexto >> BITS_LOSA) + 1) << BITS_LOSA;
+        }
+        int losa = (int) (finTexto >> BITS_LOSA);
+        if (losa == numeroLosasTexto) {
+            if (numeroLosasTexto == losasTexto.length) losasTexto = Arrays.copyOf(losasTexto, numeroLosasTexto * 2);
+            losasTexto[numeroLosasTexto++] = ByteBuffer.allocateDirect(TAMANO_LOSA);
+        }
+        long posicion = finTexto;
+        losasTexto[losa].put((int) (posicion & (TAMANO_LOSA - 1)), bytes);
+        finTexto += bytes.length;
+        return posicion;
+    }
+    
+    /**
+     * * Vista (flyweight) sobre una ficha: mismo contrato que Estudiante, sin objeto por alumno
+     */
+    final class Vista implements FichaEstudiante {
+        private int indice;
+        
+        private Vista(int indice) {
+            this.indice = indice;
+        }
+        
+        public int getIndice() { return indice; }
+        
+        // ? Reposicionar la vista sobre otra ficha
+        public Vista mover(int indice) {
+            Objects.checkIndex(indice, tamano);
+            this.indice = indice;
+            return this;
+        }
+        
+        private ByteBuffer losa() { return losasFichas[indice >>> BITS_FICHAS]; }
+        private int base() { return (indice & MASCARA_FICHAS) * TAMANO_FICHA; }
+        
+        @Override
+        public String getNombre() {
+            ByteBuffer losa = losa();
+            int longitud = losa.getInt(base() + BYTES_NOMBRE);
+            if (longitud == 0) return null;
+            long posicion = losa.getLong(base() + NOMBRE);
+            byte[] bytes = new byte[longitud];
+            losasTexto[(int) (posicion >> BITS_LOSA)].get((int) (posicion & (TAMANO_LOSA - 1)), bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+        
+        @Override
+        public int getEdad() { return losa().getInt(base() + EDAD); }
+        
+        @Override
+        public String getCurso() { return DiccionarioCadenas.CURSOS.decodificar(losa().getInt(base() + CURSO)); }
+        
+        @Override
+        public double getNotaMedia() { return losa().getDouble(base() + NOTA); }
+        
+        @Override
+        public void setNombre(String nombre) {
+            if (nombre != null && !nombre.trim().isEmpty()) {
+                escribirNombre(codificarNombre(nombre));
+            } else {
+                System.out.println("⚠️ El nombre no puede estar vacío");
+            }
+        }
+        
+        // ? Si cabe en el hueco del nombre actual se sobrescribe ahí; si no, se añade al final
+        private void escribirNombre(byte[] bytes) {
+            ByteBuffer losa = losa();
+            int anterior = indice < tamano ? losa.getInt(base() + BYTES_NOMBRE) : 0;
+            long posicion;
+            if (anterior > 0 && bytes.length <= anterior) {
+                posicion = losa.getLong(base() + NOMBRE);
+                losasTexto[(int) (posicion >> BITS_LOSA)].put((int) (posicion & (TAMANO_LOSA - 1)), bytes);
+            } else {
+                posicion = escribirTexto(bytes);
+            }
+            textoVivo += bytes.length - anterior;
+            losa.putLong(base() + NOMBRE, posicion).putInt(base() + BYTES_NOMBRE, bytes.length);
+        }
+        
+        @Override
+        public void setEdad(int edad) {
+            if (edad >= Estudiante.EDAD_MINIMA && edad <= Estudiante.EDAD_MAXIMA) {
+                losa().putInt(base() + EDAD, edad);
+            } else {
+                System.out.println("⚠️ Edad inválida. Debe estar entre " + Estudiante.EDAD_MINIMA + " y " + Estudiante.EDAD_MAXIMA);
+                losa().putInt(base() + EDAD, Estudiante.EDAD_MINIMA);  // * Valor por defecto
+            }
+        }
+        
+        @Override
+        public void setCurso(String curso) {
+            String valor = curso != null && !curso.trim().isEmpty() ? curso : "Sin asignar";
+            losa().putInt(base() + CURSO, DiccionarioCadenas.CURSOS.codificar(valor));
+        }
+        
+        @Override
+        public void setNotaMedia(double notaMedia) {
+            if (notaMedia >= Estudiante.NOTA_MINIMA && notaMedia <= Estudiante.NOTA_MAXIMA) {
+                losa().putDouble(base() + NOTA, notaMedia);
+            } else {
+                System.out.println("⚠️ Nota inválida. Debe estar entre " + Estudiante.NOTA_MINIMA + " y " + Estudiante.NOTA_MAXIMA);
+            }
+        }
+        
+        @Override
+        public String toString() {
+            return "Ficha#" + indice + "{nombre='" + getNombre() + "', edad=" + getEdad()
+                    + ", curso='" + getCurso() + "', notaMedia=" + getNotaMedia() + '}';
+        }
+    }
+}
+
+// ═══════════════════════════════════════════════════════════════════════════════════════
+// ║                                                                                       ║
+// ║                 🗺️ CLASE: INDICE DE UBICACIÓN DE PROFESORES                           ║
+// ║                                                                                       ║
+// ═══════════════════════════════════════════════════════════════════════════════════════
+
+/**
+ * * Índice de profesores por código postal (exacto, prefijo y rango) y por ciudad
+ * 
+ * ? Cada profesor recibe una posición (int) y cada clave se guarda en arrays
+ * ? paralelos ordenados (String[] claves + int[] posiciones). Las búsquedas son
+ * ? dos búsquedas binarias que delimitan el tramo [desde, hasta) de resultados.
+ * 
+ * ! Las altas se añaden al final sin ordenar; el índice se reordena una sola vez
+ * ! en la siguiente consulta, así una carga masiva no paga un orden por cada alta.
+ * ! No es thread-safe.
+ */
+class IndiceUbicacionProfesores {
+    private static final int CAPACIDAD_INICIAL = 16;
+    
+    private Profesor[] profesores = new Profesor[CAPACIDAD_INICIAL];
+    private int numeroProfesores;
+    private final ClavesOrdenadas porCodigoPostal = new ClavesOrdenadas();
+    private final ClavesOrdenadas porCiudad = new ClavesOrdenadas();
+    
+    /**
+     * * Indexar un profesor por la dirección que tiene ahora mismo
+     * @param profesor El profesor (debe tener dirección)
+     */
+    public void agregar(Profesor profesor) {
+        if (profesor == null || profesor.getDireccion() == null) {
+            throw new IllegalArgumentException("El profesor debe tener una dirección");
+        }
+        if (numeroProfesores == profesores.length) {
+            profesores = Arrays.copyOf(profesores, numeroProfesores * 2);
+        }
+        int posicion = numeroProfesores++;
+        profesores[posicion] = profesor;
+        Direccion direccion = profesor.getDireccion();
+        porCodigoPostal.agregar(direccion.getCodigoPostal(), posicion);
+        porCiudad.agregar(direccion.getCiudad(), posicion);
+    }
+    
+    /**
+     * ? Profesores con exactamente ese código postal
+     */
+    public List<Profesor> buscarPorCodigoPostal(String codigoPostal) {
+        return porCodigoPostal.buscarRango(this, codigoPostal, codigoPostal + '\0');
+    }
+    
+    /**
+     * ? Profesores cuyo código postal empieza por el prefijo (ej. "28" = provincia de Madrid)
+     */
+    public List<Profesor> buscarPorPrefijoCodigoPostal(String prefijo) {
+        return porCodigoPostal.buscarRango(this, prefijo, prefijo + Character.MAX_VALUE);
+    }
+    
+    /**
+     * ? Profesores con código postal en el rango cerrado [desde, hasta]
+     */
+    public List<Profesor> buscarPorRangoCodigoPostal(String desde, String hasta) {
+        return porCodigoPostal.buscarRango(this, desde, hasta + '\0');
+    }
+    
+    /**
+     * ? Profesores que viven en la ciudad indicada (comparación exacta)
+     */
+    public List<Profesor> buscarPorCiudad(String ciudad) {
+        return porCiudad.buscarRango(this, ciudad, ciudad + '\0');
+    }
+    
+    /**
+     * ? Contar por prefijo sin construir la lista de resultados
+     */
+    public int contarPorPrefijoCodigoPostal(String prefijo) {
+        return porCodigoPostal.contarRango(prefijo, prefijo + Character.MAX_VALUE);
+    }
+    
+    /**
+     * ? Contar por ciudad sin construir la lista de resultados
+     */
+    public int contarPorCiudad(String ciudad) {
+        return porCiudad.contarRango(ciudad, ciudad + '\0');
+    }
+    
+    public int size() { return numeroProfesores; }
+    
+    /**
+     * ! CLASE ANIDADA ESTÁTICA: arrays paralelos clave → posición, ordenados por clave
+     */
+    private static final class ClavesOrdenadas {
+        private String[] claves = new String[CAPACIDAD_INICIAL];
+        private int[] posiciones = new int[CAPACIDAD_INICIAL];
+        private int tamano;
+        private boolean ordenado = true;
+        
+        void agregar(String clave, int posicion) {
+            if (clave == null) {
+                clave = "";  // * Las direcciones sin dato quedan agrupadas al principio
+            }
+            if (tamano == claves.length) {
+                claves = Arrays.copyOf(claves, tamano * 2);
+                posiciones = Arrays.copyOf(posiciones, tamano * 2);
+            }
+            if (tamano > 0 && claves[tamano - 1].compareTo(clave) > 0) {
+                ordenado = false;
+            }
+            claves[tamano] = clave;
+            posiciones[tamano] = posicion;
+            tamano++;
+        }
+        
+        // * Resultados en el rango semiabierto [desde, hasta)
+        List<Profesor> buscarRango(IndiceUbicacionProfesores indice, String desde, String hasta) {
+            ordenarSiHaceFalta();
+            int inicio = limiteInferior(desde);
+            int fin = limiteInferior(hasta);
+            List<Profesor> resultado = new ArrayList<>(Math.max(0, fin - inicio));
+            for (int i = inicio; i < fin; i++) {
+                resultado.add(indice.profesores[posiciones[i]]);
+            }
+            return resultado;
+        }
+        
+        int contarRango(String desde, String hasta) {
+            ordenarSiHaceFalta();
+            return Math.max(0, limiteInferior(hasta) - limiteInferior(desde));
+        }
+        
+        // * Primera posición cuya clave es >= objetivo
+        private int limiteInferior(String objetivo) {
+            int bajo = 0;
+            int alto = tamano;
+            while (bajo < alto) {
+                int medio = (bajo + alto) >>> 1;
+                if (claves[medio].compareTo(objetivo) < 0) {
+                    bajo = medio + 1;
+                } else {
+                    alto = medio;
+                }
+            }
+            return bajo;
+        }
+        
+        private void ordenarSiHaceFalta() {
+            if (!ordenado) {
+                ordenar(0, tamano - 1);
+                ordenado = true;
+            }
+        }
+        
+        // ? Quicksort sobre los dos arrays a la vez (sin crear objetos por par)
+        private void ordenar(int izquierda, int derecha) {
+            while (izquierda < derecha) {
+                String pivote = claves[(izquierda + derecha) >>> 1];
+                int i = izquierda;
+                int j = derecha;
+                while (i <= j) {
+                    while (claves[i].compareTo(pivote) < 0) i++;
+                    while (claves[j].compareTo(pivote) > 0) j--;
+                    if (i <= j) {
+                        intercambiar(i++, j--);
+                    }
+                }
+                // * Recursión sobre la parte pequeña para acotar la pila
+                if (j - izquierda < derecha - i) {
+                    ordenar(izquierda, j);
+                    izquierda = i;
+                } else {
+                    ordenar(i, derecha);
+                    derecha = j;
+                }
+            }
+        }
+        
+        private void intercambiar(int a, int b) {
+            String clave = claves[a];
+            claves[a] = claves[b];
+            claves[b] = clave;
+            int posicion = posiciones[a];
+            posiciones[a] = posiciones[b];
+            posiciones[b] = posicion;
+        }
+    }
+}
+
+
+// ═══════════════════════════════════════════════════════════════════════════════════════
+// ║                                                                                       ║
+// ║                    🏫 CLASE: UNIVERSIDAD (CON CLASE ANIDADA)                         ║
+// ║                                                                                       ║
+// ═══════════════════════════════════════════════════════════════════════════════════════
+
+/**
+ * * Clase Universidad que contiene una clase anidada (Inner Class)
+ */
+class Universidad {
+    private String nombre;
+    
+    public Universidad(String nombre) {
+        this.nombre = nombre;
+    }
+    
+    /**
+     * ! CLASE ANIDADA (INNER CLASS)
+     * * Una clase dentro de otra clase
+     * * Tiene acceso a los miembros de la clase externa
+     */
+    class Facultad {
+        private String nombreFacultad;
+        private int numeroEstudiantes;
+        
+        public Facultad(String nombreFacultad, int numeroEstudiantes) {
+            this.nombreFacultad = nombreFacultad;
+            this.numeroEstudiantes = numeroEstudiantes;
+        }
+        
+        public void mostrarInfo() {
+            // * Puede acceder a los atributos de la clase externa (Universidad)
+            System.out.println("📍 Facultad: " + nombreFacultad);
+            System.out.println("📍 Universidad: " + nombre);  // ! Accede a 'nombre' de Universidad
+            System.out.println("📍 Estudiantes: " + numeroEstudiantes);
+        }
+    }
+}
+
+// ═══════════════════════════════════════════════════════════════════════════════════════
+// ║                                                                                       ║
+// ║              🏛️ CLASE: JERARQUIA UNIVERSITARIA (NODOS ANIDADOS ESTÁTICOS)             ║
+// ║                                                                                       ║
+// ═══════════════════════════════════════════════════════════════════════════════════════
+
+/**
+ * * Jerarquía Universidad → Facultad → Curso → participantes con contadores acumulados
+ * 
+ * ? A diferencia de Universidad.Facultad (inner class), los nodos son clases
+ * ? anidadas ESTÁTICAS: no guardan una referencia implícita al objeto externo,
+ * ? solo el enlace explícito al padre que necesitan para propagar los totales.
+ * 
+ * ! Cada alta o baja actualiza los contadores del curso, de su facultad y de la
+ * ! universidad, así que los totales globales son lecturas O(1) (sin recorrer el árbol).
+ * ! No es thread-safe: las modificaciones deben hacerse desde un único hilo.
+ */
+class JerarquiaUniversitaria {
+    private final String nombre;
+    private final List<Facultad> facultades = new ArrayList<>();
+    
+    // * Contadores acumulados de toda la universidad
+    private long totalEstudiantes;
+    private long totalProfesores;
+    private double ingresosTotales;
+    
+    public JerarquiaUniversitaria(String nombre) {
+        this.nombre = nombre;
+    }
+    
+    /**
+     * * Crear una nueva facultad colgando de esta universidad
+     * @param nombreFacultad Nombre de la facultad
+     * @return El nodo de la facultad creada
+     */
+    public Facultad agregarFacultad(String nombreFacultad) {
+        Facultad facultad = new Facultad(this, nombreFacultad);
+        facultades.add(facultad);
+        return facultad;
+    }
+    
+    // * Getters (lecturas O(1) de los totales acumulados)
+    public String getNombre() { return nombre; }
+    public List<Facultad> getFacultades() { return Collections.unmodifiableList(facultades); }
+    public long getTotalEstudiantes() { return totalEstudiantes; }
+    public long getTotalProfesores() { return totalProfesores; }
+    public double getIngresosTotales() { return ingresosTotales; }
+    
+    // ! Propagación hacia arriba: la llama el nodo Facultad
+    private void acumular(long estudiantes, long profesores, double ingresos) {
+        totalEstudiantes += estudiantes;
+        totalProfesores += profesores;
+        ingresosTotales += ingresos;
+    }
+    
+    @Override
+    public String toString() {
+        return "Universidad{" + nombre + ", facultades=" + facultades.size() +
+               ", estudiantes=" + totalEstudiantes + ", profesores=" + totalProfesores +
+               ", ingresos=" + ingresosTotales + '}';
+    }
+    
+    /**
+     * ! CLASE ANIDADA ESTÁTICA: nodo Facultad
+     */
+    static final class Facultad {
+        private final JerarquiaUniversitaria universidad;  // * Enlace explícito al padre
+        private final String nombre;
+        private final List<Curso> cursos = new ArrayList<>();
+        
+        private long totalEstudiantes;
+        private long totalProfesores;
+        private double ingresosTotales;
+        
+        private Facultad(JerarquiaUniversitaria universidad, String nombre) {
+            this.universidad = universidad;
+            this.nombre = nombre;
+        }
+        
+        /**
+         * * Crear un curso dentro de esta facultad
+         * @param nombreCurso Nombre del curso
+         * @return El nodo del curso creado
+         */
+        public Curso agregarCurso(String nombreCurso) {
+            Curso curso = new Curso(this, nombreCurso);
+            cursos.add(curso);
+            return curso;
+        }
+        
+        public String getNombre() { return nombre; }
+        public List<Curso> getCursos() { return Collections.unmodifiableList(cursos); }
+        public long getTotalEstudiantes() { return totalEstudiantes; }
+        public long getTotalProfesores() { return totalProfesores; }
+        public double getIngresosTotales() { return ingresosTotales; }
+        
+        private void acumular(long estudiantes, long profesores, double ingresos) {
+            totalEstudiantes += estudiantes;
+            totalProfesores += profesores;
+            ingresosTotales += ingresos;
+            universidad.acumular(estudiantes, profesores, ingresos);
+        }
+        
+        @Override
+        public String toString() {
+            return "Facultad{" + nombre + ", cursos=" + cursos.size() +
+                   ", estudiantes=" + totalEstudiantes + ", ingresos=" + ingresosTotales + '}';
+        }
+    }
+    
+    /**
+     * ! CLASE ANIDADA ESTÁTICA: nodo Curso
+     * 
+     * ? Los estudiantes y sus cuotas se guardan en arrays paralelos que crecen
+     * ? por duplicación (sin un objeto "matrícula" por alumno). Un mapa por identidad
+     * ? guarda la posición de cada alumno: detecta matrículas repetidas y da bajas O(1).
+     */
+    static final class Curso {
+        private static final int CAPACIDAD_INICIAL = 8;
+        
+        private final Facultad facultad;  // * Enlace explícito al padre
+        private final String nombre;
+        private Estudiante[] estudiantes = new Estudiante[CAPACIDAD_INICIAL];
+        private double[] cuotas = new double[CAPACIDAD_INICIAL];
+        private int numeroEstudiantes;
+        private final Map<Estudiante, Integer> posiciones = new IdentityHashMap<>();
+        private final List<Profesor> profesores = new ArrayList<>();
+        private double ingresos;
+        
+        private Curso(Facultad facultad, String nombre) {
+            this.facultad = facultad;
+            this.nombre = nombre;
+        }
+        
+        /**
+         * * Matricular un estudiante con su cuota
+         * @param estudiante El estudiante a matricular
+         * @param cuota Importe que paga el estudiante (no negativo)
+         */
+        public void matricular(Estudiante estudiante, double cuota) {
+            if (estudiante == null) {
+                throw new IllegalArgumentException("El estudiante no puede ser null");
+            }
+            if (cuota < 0) {
+                throw new IllegalArgumentException("La cuota no puede ser negativa");
+            }
+            if (posiciones.containsKey(estudiante)) {
+                throw new IllegalArgumentException(estudiante.getNombre() + " ya está matriculado en " + nombre);
+            }
+            if (numeroEstudiantes == estudiantes.length) {
+                estudiantes = Arrays.copyOf(estudiantes, numeroEstudiantes * 2);
+                cuotas = Arrays.copyOf(cuotas, numeroEstudiantes * 2);
+            }
+            estudiantes[numeroEstudiantes] = estudiante;
+            cuotas[numeroEstudiantes] = cuota;
+            posiciones.put(estudiante, numeroEstudiantes);
+            numeroEstudiantes++;
+            ingresos += cuota;
+            facultad.acumular(1, 0, cuota);
+        }
+        
+        /**
+         * * Dar de baja a un estudiante (búsqueda por identidad, O(1))
+         * ? Se rellena el hueco con el último elemento: el orden no se conserva
+         * @param estudiante El estudiante a dar de baja
+         * @return true si estaba matriculado
+         */
+        public boolean desmatricular(Estudiante estudiante) {
+            Integer posicion = posiciones.remove(estudiante);
+            if (posicion == null) {
+                return false;
+            }
+            int i = posicion;
+            double cuota = cuotas[i];
+            int ultimo = --numeroEstudiantes;
+            if (i != ultimo) {
+                estudiantes[i] = estudiantes[ultimo];
+                cuotas[i] = cuotas[ultimo];
+                posiciones.put(estudiantes[i], i);
+            }
+            estudiantes[ultimo] = null;
+            ingresos -= cuota;
+            facultad.acumular(-1, 0, -cuota);
+            return true;
+        }
+        
+        /**
+         * * Asignar un profesor al curso
+         * @param profesor El profesor a asignar
+         */
+        public void asignarProfesor(Profesor profesor) {
+            if (profesor == null) {
+                throw new IllegalArgumentException("El profesor no puede ser null");
+            }
+            profesores.add(profesor);
+            facultad.acumular(0, 1, 0);
+        }
+        
+        /**
+         * * Quitar un profesor del curso
+         * @param profesor El profesor a quitar
+         * @return true si estaba asignado
+         */
+        public boolean quitarProfesor(Profesor profesor) {
+            if (profesores.remove(profesor)) {
+                facultad.acumular(0, -1, 0);
+                return true;
+            }
+            return false;
+        }
+        
+        public String getNombre() { return nombre; }
+        public long getTotalEstudiantes() { return numeroEstudiantes; }
+        public long getTotalProfesores() { return profesores.size(); }
+        public double getIngresosTotales() { return ingresos; }
+        public List<Profesor> getProfesores() { return Collections.unmodifiableList(profesores); }
+        
+        /**
+         * ? Copia de los estudiantes matriculados (en orden no garantizado)
+         * @return Lista con los estudiantes del curso
+         */
+        public List<Estudiante> getEstudiantes() {
+            return List.of(Arrays.copyOf(estudiantes, numeroEstudiantes));
+        }
+        
+        @Override
+        public String toString() {
+            return "Curso{" + nombre + ", estudiantes=" + numeroEstudiantes +
+                   ", profesores=" + profesores.size() + ", ingresos=" + ingresos + '}';
+        }
+    }
+}
+
+
+
+// ═══════════════════════════════════════════════════════════════════════════════════════
+// ║                                                                                       ║
+// ║                         📚 CLASE: LIBRO (EJEMPLO COMPLETO)                           ║
+// ║                                                                                       ║
+// ═══════════════════════════════════════════════════════════════════════════════════════
+
+/**
+ * * Clase Libro que representa un libro en una biblioteca
+ * * Demuestra todos los conceptos de POO en un ejemplo práctico
+ * 
+ * ? Si el libro ya está prestado se puede reservar: las reservas forman una cola
+ * ? FIFO sin bloqueos (ConcurrentLinkedQueue) y devolver() entrega el libro a la
+ * ? primera reserva pendiente. El estado 'prestado' se cambia con CAS, sin cerrojos.
+ */
+class Libro {
+    // * Atributos privados
+    private String titulo;
+    private String autor;
+    private String isbn;
+    private int numeroPaginas;
+    private final AtomicBoolean prestado = new AtomicBoolean(false);
+    // ! Generación del préstamo: impar = prestado, par = libre. Solo cambia junto con un
+    // ! aviso a los observadores (la entrega fallida a reservas canceladas no cuenta)
+    private final AtomicLong generacionPrestamo = new AtomicLong();
+    private final ConcurrentLinkedQueue<Reserva> reservas = new ConcurrentLinkedQueue<>();
+    // ? size() de la cola es O(n): se lleva la cuenta aparte (nunca por debajo del tamaño real)
+    private final AtomicInteger reservasEnCola = new AtomicInteger();
+    
+    // * Variable estática - contador de libros
+    private static int totalLibros = 0;
+    
+    // ! Observadores de préstamos y devoluciones (vencimientos, estadísticas...)
+    private static final List<ObservadorLibro> OBSERVADORES = new CopyOnWriteArrayList<>();
+    
+    // * Constantes
+    public static final int PAGINAS_MINIMAS = 10;
+    
+    /**
+     * ! Constructor completo
+     */
+    public Libro(String titulo, String autor, String isbn, int numeroPaginas) {
+        this.titulo = titulo;
+        this.autor = autor;
+        this.isbn = isbn;
+        this.numeroPaginas = numeroPaginas;
+        totalLibros++;
+    }
+    
+    /**
+     * ! Constructor con estado de préstamo (reconstrucción desde JSON, sin avisar a observadores)
+     */
+    Libro(String titulo, String autor, String isbn, int numeroPaginas, boolean prestado) {
+        this(titulo, autor, isbn, numeroPaginas);
+        this.prestado.set(prestado);
+        // ! Invariante: generación impar ⇔ prestado (todo constructor debe respetarla)
+        if (prestado) generacionPrestamo.set(1);
+    }
+    
+    /**
+     * * Prestar el libro
+     * ! Si hay reservas pendientes no se presta: el turno es de la cola (justicia FIFO)
+     * @return true si se ha prestado
+     */
+    public boolean prestar() {
+        EventoLibro evento = new EventoLibro();
+        evento.begin();
+        if (reservas.isEmpty() && prestado.compareAndSet(false, true)) {
+            generacionPrestamo.incrementAndGet();
+            System.out.println("✅ Libro '" + titulo + "' prestado correctamente");
+            for (ObservadorLibro o : OBSERVADORES) o.prestado(this);
+            evento.finalizar(this, "prestar", "PRESTADO");
+            return true;
+        }
+        System.out.println("⚠️ El libro '" + titulo + "' ya está prestado");
+        evento.finalizar(this, "prestar", "NO_DISPONIBLE");
+        return false;
+    }
+    
+    /**
+     * * Devolver el libro
+     * ? Si hay reservas, el libro pasa directamente a la primera de la cola
+     * @return true si estaba prestado y se ha devuelto
+     */
+    public boolean devolver() {
+        EventoLibro evento = new EventoLibro();
+        evento.begin();
+        if (prestado.compareAndSet(true, false)) {
+            generacionPrestamo.incrementAndGet();
+            System.out.println("✅ Libro '" + titulo + "' devuelto correctamente");
+            for (ObservadorLibro o : OBSERVADORES) o.devuelto(this);
+            entregarSiLibre();
+            evento.finalizar(this, "devolver", "DEVUELTO");
+            return true;
+        }
+        System.out.println("⚠️ El libro '" + titulo + "' no estaba prestado");
+        evento.finalizar(this, "devolver", "NO_PRESTADO");
+        return false;
+    }
+    
+    /**
+     * * Reservar el libro
+     * ? Si está libre y no hay cola, la reserva se cumple al momento.
+     * ? Si no, queda en cola y se cumplirá cuando le toque en un devolver().
+     * @param solicitante Quién reserva
+     * @return La reserva (su futuro se completa cuando recibe el libro)
+     */
+    public Reserva reservar(String solicitante) {
+        Reserva reserva = new Reserva(this, solicitante);
+        reservasEnCola.incrementAndGet();
+        reservas.add(reserva);
+        // ! Volver a mirar tras encolar: el libro pudo quedar libre justo antes
+        entregarSiLibre();
+        return reserva;
+    }
+    
+    /**
+     * ? Número de reservas en cola (incluye canceladas aún no descartadas)
+     */
+    public int getReservasPendientes() {
+        return reservasEnCola.get();
+    }
+    
+    // ! Mientras haya cola y el libro esté libre, se lo queda la primera reserva válida.
+    // ! El CAS false → true garantiza que solo un hilo entrega cada copia.
+    private void entregarSiLibre() {
+        while (!reservas.isEmpty() && prestado.compareAndSet(false, true)) {
+            Reserva siguiente;
+            while ((siguiente = reservas.poll()) != null) {
+                reservasEnCola.decrementAndGet();
+                if (siguiente.entregar()) {
+                    generacionPrestamo.incrementAndGet();
+                    System.out.println("✅ Libro '" + titulo + "' entregado a la reserva de " + siguiente.getSolicitante());
+                    for (ObservadorLibro o : OBSERVADORES) o.prestado(this);
+                    return;
+                }
+                // ? Reserva cancelada: se descarta y se prueba con la siguiente
+            }
+            prestado.set(false);  // * Solo había canceladas: el libro vuelve a estar libre
+        }
+    }
+    
+    /**
+     * ? Método estático para obtener el total de libros
+     */
+    public static int getTotalLibros() {
+        return totalLibros;
+    }
+    
+    /**
+     * ? Registrar un observador de préstamos y devoluciones
+     */
+    public static void registrarObservador(ObservadorLibro observador) {
+        OBSERVADORES.add(observador);
+    }
+    
+    /**
+     * ? Dejar de avisar a un observador
+     */
+    public static void eliminarObservador(ObservadorLibro observador) {
+        OBSERVADORES.remove(observador);
+    }
+    
+    // * Getters
+    public String getTitulo() { return titulo; }
+    public String getAutor() { return autor; }
+    public String getIsbn() { return isbn; }
+    public int getNumeroPaginas() { return numeroPaginas; }
+    public boolean isPrestado() { return prestado.get(); }
+    
+    // ? Para observadores: impar mientras hay un préstamo avisado y no devuelto
+    long getGeneracionPrestamo() { return generacionPrestamo.get(); }
+    
+    @Override
+    public String toString() {
+        return "📖 Libro: '" + titulo + "' por " + autor + 
+               " | ISBN: " + isbn + 
+               " | Páginas: " + numeroPaginas +
+               " | " + (prestado.get() ? "🔴 PRESTADO" : "🟢 DISPONIBLE");
+    }
+    
+    /**
+     * ! CLASE ANIDADA ESTÁTICA: una reserva en la cola de un libro
+     * ? Estados: ESPERANDO → ENTREGADA o ESPERANDO → CANCELADA (cambio único por CAS)
+     */
+    static final class Reserva {
+        private static final int ESPERANDO = 0;
+        private static final int ENTREGADA = 1;
+        private static final int CANCELADA = 2;
+        
+        private final Libro libro;
+        private final String solicitante;
+        private final AtomicInteger estado = new AtomicInteger(ESPERANDO);
+        private final CompletableFuture<Libro> entrega = new CompletableFuture<>();
+        
+        private Reserva(Libro libro, String solicitante) {
+            this.libro = libro;
+            this.solicitante = solicitante;
+        }
+        
+        private boolean entregar() {
+            if (estado.compareAndSet(ESPERANDO, ENTREGADA)) {
+                entrega.complete(libro);
+                return true;
+            }
+            return false;
+        }
+        
+        /**
+         * * Cancelar la reserva (la cola la descarta al llegar su turno)
+         * @return true si seguía esperando
+         */
+        public boolean cancelar() {
+            if (estado.compareAndSet(ESPERANDO, CANCELADA)) {
+                entrega.cancel(false);
+                return true;
+            }
+            return false;
+        }
+        
+        public String getSolicitante() { return solicitante; }
+        public boolean isEntregada() { return estado.get() == ENTREGADA; }
+        public CompletableFuture<Libro> getEntrega() { return entrega; }
+        
+        @Override
+        public String toString() {
+            String[] nombres = {"ESPERANDO", "ENTREGADA", "CANCELADA"};
+            return "Reserva{" + solicitante + " → '" + libro.getTitulo() + "', " + nombres[estado.get()] + '}';
+        }
+    }
+}
+
+
+/**
+ * * Observador de préstamos y devoluciones de Libro
+ * ? prestado() se avisa tanto en prestar() como al entregar una reserva
+ */
+interface ObservadorLibro {
+    default void prestado(Libro libro) {}
+    default void devuelto(Libro libro) {}
+}
+
+
+// ═══════════════════════════════════════════════════════════════════════════════════════
+// ║                                                                                       ║
+// ║                   🛰️ EVENTOS JFR (JDK FLIGHT RECORDER)                                ║
+// ║                                                                                       ║
+// ═══════════════════════════════════════════════════════════════════════════════════════
+
+/**
+ * * Eventos propios para perfilar Libro y los setters de Estudiante con JFR
+ * 
+ * ? Patrón de uso: new → begin() → operación → finalizar(...)
+ * ? Todos los eventos llevan id de la entidad, resultado y tamaño del lote (la duración
+ * ? la pone JFR entre begin() y commit()).
+ * ? Con la grabación apagada shouldCommit() es false, no se rellenan campos y el
+ * ? JIT elimina el objeto del evento: el coste es prácticamente nulo.
+ * 
+ * ! Grabar: java -XX:StartFlightRecording=filename=ut5.jfr UT5_ClasesObjetosCompleto
+ * ! Leer:   jfr print --categories UT5 ut5.jfr
+ */
+@Name("ut5.Libro")
+@Label("Préstamo de Libro")
+@Category({"UT5", "Libro"})
+@StackTrace(false)
+class EventoLibro extends Event {
+    @Label("ISBN") String isbn;
+    @Label("Operación") String operacion;
+    @Label("Resultado") String resultado;
+    @Label("Reservas en cola") int reservasEnCola;
+    @Label("Tamaño del lote") int tamanoLote;
+    
+    void finalizar(Libro libro, String operacion, String resultado) {
+        if (shouldCommit()) {
+            this.isbn = libro.getIsbn();
+            this.operacion = operacion;
+            this.resultado = resultado;
+            this.reservasEnCola = libro.getReservasPendientes();  // ? Contador O(1)
+            this.tamanoLote = 1;  // ? prestar/devolver mueven un solo libro
+            commit();
+        }
+    }
+}
+
+@Name("ut5.EstudianteSetter")
+@Label("Setter de Estudiante")
+@Category({"UT5", "Estudiante"})
+@StackTrace(false)
+class EventoSetterEstudiante extends Event {
+    @Label("Expediente") int expediente;
+    @Label("Nombre") String nombre;
+    @Label("Setter") String setter;
+    @Label("Resultado") String resultado;
+    @Label("Tamaño del lote") int tamanoLote;
+    
+    void finalizar(Estudiante e, String setter, String resultado) {
+        if (shouldCommit()) {
+            this.expediente = e.getExpediente();
+            this.nombre = e.getNombre();  // ? Solo informativo: puede cambiar con setNombre
+            this.setter = setter;
+            this.resultado = resultado;
+            this.tamanoLote = 1;  // ? Cada setter cambia un solo atributo
+            commit();
+        }
+    }
+}
+
+
+// ═══════════════════════════════════════════════════════════════════════════════════════
+// ║                                                                                       ║
+// ║            ⏰ CLASE: PLANIFICADOR DE VENCIMIENTOS (RUEDA JERÁRQUICA)                  ║
+// ║                                                                                       ║
+// ═══════════════════════════════════════════════════════════════════════════════════════
+
+/**
+ * * Planificador de fechas de vencimiento de préstamos con una rueda de tiempo jerárquica
+ * 
+ * ? 4 niveles de 64 ranuras: el nivel 0 cubre 64 ticks, el nivel 1 64² ticks, etc.
+ * ? Cada ranura es una lista doblemente enlazada de temporizadores, así que
+ * ? programar y cancelar son O(1). Al avanzar, cuando el nivel 0 da una vuelta,
+ * ? la ranura correspondiente del nivel superior se "derrama" hacia abajo.
+ * 
+ * ! Los vencimientos se entregan en lotes (una lista por llamada a avanzar)
+ * ! y no hay un hilo ni una tarea de ScheduledExecutorService por préstamo.
+ * ! Los plazos más allá de 64⁴ ticks se aparcan en el último nivel y se recolocan.
+ */
+class PlanificadorVencimientos implements ObservadorLibro {
+    private static final int BITS_RANURA = 6;
+    private static final int RANURAS = 1 << BITS_RANURA;  // 64
+    private static final int MASCARA = RANURAS - 1;
+    private static final int NIVELES = 4;
+    
+    /**
+     * ? Temporizador de un préstamo: nodo de la lista de su ranura
+     */
+    private static final class Temporizador {
+        final Libro libro;
+        final long vencimientoMilis;
+        final long tick;
+        Temporizador anterior;
+        Temporizador siguiente;
+        Temporizador[] ranura;  // * Cabeza de la lista donde está (null = fuera de la rueda)
+        
+        Temporizador(Libro libro, long vencimientoMilis, long tick) {
+            this.libro = libro;
+            this.vencimientoMilis = vencimientoMilis;
+            this.tick = tick;
+        }
+    }
+    
+    // ? ruedas[nivel][ranura] es un array de 1 elemento con la cabeza de la lista
+    private final Temporizador[][][] ruedas = new Temporizador[NIVELES][RANURAS][];
+    private final Map<Libro, Temporizador> porLibro = new IdentityHashMap<>();
+    private final long milisPorTick;
+    private final long plazoMilis;
+    private final long origenMilis;
+    private final LongSupplier reloj;
+    private final Consumer<List<Libro>> alVencer;
+    private long tickActual;
+    
+    /**
+     * ! Constructor
+     * @param milisPorTick Resolución de la rueda (ej. 60_000 = 1 minuto)
+     * @param plazoMilis Duración de un préstamo
+     * @param reloj Fuente de tiempo en milisegundos
+     * @param alVencer Recibe cada lote de libros vencidos
+     */
+    public PlanificadorVencimientos(long milisPorTick, long plazoMilis, LongSupplier reloj,
+                                    Consumer<List<Libro>> alVencer) {
+        if (milisPorTick <= 0 || plazoMilis <= 0) {
+            throw new IllegalArgumentException("El tick y el plazo deben ser positivos");
+        }
+        this.milisPorTick = milisPorTick;
+        this.plazoMilis = plazoMilis;
+        this.reloj = reloj;
+        this.alVencer = alVencer;
+        this.origenMilis = reloj.getAsLong();
+        for (Temporizador[][] nivel : ruedas) {
+            for (int i = 0; i < RANURAS; i++) {
+                nivel[i] = new Temporizador[1];
+            }
+        }
+    }
+    
+    /**
+     * * Seguir automáticamente prestar() y devolver() de todos los libros
+     */
+    public void escuchar() {
+        Libro.registrarObservador(this);
+    }
+    
+    public void cerrar() {
+        Libro.eliminarObservador(this);
+    }
+    
+    /**
+     * ! Los avisos llegan fuera de cualquier cerrojo de Libro, así que un devuelto()
+     * ! puede adelantar al prestado() del mismo préstamo. Por eso ninguno se fía del
+     * ! aviso: con el cerrojo del planificador tomado se mira la generación actual del
+     * ! préstamo (impar = prestado). Cada cambio de generación va seguido de su aviso,
+     * ! así que el último aviso procesado siempre deja la rueda como el libro.
+     * ? Se usa la generación y no isPrestado(): una entrega a reservas canceladas marca
+     * ? el libro como prestado un instante sin avisar a nadie.
+     */
+    @Override
+    public synchronized void prestado(Libro libro) {
+        if ((libro.getGeneracionPrestamo() & 1) == 1) {
+            programar(libro, reloj.getAsLong() + plazoMilis);
+        }
+    }
+    
+    @Override
+    public synchronized void devuelto(Libro libro) {
+        if ((libro.getGeneracionPrestamo() & 1) == 0) {
+            cancelar(libro);
+        }
+    }
+    
+    /**
+     * * Programar (o reprogramar) el vencimiento de un préstamo: O(1)
+     */
+    public synchronized void programar(Libro libro, long vencimientoMilis) {
+        Temporizador viejo = porLibro.remove(libro);
+        if (viejo != null) {
+            desenlazar(viejo);
+        }
+        // ? Un vencimiento ya pasado saltará en el siguiente tick
+        long tick = Math.max(tickActual + 1, Math.floorDiv(vencimientoMilis - origenMilis, milisPorTick));
+        Temporizador t = new Temporizador(libro, vencimientoMilis, tick);
+        porLibro.put(libro, t);
+        colocar(t);
+    }
+    
+    /**
+     * * Cancelar el vencimiento (el libro se ha devuelto): O(1)
+     * @return true si había un vencimiento programado
+     */
+    public synchronized boolean cancelar(Libro libro) {
+        Temporizador t = porLibro.remove(libro);
+        if (t == null) {
+            return false;
+        }
+        desenlazar(t);
+        return true;
+    }
+    
+    /**
+     * ? Fecha de vencimiento en milisegundos, o -1 si no está prestado
+     */
+    public synchronized long getVencimiento(Libro libro) {
+        Temporizador t = porLibro.get(libro);
+        return t == null ? -1 : t.vencimientoMilis;
+    }
+    
+    public synchronized int getPrestamosActivos() {
+        return porLibro.size();
+    }
+    
+    /**
+     * * Avanzar la rueda hasta el instante actual y entregar el lote de vencidos
+     * ? Pensado para llamarse periódicamente desde un único hilo (ver arrancar)
+     * @return Número de préstamos vencidos en este avance
+     */
+    public int avanzar() {
+        List<Libro> vencidos = new ArrayList<>();
+        synchronized (this) {
+            long objetivo = Math.floorDiv(reloj.getAsLong() - origenMilis, milisPorTick);
+            while (tickActual < objetivo) {
+                if (porLibro.isEmpty()) {
+                    tickActual = objetivo;  // ! Rueda vacía: saltamos sin recorrer ticks
+                    break;
+                }
+                tickActual++;
+                derramar();
+                Temporizador[] ranura = ruedas[0][(int) (tickActual & MASCARA)];
+                for (Temporizador t = ranura[0]; t != null; t = t.siguiente) {
+                    t.ranura = null;
+                    porLibro.remove(t.libro);
+                    vencidos.add(t.libro);
+                }
+                ranura[0] = null;
+            }
+        }
+        // * El lote se entrega fuera del cerrojo
+        if (!vencidos.isEmpty()) {
+            alVencer.accept(vencidos);
+        }
+        return vencidos.size();
+    }
+    
+    /**
+     * * Arrancar un único hilo demonio que avanza la rueda cada tick
+     */
+    public Thread arrancar() {
+        Thread hilo = new Thread(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                avanzar();
+                try {
+                    Thread.sleep(milisPorTick);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, "planificador-vencimientos");
+        hilo.setDaemon(true);
+        hilo.start();
+        return hilo;
+    }
+    
+    // ! Al completar una vuelta de un nivel se recolocan los temporizadores del nivel superior
+    private void derramar() {
+        for (int nivel = 1; nivel < NIVELES; nivel++) {
+            if (((tickActual >> (BITS_RANURA * nivel - BITS_RANURA)) & MASCARA) != 0) {
+                return;
+            }
+            Temporizador[] ranura = ruedas[nivel][(int) ((tickActual >> (BITS_RANURA * nivel)) & MASCARA)];
+            Temporizador t = ranura[0];
+            ranura[0] = null;
+            while (t != null) {
+                Temporizador siguiente = t.siguiente;
+                colocar(t);
+                t = siguiente;
+            }
+        }
+    }
+    
+    // ? Nivel = cuántos bloques de 6 bits separan el vencimiento del tick actual
+    private void colocar(Temporizador t) {
+        long distancia = t.tick - tickActual;
+        int nivel = 0;
+        while (nivel < NIVELES - 1 && distancia >= (1L << (BITS_RANURA * (nivel + 1)))) {
+            nivel++;
+        }
+        long tick = t.tick;
+        if (distancia >= (1L << (BITS_RANURA * NIVELES))) {
+            // ! Fuera del horizonte: se aparca en la ranura más lejana del último nivel
+            tick = tickActual + (1L << (BITS_RANURA * NIVELES)) - 1;
+        }
+        Temporizador[] ranura = ruedas[nivel][(int) ((tick >> (BITS_RANURA * nivel)) & MASCARA)];
+        t.ranura = ranura;
+        t.anterior = null;
+        t.siguiente = ranura[0];
+        if (ranura[0] != null) {
+            ranura[0].anterior = t;
+        }
+        ranura[0] = t;
+    }
+    
+    private void desenlazar(Temporizador t) {
+        if (t.ranura == null) {
+            return;
+        }
+        if (t.anterior != null) {
+            t.anterior.siguiente = t.siguiente;
+        } else {
+            t.ranura[0] = t.siguiente;
+        }
+        if (t.siguiente != null) {
+            t.siguiente.anterior = t.anterior;
+        }
+        t.ranura = null;
+        t.anterior = null;
+        t.siguiente = null;
+    }
+}
+
+
+// ═══════════════════════════════════════════════════════════════════════════════════════
+// ║                                                                                       ║
+// ║                 🌐 CLASE: SERVIDOR DE BIBLIOTECA (NIO EN LOCALHOST)                   ║
+// ║                                                                                       ║
+// ═══════════════════════════════════════════════════════════════════════════════════════
+
+/**
+ * * Servidor no bloqueante (NIO) para operar con libros desde otros procesos locales
+ * 
+ * ? Protocolo de líneas (UTF-8, una orden por línea, respuesta en el mismo orden):
+ * ?   PRESTAR <isbn>   → OK | NO_DISPONIBLE | NO_EXISTE
+ * ?   DEVOLVER <isbn>  → OK | NO_PRESTADO | NO_EXISTE
+ * ?   CONSULTAR <isbn> → LIBRO <isbn> PRESTADO|DISPONIBLE <titulo> | NO_EXISTE
+ * ?   CONTAR           → TOTAL <libros> PRESTADOS <prestados>
+ * 
+ * ? Arquitectura: un hilo acepta conexiones y las reparte entre N hilos trabajadores,
+ * ? cada uno con su propio Selector. Un cliente puede encadenar órdenes sin esperar
+ * ? (pipelining): se procesan todas las líneas completas leídas y las respuestas se
+ * ? acumulan en un único buffer de salida que se escribe de una vez (respuestas en lote).
+ * 
+ * ! Contrapresión: mientras quedan respuestas sin escribir no se lee más de esa conexión
+ * ! (OP_READ desactivado), así un cliente que envía sin leer llena su propio socket en
+ * ! vez de la memoria del servidor. Si aun así la salida pasa de MAX_SALIDA, se cierra.
+ * 
+ * ! Solo escucha en la interfaz de loopback (127.0.0.1): no es accesible desde fuera.
+ * ! (Con Java 21 se podría usar un hilo virtual por conexión; aquí se usa NIO porque
+ * !  el proyecto compila con Java 17.)
+ */
+class ServidorBiblioteca implements ObservadorLibro {
+    private static final int MAX_LINEA = 1024;
+    private static final int MAX_SALIDA = 64 * 1024;
+    
+    private final Map<String, Libro> catalogo = new ConcurrentHashMap<>();
+    private final AtomicInteger prestados = new AtomicInteger();
+    private final int numeroTrabajadores;
+    private final List<Trabajador> trabajadores = new ArrayList<>();
+    private ServerSocketChannel servidor;
+    private Selector selectorAceptar;
+    private Thread hiloAceptar;
+    private volatile boolean activo;
+    
+    public ServidorBiblioteca(int numeroTrabajadores) {
+        if (numeroTrabajadores <= 0) {
+            throw new IllegalArgumentException("Se necesita al menos un trabajador");
+        }
+        this.numeroTrabajadores = numeroTrabajadores;
+    }
+    
+    /**
+     * * Añadir un libro al catálogo que sirve este servidor
+     */
+    public void registrar(Libro libro) {
+        if (catalogo.putIfAbsent(libro.getIsbn(), libro) == null && libro.isPrestado()) {
+            prestados.incrementAndGet();
+        }
+    }
+    
+    // ? Contador de prestados al día aunque se preste fuera del servidor
+    @Override
+    public void prestado(Libro libro) {
+        if (catalogo.get(libro.getIsbn()) == libro) {
+            prestados.incrementAndGet();
+        }
+    }
+    
+    @Override
+    public void devuelto(Libro libro) {
+        if (catalogo.get(libro.getIsbn()) == libro) {
+            prestados.decrementAndGet();
+        }
+    }
+    
+    /**
+     * * Arrancar el servidor en 127.0.0.1
+     * @param puerto Puerto (0 = uno libre cualquiera)
+     * @return El puerto en el que escucha
+     */
+    public synchronized int iniciar(int puerto) throws IOException {
+        servidor = ServerSocketChannel.open();
+        servidor.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), puerto), 4096);
+        servidor.configureBlocking(false);
+        selectorAceptar = Selector.open();
+        servidor.register(selectorAceptar, SelectionKey.OP_ACCEPT);
+        activo = true;
+        Libro.registrarObservador(this);
+        for (int i = 0; i < numeroTrabajadores; i++) {
+            Trabajador t = new Trabajador(Selector.open());
+            trabajadores.add(t);
+            Thread hilo = new Thread(t, "biblioteca-nio-" + i);
+            hilo.setDaemon(true);
+            hilo.start();
+        }
+        hiloAceptar = new Thread(this::aceptar, "biblioteca-aceptar");
+        hiloAceptar.setDaemon(true);
+        hiloAceptar.start();
+        return ((InetSocketAddress) servidor.getLocalAddress()).getPort();
+    }
+    
+    /**
+     * * Parar el servidor y cerrar todas las conexiones
+     */
+    public synchronized void detener() throws IOException {
+        activo = false;
+        Libro.eliminarObservador(this);
+        if (selectorAceptar != null) {
+            selectorAceptar.wakeup();
+        }
+        for (Trabajador t : trabajadores) {
+            t.selector.wakeup();
+        }
+        try {
+            if (hiloAceptar != null) {
+                hiloAceptar.join(1000);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (servidor != null) {
+            servidor.close();
+        }
+    }
+    
+    // ! Hilo aceptador: reparte las conexiones en turno rotatorio
+    private void aceptar() {
+        int siguiente = 0;
+        try {
+            while (activo) {
+                selectorAceptar.select();
+                selectorAceptar.selectedKeys().clear();
+                SocketChannel canal;
+                while ((canal = servidor.accept()) != null) {
+                    canal.configureBlocking(false);
+                    canal.socket().setTcpNoDelay(true);
+                    Trabajador t = trabajadores.get(siguiente++ % trabajadores.size());
+                    t.nuevas.add(canal);
+                    t.selector.wakeup();
+                }
+            }
+        } catch (IOException e) {
+            if (activo) {
+                System.out.println("⚠️ Error aceptando conexiones: " + e.getMessage());
+            }
+        } finally {
+            try {
+                selectorAceptar.close();
+            } catch (IOException ignorada) {
+                // * Cerrando: no hay nada más que hacer
+            }
+        }
+    }
+    
+    /**
+     * ? Ejecuta una orden y devuelve la línea de respuesta (sin salto de línea)
+     */
+    String ejecutar(String linea) {
+        String[] partes = linea.trim().split(" ", 2);
+        String orden = partes[0].toUpperCase(Locale.ROOT);
+        if (orden.equals("CONTAR")) {
+            return "TOTAL " + catalogo.size() + " PRESTADOS " + prestados.get();
+        }
+        if (partes.length < 2) {
+            return "ERROR orden desconocida o sin ISBN";
+        }
+        Libro libro = catalogo.get(partes[1].trim());
+        if (!orden.equals("PRESTAR") && !orden.equals("DEVOLVER") && !orden.equals("CONSULTAR")) {
+            return "ERROR orden desconocida";
+        }
+        if (libro == null) {
+            return "NO_EXISTE";
+        }
+        switch (orden) {
+            case "PRESTAR":
+                return libro.prestar() ? "OK" : "NO_DISPONIBLE";
+            case "DEVOLVER":
+                return libro.devolver() ? "OK" : "NO_PRESTADO";
+            default:
+                return "LIBRO " + libro.getIsbn() + (libro.isPrestado() ? " PRESTADO " : " DISPONIBLE ") + libro.getTitulo();
+        }
+    }
+    
+    /**
+     * ! CLASE ANIDADA: hilo trabajador con su propio Selector
+     */
+    private final class Trabajador implements Runnable {
+        final Selector selector;
+        final ConcurrentLinkedQueue<SocketChannel> nuevas = new ConcurrentLinkedQueue<>();
+        
+        Trabajador(Selector selector) {
+            this.selector = selector;
+        }
+        
+        @Override
+        public void run() {
+            try {
+                while (activo) {
+                    selector.select();
+                    SocketChannel canal;
+                    while ((canal = nuevas.poll()) != null) {
+                        canal.register(selector, SelectionKey.OP_READ, new Conexion());
+                    }
+                    Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                    while (it.hasNext()) {
+                        SelectionKey clave = it.next();
+                        it.remove();
+                        try {
+                            if (clave.isValid() && clave.isReadable()) {
+                                leer(clave);
+                            }
+                            if (clave.isValid() && clave.isWritable()) {
+                                escribir(clave);
+                            }
+                        } catch (IOException e) {
+                            cerrar(clave);
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                System.out.println("⚠️ Error en trabajador NIO: " + e.getMessage());
+            } finally {
+                for (SelectionKey clave : selector.keys()) {
+                    cerrar(clave);
+                }
+                try {
+                    selector.close();
+                } catch (IOException ignorada) {
+                    // * Cerrando: no hay nada más que hacer
+                }
+            }
+        }
+        
+        // ? Procesa todas las líneas completas y responde en un único lote
+        private void leer(SelectionKey clave) throws IOException {
+            SocketChannel canal = (SocketChannel) clave.channel();
+            Conexion conexion = (Conexion) clave.attachment();
+            int leidos = canal.read(conexion.entrada);
+            if (leidos < 0) {
+                cerrar(clave);
+                return;
+            }
+            ByteBuffer entrada = conexion.entrada;
+            entrada.flip();
+            int inicioLinea = entrada.position();
+            for (int i = entrada.position(); i < entrada.limit(); i++) {
+                if (entrada.get(i) == '\n') {
+                    String linea = new String(entrada.array(), inicioLinea, i - inicioLinea, StandardCharsets.UTF_8);
+                    if (!linea.isBlank() && !conexion.responder(ejecutar(linea))) {
+                        cerrar(clave);  // ! Demasiadas respuestas pendientes: cliente que no lee
+                        return;
+                    }
+                    inicioLinea = i + 1;
+                }
+            }
+            entrada.position(inicioLinea);
+            entrada.compact();
+            if (!entrada.hasRemaining()) {
+                cerrar(clave);  // ! Línea demasiado larga: cliente no válido
+                return;
+            }
+            escribir(clave);
+        }
+        
+        private void escribir(SelectionKey clave) throws IOException {
+            Conexion conexion = (Conexion) clave.attachment();
+            ByteBuffer salida = conexion.salida;
+            salida.flip();
+            ((SocketChannel) clave.channel()).write(salida);
+            salida.compact();
+            // * Si no cabe todo en el socket, esperamos a que se pueda escribir
+            // ! y dejamos de leer hasta vaciar la salida (contrapresión)
+            int interes = salida.position() > 0 ? SelectionKey.OP_WRITE : SelectionKey.OP_READ;
+            if (clave.interestOps() != interes) {
+                clave.interestOps(interes);
+            }
+        }
+        
+        private void cerrar(SelectionKey clave) {
+            clave.cancel();
+            try {
+                clave.channel().close();
+            } catch (IOException ignorada) {
+                // * El canal ya estaba roto
+            }
+        }
+    }
+    
+    /**
+     * ? Estado por conexión: buffers de entrada y de salida (este crece hasta MAX_SALIDA)
+     */
+    private static final class Conexion {
+        final ByteBuffer entrada = ByteBuffer.allocate(MAX_LINEA);
+        ByteBuffer salida = ByteBuffer.allocate(512);
+        
+        /**
+         * ? Encola una respuesta
+         * @return false si no cabe sin superar MAX_SALIDA (la conexión debe cerrarse)
+         */
+        boolean responder(String respuesta) {
+            byte[] bytes = (respuesta + "\n").getBytes(StandardCharsets.UTF_8);
+            if (salida.remaining() < bytes.length) {
+                if (salida.position() + bytes.length > MAX_SALIDA) {
+                    return false;
+                }
+                ByteBuffer mayor = ByteBuffer.allocate(Math.min(MAX_SALIDA,
+                        Math.max(salida.capacity() * 2, salida.position() + bytes.length)));
+                salida.flip();
+                mayor.put(salida);
+                salida = mayor;
+            }
+            salida.put(bytes);
+            return true;
+        }
+    }
+}
+
+// ═══════════════════════════════════════════════════════════════════════════════════════
+// ║                                                                                       ║
+// ║                 🔤 CODEC JSON EN STREAMING (SIN REFLEXIÓN)                            ║
+// ║                                                                                       ║
+// ═══════════════════════════════════════════════════════════════════════════════════════
+
+/**
+ * ? Escritor JSON sobre un ByteBuffer fijo: codifica UTF-8 directamente en el array
+ * ? del búfer y lo vuelca al canal cuando se llena (memoria constante con arrays enormes).
+ * ? Las claves van precodificadas (clave("nombre") → "nombre":) para no recodificarlas.
+ * ! Una sola profundidad de anidamiento por bit: máximo 62 niveles.
+ */
+class EscritorJson {
+    private final WritableByteChannel destino;
+    private final ByteBuffer buffer;
+    private final byte[] datos;
+    private int pos;
+    private int profundidad;
+    private long primeros = 1;          // bit d = siguiente elemento en nivel d es el primero
+    private boolean despuesDeClave;
+
+    public EscritorJson(WritableByteChannel destino, int capacidad) {
+        if (capacidad < 64) throw new IllegalArgumentException("Capacidad mínima: 64 bytes");
+        this.destino = destino;
+        this.buffer = ByteBuffer.allocate(capacidad);
+        this.datos = buffer.array();
+    }
+
+    public static byte[] clave(String nombre) {
+        return ('"' + nombre + "\":").getBytes(StandardCharsets.UTF_8);
+    }
+
+    // * Valor constante precodificado (p. ej. "ADMIN" con comillas)
+    public static byte[] literal(String texto) {
+        return ('"' + texto + '"').getBytes(StandardCharsets.UTF_8);
+    }
+
+    public EscritorJson inicioObjeto() throws IOException { return abrir((byte) '{'); }
+    public EscritorJson finObjeto() throws IOException { return cerrar((byte) '}'); }
+    public EscritorJson inicioArray() throws IOException { return abrir((byte) '['); }
+    public EscritorJson finArray() throws IOException { return cerrar((byte) ']'); }
+
+    public EscritorJson campo(byte[] clave) throws IOException {
+        separador();
+        crudo(clave);
+        despuesDeClave = true;
+        return this;
+    }
+
+    public EscritorJson valor(String texto) throws IOException {
+        if (texto == null) return nulo();
+        separador();
+        asegurar(1);
+        datos[pos++] = '"';
+        for (int i = 0; i < texto.length(); i++) {
+            char c = texto.charAt(i);
+            if (pos + 12 > datos.length) vaciar();
+            if (c >= 0x20 && c < 0x80) {
+                if (c == '"' || c == '\\') datos[pos++] = '\\';
+                datos[pos++] = (byte) c;
+            } else if (c < 0x20) {
+                escaparControl(c);
+            } else if (c < 0x800) {
+                datos[pos++] = (byte) (0xC0 | (c >> 6));
+                datos[pos++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < texto.length() && Character.isLowSurrogate(texto.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, texto.charAt(++i));
+                datos[pos++] = (byte) (0xF0 | (cp >> 18));
+                datos[pos++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                datos[pos++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                datos[pos++] = (byte) (0x80 | (cp & 0x3F));
+            } else {
+                datos[pos++] = (byte) (0xE0 | (c >> 12));
+                datos[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                datos[pos++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        asegurar(1);
+        datos[pos++] = '"';
+        return this;
+    }
+
+    public EscritorJson valor(long numero) throws IOException {
+        separador();
+        asegurar(20);
+        if (numero == Long.MIN_VALUE) {
+            crudo(Long.toString(numero).getBytes(StandardCharsets.US_ASCII));
+            return this;
+        }
+        if (numero < 0) {
+            datos[pos++] = '-';
+            numero = -numero;
+        }
+        int inicio = pos;
+        do {
+            datos[pos++] = (byte) ('0' + numero % 10);
+            numero /= 10;
+        } while (numero != 0);
+        for (int i = inicio, j = pos - 1; i < j; i++, j--) {   // * Los dígitos salen al revés
+            byte t = datos[i];
+            datos[i] = datos[j];
+            datos[j] = t;
+        }
+        return this;
+    }
+
+    // ? NaN e infinitos no existen en JSON: se escriben como null
+    public EscritorJson valor(double numero) throws IOException {
+        if (Double.isNaN(numero) || Double.isInfinite(numero)) return nulo();
+        if (numero == (long) numero && Math.abs(numero) < 1e15) {
+            valor((long) numero);
+            asegurar(2);
+            datos[pos++] = '.';
+            datos[pos++] = '0';
+            return this;
+        }
+        separador();
+        crudo(Double.toString(numero).getBytes(StandardCharsets.US_ASCII));
+        return this;
+    }
+
+    public EscritorJson valor(boolean logico) throws IOException {
+        separador();
+        crudo(logico ? VERDADERO : FALSO);
+        return this;
+    }
+
+    // * Valor precodificado con literal(...)
+    public EscritorJson valorLiteral(byte[] literal) throws IOException {
+        separador();
+        crudo(literal);
+        return this;
+    }
+
+    public EscritorJson nulo() throws IOException {
+        separador();
+        crudo(NULO);
+        return this;
+    }
+
+    // * Escribe en el canal lo que quede en el búfer
+    public void vaciar() throws IOException {
+        buffer.clear().limit(pos);
+        while (buffer.hasRemaining()) destino.write(buffer);
+        pos = 0;
+    }
+
+    private static final byte[] VERDADERO = {'t', 'r', 'u', 'e'};
+    private static final byte[] FALSO = {'f', 'a', 'l', 's', 'e'};
+    private static final byte[] NULO = {'n', 'u', 'l', 'l'};
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    private EscritorJson abrir(byte simbolo) throws IOException {
+        separador();
+        if (++profundidad > 62) throw new IOException("JSON demasiado anidado");
+        primeros |= 1L << profundidad;
+        asegurar(1);
+        datos[pos++] = simbolo;
+        return this;
+    }
+
+    private EscritorJson cerrar(byte simbolo) throws IOException {
+        profundidad--;
+        asegurar(1);
+        datos[pos++] = simbolo;
+        return this;
+    }
+
+    // ! La coma va delante de todo elemento salvo el primero del nivel y el valor tras una clave
+    private void separador() throws IOException {
+        if (despuesDeClave) {
+            despuesDeClave = false;
+            return;
+        }
+        long bit = 1L << profundidad;
+        if ((primeros & bit) != 0) {
+            primeros &= ~bit;
+        } else {
+            asegurar(1);
+            datos[pos++] = ',';
+        }
+    }
+
+    private void escaparControl(char c) {
+        datos[pos++] = '\\';
+        switch (c) {
+            case '\n': datos[pos++] = 'n'; break;
+            case '\r': datos[pos++] = 'r'; break;
+            case '\t': datos[pos++] = 't'; break;
+            default:
+                datos[pos++] = 'u';
+                datos[pos++] = '0';
+                datos[pos++] = '0';
+                datos[pos++] = HEX[c >> 4];
+                datos[pos++] = HEX[c & 0xF];
+        }
+    }
+
+    private void crudo(byte[] bytes) throws IOException {
+        if (bytes.length > datos.length) {
+            vaciar();
+            ByteBuffer grande = ByteBuffer.wrap(bytes);
+            while (grande.hasRemaining()) destino.write(grande);
+            return;
+        }
+        asegurar(bytes.length);
+        System.arraycopy(bytes, 0, datos, pos, bytes.length);
+        pos += bytes.length;
+    }
+
+    private void asegurar(int bytes) throws IOException {
+        if (pos + bytes > datos.length) vaciar();
+    }
+}
+
+/**
+ * ? Lector JSON incremental: rellena un ByteBuffer fijo desde el canal según avanza.
+ * ? Las claves se comparan byte a byte con las del codec (sin crear Strings);
+ * ? las claves desconocidas se saltan con su valor completo.
+ * ! Los errores de sintaxis se lanzan como IOException con la posición del byte.
+ */
+class LectorJson {
+    public static final int FIN = -1;
+
+    private final ReadableByteChannel origen;
+    private final ByteBuffer buffer;
+    private final byte[] datos;
+    private int pos;
+    private int lim;
+    private long consumidos;
+    private int profundidad;
+    private long primeros;
+    private char[] texto = new char[64];
+    private byte[] claveLeida = new byte[32];
+
+    public LectorJson(ReadableByteChannel origen, int capacidad) {
+        if (capacidad < 64) throw new IllegalArgumentException("Capacidad mínima: 64 bytes");
+        this.origen = origen;
+        this.buffer = ByteBuffer.allocate(capacidad);
+        this.datos = buffer.array();
+    }
+
+    // * Nombres tal y como los espera siguienteCampo/leerOpcion
+    public static byte[][] nombres(String... nombres) {
+        byte[][] resultado = new byte[nombres.length][];
+        for (int i = 0; i < nombres.length; i++) resultado[i] = nombres[i].getBytes(StandardCharsets.UTF_8);
+        return resultado;
+    }
+
+    // ? false si el valor es null
+    public boolean inicioObjeto() throws IOException { return abrir('{'); }
+    public boolean inicioArray() throws IOException { return abrir('['); }
+
+    // * Índice de la siguiente clave conocida, o FIN al cerrar el objeto
+    public int siguienteCampo(byte[][] campos) throws IOException {
+        while (siguienteMiembro('}')) {
+            int n = leerCadenaCruda();
+            esperar(':');
+            int indice = buscar(campos, n);
+            if (indice >= 0) return indice;
+            saltarValor();
+        }
+        return FIN;
+    }
+
+    // * true si el array tiene otro elemento (consume la coma), false si se ha cerrado
+    public boolean siguienteElemento() throws IOException {
+        return siguienteMiembro(']');
+    }
+
+    public String leerString() throws IOException {
+        int c = saltarEspacios();
+        if (c == 'n') {
+            literal(NULO);
+            return null;
+        }
+        esperar('"');
+        int n = 0;
+        while (true) {
+            // ? Camino rápido: tramo ASCII sin escapes dentro del búfer actual
+            int b;
+            while (pos < lim && (b = datos[pos]) > 0 && b != '"' && b != '\\') {
+                if (n == texto.length) texto = Arrays.copyOf(texto, n * 2);
+                texto[n++] = (char) b;
+                pos++;
+            }
+            b = leerByte();
+            if (b == '"') break;
+            if (n + 2 > texto.length) texto = Arrays.copyOf(texto, texto.length * 2);
+            if (b == '\\') {
+                texto[n++] = leerEscape();
+            } else if (b < 0x80) {
+                texto[n++] = (char) b;
+            } else if (b < 0xE0) {
+                texto[n++] = (char) (((b & 0x1F) << 6) | continuacion());
+            } else if (b < 0xF0) {
+                texto[n++] = (char) (((b & 0x0F) << 12) | (continuacion() << 6) | continuacion());
+            } else {
+                int cp = ((b & 0x07) << 18) | (continuacion() << 12) | (continuacion() << 6) | continuacion();
+                texto[n++] = Character.highSurrogate(cp);
+                texto[n++] = Character.lowSurrogate(cp);
+            }
+        }
+        return new String(texto, 0, n);
+    }
+
+    // * Índice de la opción (cadena) leída entre las dadas; -1 si es null o desconocida
+    public int leerOpcion(byte[][] opciones) throws IOException {
+        if (saltarEspacios() == 'n') {
+            literal(NULO);
+            return -1;
+        }
+        esperar('"');
+        int n = leerCadenaCruda();
+        return buscar(opciones, n);
+    }
+
+    // ! Se acumula en negativo (como Long.parseLong): así cabe también Long.MIN_VALUE
+    public long leerLong() throws IOException {
+        int c = saltarEspacios();
+        boolean negativo = c == '-';
+        if (negativo) pos++;
+        long limite = negativo ? Long.MIN_VALUE : -Long.MAX_VALUE;
+        long minimoAntesDePor10 = limite / 10;
+        long valor = 0;
+        int digitos = 0;
+        while ((c = mirar()) >= '0' && c <= '9') {
+            pos++;
+            int d = c - '0';
+            if (valor < minimoAntesDePor10 || valor * 10 < limite + d) throw error("Número entero fuera de rango");
+            valor = valor * 10 - d;
+            digitos++;
+        }
+        if (digitos == 0) throw error("Se esperaba un número");
+        return negativo ? valor : -valor;
+    }
+
+    public int leerInt() throws IOException {
+        long valor = leerLong();
+        if (valor < Integer.MIN_VALUE || valor > Integer.MAX_VALUE) throw error("Entero fuera de rango");
+        return (int) valor;
+    }
+
+    // ? Enteros y decimales cortos se calculan sin crear objetos; el resto con Double.parseDouble
+    public double leerDouble() throws IOException {
+        int c = saltarEspacios();
+        if (c == 'n') {
+            literal(NULO);
+            return Double.NaN;
+        }
+        int n = 0;
+        while ((c = mirar()) != -1 && (c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E' || (c >= '0' && c <= '9'))) {
+            if (n == texto.length) texto = Arrays.copyOf(texto, n * 2);
+            texto[n++] = (char) c;
+            pos++;
+        }
+        if (n == 0) throw error("Se esperaba un número");
+        long mantisa = 0;
+        int decimales = -1;
+        int digitos = 0;
+        int inicio = texto[0] == '-' ? 1 : 0;
+        boolean simple = n - inicio <= 16;
+        for (int i = inicio; i < n && simple; i++) {
+            char d = texto[i];
+            if (d >= '0' && d <= '9') {
+                mantisa = mantisa * 10 + (d - '0');
+                digitos++;
+                if (decimales >= 0) decimales++;
+            } else if (d == '.' && decimales < 0) {
+                decimales = 0;
+            } else {
+                simple = false;
+            }
+        }
+        if (simple && digitos > 0 && decimales <= POTENCIAS.length - 1 && mantisa < (1L << 53)) {
+            double valor = decimales > 0 ? mantisa / POTENCIAS[decimales] : mantisa;
+            return inicio == 1 ? -valor : valor;
+        }
+        try {
+            return Double.parseDouble(new String(texto, 0, n));
+        } catch (NumberFormatException e) {
+            throw error("Número inválido");
+        }
+    }
+
+    public boolean leerBoolean() throws IOException {
+        if (saltarEspacios() == 't') {
+            literal(VERDADERO);
+            return true;
+        }
+        literal(FALSO);
+        return false;
+    }
+
+    // * Salta un valor completo (cadena, número, literal, objeto o array)
+    public void saltarValor() throws IOException {
+        int c = saltarEspacios();
+        if (c == '"') {
+            pos++;
+            int b;
+            while ((b = leerByte()) != '"') {
+                if (b == '\\') leerByte();
+            }
+        } else if (c == '{' || c == '[') {
+            int nivel = 0;
+            do {
+                int b = leerByte();
+                if (b == '{' || b == '[') nivel++;
+                else if (b == '}' || b == ']') nivel--;
+                else if (b == '"') {
+                    while ((b = leerByte()) != '"') {
+                        if (b == '\\') leerByte();
+                    }
+                }
+            } while (nivel > 0);
+        } else {
+            while ((c = mirar()) != -1 && c != ',' && c != '}' && c != ']' && c > ' ') pos++;
+        }
+    }
+
+    private static final byte[] VERDADERO = {'t', 'r', 'u', 'e'};
+    private static final byte[] FALSO = {'f', 'a', 'l', 's', 'e'};
+    private static final byte[] NULO = {'n', 'u', 'l', 'l'};
+    private static final double[] POTENCIAS = {1, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+            1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+    private boolean abrir(char simbolo) throws IOException {
+        if (saltarEspacios() == 'n') {
+            literal(NULO);
+            return false;
+        }
+        esperar(simbolo);
+        if (++profundidad > 62) throw error("JSON demasiado anidado");
+        primeros |= 1L << profundidad;
+        return true;
+    }
+
+    private boolean siguienteMiembro(char cierre) throws IOException {
+        int c = saltarEspacios();
+        if (c == cierre) {
+            pos++;
+            profundidad--;
+            return false;
+        }
+        long bit = 1L << profundidad;
+        if ((primeros & bit) != 0) {
+            primeros &= ~bit;
+        } else {
+            esperar(',');
+        }
+        if (cierre == '}') {
+            saltarEspacios();
+            esperar('"');
+        }
+        return true;
+    }
+
+    // ? Bytes de una cadena sin decodificar (para comparar con claves y opciones)
+    private int leerCadenaCruda() throws IOException {
+        int n = 0;
+        int b;
+        while ((b = leerByte()) != '"') {
+            if (b == '\\') b = leerEscape();
+            if (n == claveLeida.length) claveLeida = Arrays.copyOf(claveLeida, n * 2);
+            claveLeida[n++] = (byte) b;
+        }
+        return n;
+    }
+
+    private int buscar(byte[][] candidatos, int n) {
+        for (int i = 0; i < candidatos.length; i++) {
+            byte[] candidato = candidatos[i];
+            if (candidato.length == n && Arrays.equals(candidato, 0, n, claveLeida, 0, n)) return i;
+        }
+        return -1;
+    }
+
+    private char leerEscape() throws IOException {
+        int e = leerByte();
+        switch (e) {
+            case 'n': return '\n';
+            case 'r': return '\r';
+            case 't': return '\t';
+            case 'b': return '\b';
+            case 'f': return '\f';
+            case 'u':
+                int cp = 0;
+                for (int i = 0; i < 4; i++) cp = (cp << 4) | Character.digit(leerByte(), 16);
+                return (char) cp;
+            default: return (char) e;   // ? \" \\ \/
+        }
+    }
+
+    private int continuacion() throws IOException {
+        return leerByte() & 0x3F;
+    }
+
+    private void literal(byte[] esperado) throws IOException {
+        for (byte b : esperado) {
+            if (leerByte() != b) throw error("Literal inválido");
+        }
+    }
+
+    private void esperar(char simbolo) throws IOException {
+        if (leerByte() != simbolo) throw error("Se esperaba '" + simbolo + "'");
+    }
+
+    private int saltarEspacios() throws IOException {
+        int c;
+        while ((c = mirar()) == ' ' || c == '\n' || c == '\r' || c == '\t') pos++;
+        if (c == -1) throw error("Fin de datos inesperado");
+        return c;
+    }
+
+    private int mirar() throws IOException {
+        if (pos == lim && !rellenar()) return -1;
+        return datos[pos] & 0xFF;
+    }
+
+    private int leerByte() throws IOException {
+        if (pos == lim && !rellenar()) throw error("Fin de datos inesperado");
+        return datos[pos++] & 0xFF;
+    }
+
+    private boolean rellenar() throws IOException {
+        consumidos += lim;
+        buffer.clear();
+        int leidos;
+        do {
+            leidos = origen.read(buffer);
+        } while (leidos == 0);
+        pos = 0;
+        lim = Math.max(0, buffer.position());
+        return leidos > 0;
+    }
+
+    private IOException error(String mensaje) {
+        return new IOException("JSON inválido en el byte " + (consumidos + pos) + ": " + mensaje);
+    }
+}
+
+/**
+ * ? Codec escrito a mano para un tipo: sin reflexión, campos precodificados.
+ * ? escribirTodos/leerTodos tratan arrays enormes de elemento en elemento.
+ */
+interface CodecJson<T> {
+    void escribir(T valor, EscritorJson salida) throws IOException;
+
+    // ? null si el valor JSON es null
+    T leer(LectorJson entrada) throws IOException;
+
+    default void escribirTodos(Iterable<? extends T> valores, EscritorJson salida) throws IOException {
+        salida.inicioArray();
+        for (T valor : valores) escribir(valor, salida);
+        salida.finArray();
+        salida.vaciar();
+    }
+
+    default long leerTodos(LectorJson entrada, Consumer<? super T> destino) throws IOException {
+        long leidos = 0;
+        if (!entrada.inicioArray()) return 0;
+        while (entrada.siguienteElemento()) {
+            destino.accept(leer(entrada));
+            leidos++;
+        }
+        return leidos;
+    }
+}
+
+/**
+ * * Codec JSON de Direccion
+ */
+class CodecDireccion implements CodecJson<Direccion> {
+    private static final byte[] CALLE = EscritorJson.clave("calle");
+    private static final byte[] NUMERO = EscritorJson.clave("numero");
+    private static final byte[] CIUDAD = EscritorJson.clave("ciudad");
+    private static final byte[] CODIGO_POSTAL = EscritorJson.clave("codigoPostal");
+    private static final byte[][] CAMPOS = LectorJson.nombres("calle", "numero", "ciudad", "codigoPostal");
+    
+    @Override
+    public void escribir(Direccion d, EscritorJson salida) throws IOException {
+        if (d == null) {
+            salida.nulo();
+            return;
+        }
+        salida.inicioObjeto();
+        salida.campo(CALLE).valor(d.getCalle());
+        salida.campo(NUMERO).valor(d.getNumero());
+        salida.campo(CIUDAD).valor(d.getCiudad());
+        salida.campo(CODIGO_POSTAL).valor(d.getCodigoPostal());
+        salida.finObjeto();
+    }
+    
+    @Override
+    public Direccion leer(LectorJson entrada) throws IOException {
+        if (!entrada.inicioObjeto()) return null;
+        String calle = null;
+        int numero = 0;
+        String ciudad = null;
+        String codigoPostal = null;
+        int campo;
+        while ((campo = entrada.siguienteCampo(CAMPOS)) != LectorJson.FIN) {
+            switch (campo) {
+                case 0: calle = entrada.leerString(); break;
+                case 1: numero = entrada.leerInt(); break;
+                case 2: ciudad = entrada.leerString(); break;
+                default: codigoPostal = entrada.leerString();
+            }
+        }
+        return new Direccion(calle, numero, ciudad, codigoPostal);
+    }
+}
+
+/**
+ * * Codec JSON de Profesor (la Direccion va anidada como objeto)
+ */
+class CodecProfesor implements CodecJson<Profesor> {
+    private static final byte[] NOMBRE = EscritorJson.clave("nombre");
+    private static final byte[] ESPECIALIDAD = EscritorJson.clave("especialidad");
+    private static final byte[] DIRECCION = EscritorJson.clave("direccion");
+    private static final byte[][] CAMPOS = LectorJson.nombres("nombre", "especialidad", "direccion");
+    
+    private final CodecDireccion direcciones = new CodecDireccion();
+    
+    @Override
+    public void escribir(Profesor p, EscritorJson salida) throws IOException {
+        if (p == null) {
+            salida.nulo();
+            return;
+        }
+        salida.inicioObjeto();
+        salida.campo(NOMBRE).valor(p.getNombre());
+        salida.campo(ESPECIALIDAD).valor(p.getEspecialidad());
+        salida.campo(DIRECCION);
+        direcciones.escribir(p.getDireccion(), salida);
+        salida.finObjeto();
+    }
+    
+    @Override
+    public Profesor leer(LectorJson entrada) throws IOException {
+        if (!entrada.inicioObjeto()) return null;
+        String nombre = null;
+        String especialidad = null;
+        Direccion direccion = null;
+        int campo;
+        while ((campo = entrada.siguienteCampo(CAMPOS)) != LectorJson.FIN) {
+            switch (campo) {
+                case 0: nombre = entrada.leerString(); break;
+                case 1: especialidad = entrada.leerString(); break;
+                default: direccion = direcciones.leer(entrada);
+            }
+        }
+        return new Profesor(nombre, especialidad, direccion);
+    }
+}
+
+/**
+ * * Codec JSON de Libro
+ * ! Se guarda si está prestado, pero no la cola de reservas (son esperas en curso, no datos).
+ * ! Leer un libro crea un objeto Libro nuevo: cuenta en getTotalLibros().
+ */
+class CodecLibro implements CodecJson<Libro> {
+    private static final byte[] TITULO = EscritorJson.clave("titulo");
+    private static final byte[] AUTOR = EscritorJson.clave("autor");
+    private static final byte[] ISBN = EscritorJson.clave("isbn");
+    private static final byte[] PAGINAS = EscritorJson.clave("numeroPaginas");
+    private static final byte[] PRESTADO = EscritorJson.clave("prestado");
+    private static final byte[][] CAMPOS = LectorJson.nombres("titulo", "autor", "isbn", "numeroPaginas", "prestado");
+    
+    @Override
+    public void escribir(Libro l, EscritorJson salida) throws IOException {
+        if (l == null) {
+            salida.nulo();
+            return;
+        }
+        salida.inicioObjeto();
+        salida.campo(TITULO).valor(l.getTitulo());
+        salida.campo(AUTOR).valor(l.getAutor());
+        salida.campo(ISBN).valor(l.getIsbn());
+        salida.campo(PAGINAS).valor(l.getNumeroPaginas());
+        salida.campo(PRESTADO).valor(l.isPrestado());
+        salida.finObjeto();
+    }
+    
+    @Override
+    public Libro leer(LectorJson entrada) throws IOException {
+        if (!entrada.inicioObjeto()) return null;
+        String titulo = null;
+        String autor = null;
+        String isbn = null;
+        int paginas = 0;
+        boolean prestado = false;
+        int campo;
+        while ((campo = entrada.siguienteCampo(CAMPOS)) != LectorJson.FIN) {
+            switch (campo) {
+                case 0: titulo = entrada.leerString(); break;
+                case 1: autor = entrada.leerString(); break;
+                case 2: isbn = entrada.leerString(); break;
+                case 3: paginas = entrada.leerInt(); break;
+                default: prestado = entrada.leerBoolean();
+            }
+        }
+        return new Libro(titulo, autor, isbn, paginas, prestado);
+    }
+}
+
+// ═══════════════════════════════════════════════════════════════════════════════════════
+// ║                                                                                       ║
+// ║                 🔑 ACCESORES GENERADOS (ORDENAR Y PROYECTAR POR NOMBRE)               ║
+// ║                                                                                       ║
+// ═══════════════════════════════════════════════════════════════════════════════════════
+
+/**
+ * * Registro de accesores: "notaMedia" → Estudiante::getNotaMedia sin reflexión en cada llamada
+ * 
+ * ? Los getters públicos (getX / isX sin parámetros) se descubren una sola vez por clase y
+ * ? se enlazan con LambdaMetafactory, el mismo mecanismo que usa javac para Estudiante::getEdad.
+ * ? Cada campo queda como ToIntFunction / ToDoubleFunction (sin boxing) o Function, y las
+ * ? herramientas genéricas (ordenar, proyectar, filtrar) cuestan lo mismo que una llamada directa.
+ * 
+ * ! ClassValue calcula los accesores una sola vez por clase y las lecturas no bloquean.
+ * ! Los accesores retienen la clase y las lambdas generadas: una clase registrada aquí
+ * ! no se descarga. Úsese con clases de la aplicación, no con cargadores desechables.
+ */
+final class RegistroAccesores {
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+    
+    private static final ClassValue<Accesores<?>> POR_CLASE = new ClassValue<>() {
+        @Override
+        protected Accesores<?> computeValue(Class<?> clase) {
+            return new Accesores<>(clase);
+        }
+    };
+    
+    private RegistroAccesores() {}
+    
+    @SuppressWarnings("unchecked")
+    public static <T> Accesores<T> de(Class<T> clase) {
+        return (Accesores<T>) POR_CLASE.get(clase);
+    }
+    
+    /**
+     * ? Accesores de una clase, indexados por nombre de campo
+     */
+    static final class Accesores<T> {
+        private final Class<T> clase;
+        private final Map<String, Campo<T>> campos = new TreeMap<>();
+        
+        private Accesores(Class<T> clase) {
+            this.clase = clase;
+            for (Method metodo : clase.getMethods()) {
+                String campo = nombreCampo(metodo);
+                if (campo != null) campos.put(campo, new Campo<>(campo, metodo));
+            }
+        }
+        
+        public Set<String> campos() {
+            return Collections.unmodifiableSet(campos.keySet());
+        }
+        
+        public Class<?> tipo(String campo) {
+            return campo(campo).tipo;
+        }
+        
+        // * Valor genérico (los primitivos llegan en su envoltorio)
+        public Function<T, Object> valor(String campo) {
+            return campo(campo).valor;
+        }
+        
+        public ToIntFunction<T> comoInt(String campo) {
+            Campo<T> c = campo(campo);
+            if (c.comoInt == null) throw new IllegalArgumentException("El campo " + campo + " no es int: " + c.tipo.getSimpleName());
+            return c.comoInt;
+        }
+        
+        // ? Los campos int también se pueden leer como double (ensanchamiento)
+        public ToDoubleFunction<T> comoDouble(String campo) {
+            Campo<T> c = campo(campo);
+            if (c.comoDouble != null) return c.comoDouble;
+            if (c.comoInt != null) {
+                ToIntFunction<T> entero = c.comoInt;
+                return valor -> entero.applyAsInt(valor);
+            }
+            throw new IllegalArgumentException("El campo " + campo + " no es numérico: " + c.tipo.getSimpleName());
+        }
+        
+        // * Orden natural del campo: primitivos sin boxing, Comparable con nulos al principio
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        public Comparator<T> comparador(String campo) {
+            Campo<T> c = campo(campo);
+            if (c.comoInt != null) return Comparator.comparingInt(c.comoInt);
+            if (c.comoDouble != null) return Comparator.comparingDouble(c.comoDouble);
+            if (c.tipo == boolean.class || Comparable.class.isAssignableFrom(c.tipo)) {
+                Function<T, Comparable> clave = (Function) c.valor;
+                return Comparator.comparing(clave, Comparator.nullsFirst(Comparator.naturalOrder()));
+            }
+            throw new IllegalArgumentException("El campo " + campo + " no es ordenable: " + c.tipo.getSimpleName());
+        }
+        
+        public List<T> ordenar(Collection<? extends T> valores, String campo) {
+            List<T> ordenados = new ArrayList<>(valores);
+            ordenados.sort(comparador(campo));
+            return ordenados;
+        }
+        
+        public List<Object> proyectar(Collection<? extends T> valores, String campo) {
+            Function<T, Object> getter = valor(campo);
+            List<Object> proyeccion = new ArrayList<>(valores.size());
+            for (T valor : valores) proyeccion.add(getter.apply(valor));
+            return proyeccion;
+        }
+        
+        private Campo<T> campo(String nombre) {
+            Campo<T> c = campos.get(nombre);
+            if (c == null) throw new IllegalArgumentException("Campo desconocido en " + clase.getSimpleName() + ": " + nombre + " " + campos.keySet());
+            return c;
+        }
+    }
+    
+    /**
+     * ? Un getter enlazado: siempre como Function y, si es primitivo, también sin boxing
+     */
+    private static final class Campo<T> {
+        final Class<?> tipo;
+        final Function<T, Object> valor;
+        final ToIntFunction<T> comoInt;
+        final ToDoubleFunction<T> comoDouble;
+        
+        @SuppressWarnings("unchecked")
+        Campo(String nombre, Method metodo) {
+            this.tipo = metodo.getReturnType();
+            try {
+                MethodHandle getter = LOOKUP.unreflect(metodo);
+                Class<?> declarante = metodo.getDeclaringClass();
+                this.valor = (Function<T, Object>) enlazar(getter, Function.class, "apply",
+                        MethodType.methodType(Object.class, Object.class),
+                        MethodType.methodType(tipo).wrap().returnType(), declarante);
+                this.comoInt = tipo == int.class ? (ToIntFunction<T>) enlazar(getter, ToIntFunction.class, "applyAsInt",
+                        MethodType.methodType(int.class, Object.class), int.class, declarante) : null;
+                this.comoDouble = tipo == double.class ? (ToDoubleFunction<T>) enlazar(getter, ToDoubleFunction.class, "applyAsDouble",
+                        MethodType.methodType(double.class, Object.class), double.class, declarante) : null;
+            } catch (Throwable t) {
+                throw new IllegalStateException("No se pudo enlazar el accesor " + nombre, t);
+            }
+        }
+        
+        // ! Fábrica de una lambda "interfaz(objeto) → getter(objeto)" generada en tiempo de ejecución
+        private static Object enlazar(MethodHandle getter, Class<?> interfaz, String metodo, MethodType firma,
+                                      Class<?> retorno, Class<?> declarante) throws Throwable {
+            CallSite sitio = LambdaMetafactory.metafactory(LOOKUP, metodo, MethodType.methodType(interfaz),
+                    firma, getter, MethodType.methodType(retorno, declarante));
+            return sitio.getTarget().invoke();
+        }
+    }
+    
+    // ? getNotaMedia → notaMedia, isPrestado → prestado; null si no es un getter de instancia
+    private static String nombreCampo(Method metodo) {
+        if (Modifier.isStatic(metodo.getModifiers()) || metodo.getParameterCount() != 0
+                || metodo.getReturnType() == void.class || metodo.getDeclaringClass() == Object.class
+                || metodo.isBridge() || metodo.isSynthetic()) return null;
+        String nombre = metodo.getName();
+        int prefijo = nombre.startsWith("get") ? 3
+                : nombre.startsWith("is") && metodo.getReturnType() == boolean.class ? 2 : 0;
+        if (prefijo == 0 || nombre.length() == prefijo || !Character.isUpperCase(nombre.charAt(prefijo))) return null;
+        return Character.toLowerCase(nombre.charAt(prefijo)) + nombre.substring(prefijo + 1);
     }
 }
 
@@ -70,8 +70,71 @@
  * ```
  */
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.VarHandle;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.Normalizer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
+import java.util.stream.Stream;
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
 
 // * =============================================================
 // * ENUM PARA ROLES DE USUARIOS
@@ -100,6 +163,64 @@ interface Nadador {
     void nadar();
 }
 
+// ? Observador de cambios en Persona: índices y réplicas que deben seguir los setters.
+// ? Métodos default para que cada observador implemente solo lo que le interesa.
+interface ObservadorPersona {
+    default void nombreCambiado(Persona persona, String anterior) {}
+    default void edadCambiada(Persona persona, int anterior) {}
+    default void rolCambiado(Persona persona, Rol anterior) {}
+}
+
+// * =============================================================
+// * EVENTOS JFR (JDK FLIGHT RECORDER)
+// * =============================================================
+// ? Eventos propios para ver en una grabación JFR cuánto tardan las operaciones del dominio.
+// ? Patrón (el mismo que en UT5_ClasesObjetosCompleto): new → begin() → operación → finalizar(...).
+// ? Todos llevan id, resultado y tamaño del lote; la duración la mide JFR.
+// ? Con la grabación apagada, shouldCommit() es false y el JIT elimina el objeto.
+// ? Uso: java -XX:StartFlightRecording=filename=ut5.jfr ...  →  jfr print --categories UT5 ut5.jfr
+@Name("ut5.PersonaBuild")
+@Label("Construir Persona")
+@Category({"UT5", "Persona"})
+@StackTrace(false)
+class EventoConstruirPersona extends Event {
+    @Label("Id") String id;
+    @Label("Resultado") String resultado;
+    @Label("Tamaño del lote") int tamanoLote;
+
+    void finalizar(String id, String resultado, int tamanoLote) {
+        if (shouldCommit()) {
+            this.id = id;
+            this.resultado = resultado;
+            this.tamanoLote = tamanoLote;
+            commit();
+        }
+    }
+}
+
+@Name("ut5.Curso")
+@Label("Operación de Curso")
+@Category({"UT5", "Curso"})
+@StackTrace(false)
+class EventoCurso extends Event {
+    @Label("Curso") String curso;
+    @Label("Operación") String operacion;
+    @Label("Id participante") String id;
+    @Label("Resultado") String resultado;
+    @Label("Tamaño del lote") int tamanoLote;
+
+    void finalizar(String curso, String operacion, String id, String resultado, int tamanoLote) {
+        if (shouldCommit()) {
+            this.curso = curso;
+            this.operacion = operacion;
+            this.id = id;
+            this.resultado = resultado;
+            this.tamanoLote = tamanoLote;
+            commit();
+        }
+    }
+}
+
 // * =============================================================
 // * CLASE PERSONA (BASE) CON ENCAPSULACIÓN + BUILDER
 // * =============================================================
@@ -110,11 +231,22 @@ class Persona implements Identificable {
     private int edad;
     private Rol rol;                  // Enum para rol
 
-    // * Constructor principal (privado para forzar uso del Builder opcional)
-    private Persona(String id, String nombre, int edad, Rol rol) {
+    // * Observadores globales (copy-on-write: lectura sin bloqueo en cada setter)
+    private static final List<ObservadorPersona> OBSERVADORES = new CopyOnWriteArrayList<>();
+
+    // ! Longitudes máximas (en caracteres): acotan lo que un observador tiene que guardar
+    // ! (p. ej. un registro de PublicadorCambios) y se validan ANTES de cambiar nada
+    public static final int MAX_LONGITUD_ID = 256;
+    public static final int MAX_LONGITUD_NOMBRE = 256;
+
+    // * Constructor principal (protegido: lo usan el Builder y las subclases que reconstruyen con id)
+    protected Persona(String id, String nombre, int edad, Rol rol) {
+        if (id == null || id.isBlank() || id.length() > MAX_LONGITUD_ID) {
+            throw new IllegalArgumentException("Id inválido");
+        }
         this.id = id;
         setNombre(nombre); // Reutilizamos validaciones
-        setEdad(edad);
+        this.edad = validarEdad(edad);
         this.rol = rol;
     }
 
@@ -135,7 +267,43 @@ class Persona implements Identificable {
         public Builder rol(Rol rol) { this.rol = rol; return this; }
         public Builder id(String id) { this.id = id; return this; }
 
-        public Persona build() { return new Persona(id, nombre, edad, rol); }
+        public Persona build() {
+            EventoConstruirPersona evento = new EventoConstruirPersona();
+            evento.begin();
+            String resultado = "ERROR";
+            try {
+                Persona p = new Persona(id, nombre, edad, rol);
+                resultado = "OK";
+                return p;
+            } finally {
+                evento.finalizar(id, resultado, 1);
+            }
+        }
+    }
+
+    // * Fábrica en lote desde columnas paralelas (sin un Builder por persona)
+    // ? Misma validación que setNombre/setEdad; rol null en la columna = ALUMNO.
+    // ? Solo se reservan las Personas, sus ids y el array resultado.
+    public static Persona[] crearEnLote(String[] nombres, int[] edades, Rol[] roles) {
+        int n = nombres.length;
+        if (edades.length != n || (roles != null && roles.length != n)) {
+            throw new IllegalArgumentException("Las columnas deben tener la misma longitud");
+        }
+        EventoConstruirPersona evento = new EventoConstruirPersona();
+        evento.begin();
+        Persona[] resultado = new Persona[n];
+        String prefijo = "P-" + System.nanoTime() + "-";  // ! Un único prefijo para todo el lote
+        for (int i = 0; i < n; i++) {
+            Rol rol = roles == null || roles[i] == null ? Rol.ALUMNO : roles[i];
+            try {
+                resultado[i] = new Persona(prefijo + i, nombres[i], edades[i], rol);
+            } catch (IllegalArgumentException e) {
+                evento.finalizar(prefijo + "*", "ERROR", i);  // ? Filas creadas antes del fallo
+                throw new IllegalArgumentException("Fila " + i + ": " + e.getMessage(), e);
+            }
+        }
+        evento.finalizar(prefijo + "*", "OK", n);  // ? Id del lote: prefijo común de sus ids
+        return resultado;
     }
 
     // * Getters (exponemos lectura controlada)
@@ -150,15 +318,42 @@ class Persona implements Identificable {
         if (nombre == null || nombre.isBlank()) {
             throw new IllegalArgumentException("Nombre inválido");
         }
-        this.nombre = nombre.trim();
+        String limpio = nombre.trim();
+        if (limpio.length() > MAX_LONGITUD_NOMBRE) {
+            throw new IllegalArgumentException("Nombre demasiado largo (máximo " + MAX_LONGITUD_NOMBRE + " caracteres)");
+        }
+        String anterior = this.nombre;
+        this.nombre = limpio;
+        // ? En el constructor (anterior == null) aún no hay nadie siguiendo a esta persona
+        if (anterior != null && !anterior.equals(this.nombre)) {
+            for (ObservadorPersona o : OBSERVADORES) o.nombreCambiado(this, anterior);
+        }
     }
 
     public void setEdad(int edad) {
+        int anterior = this.edad;
+        this.edad = validarEdad(edad);
+        if (anterior != edad) {
+            for (ObservadorPersona o : OBSERVADORES) o.edadCambiada(this, anterior);
+        }
+    }
+
+    private static int validarEdad(int edad) {
         if (edad < 0) throw new IllegalArgumentException("Edad no puede ser negativa");
-        this.edad = edad;
+        return edad;
+    }
+
+    public void setRol(Rol rol) {
+        Rol anterior = this.rol;
+        this.rol = rol;
+        if (anterior != rol) {
+            for (ObservadorPersona o : OBSERVADORES) o.rolCambiado(this, anterior);
+        }
     }
 
-    public void setRol(Rol rol) { this.rol = rol; }
+    // * Registro de observadores de cambios
+    public static void registrarObservador(ObservadorPersona o) { OBSERVADORES.add(o); }
+    public static void eliminarObservador(ObservadorPersona o) { OBSERVADORES.remove(o); }
 
     // * Método de comportamiento
     public void saludar() {
@@ -199,6 +394,16 @@ class Estudiante extends Persona implements Pagable {
         setRol(Rol.ALUMNO);
     }
 
+    // * Reconstrucción con id y rol conocidos (p. ej. al leer de JSON)
+    Estudiante(String id, String nombre, int edad, Rol rol, String cursoActual, double cuotaMensual) {
+        super(id, nombre, edad, rol);
+        this.cursoActual = cursoActual;
+        this.cuotaMensual = cuotaMensual;
+    }
+
+    public String getCursoActual() { return cursoActual; }
+    public double getCuotaMensual() { return cuotaMensual; }
+
     @Override
     public double calcularPago() { return cuotaMensual; }
 
@@ -216,6 +421,16 @@ class Empleado extends Persona implements Pagable {
         setRol(Rol.PROFESOR);
     }
 
+    // * Reconstrucción con id y rol conocidos (p. ej. al leer de JSON)
+    Empleado(String id, String nombre, int edad, Rol rol, double salarioBase, double bonus) {
+        super(id, nombre, edad, rol);
+        this.salarioBase = salarioBase;
+        this.bonus = bonus;
+    }
+
+    public double getSalarioBase() { return salarioBase; }
+    public double getBonus() { return bonus; }
+
     @Override
     public double calcularPago() { return salarioBase + bonus; }
 
@@ -296,9 +511,15 @@ class Curso {
 
     public Curso(String nombre) { this.nombre = nombre; }
 
-    public void agregarParticipante(Persona p) { participantes.add(p); }
+    // ? synchronized: varios hilos pueden matricular a la vez (ver ArnesEstres)
+    public synchronized void agregarParticipante(Persona p) {
+        EventoCurso evento = new EventoCurso();
+        evento.begin();
+        participantes.add(p);
+        evento.finalizar(nombre, "agregarParticipante", p == null ? null : p.getId(), "OK", 1);
+    }
 
-    public void listarParticipantes() {
+    public synchronized void listarParticipantes() {
         System.out.println("👥 Participantes en curso " + nombre + ":");
         for (Persona p : participantes) {
             System.out.println("  - " + p.getNombre() + " (" + p.getRol() + ")");
@@ -309,13 +530,17 @@ class Curso {
     // - Entrada: ninguna
     // - Salida: double con suma de todos los Pagable
     // - Errores: ignora participantes que no implementan Pagable
-    public double ingresosTotales() {
+    public synchronized double ingresosTotales() {
+        EventoCurso evento = new EventoCurso();
+        evento.begin();
         double total = 0;
         for (Persona p : participantes) {
             if (p instanceof Pagable) {
                 total += ((Pagable) p).calcularPago();
             }
         }
+        // ? Sin participante concreto: el lote son los participantes recorridos
+        evento.finalizar(nombre, "ingresosTotales", null, "OK", participantes.size());
         return total;
     }
 }
@@ -353,87 +578,3250 @@ class Printer {
 }
 
 // * =============================================================
-// * CLASE PRINCIPAL (MAIN): DEMOSTRACIÓN INTEGRAL
+// * ÍNDICE DE N-GRAMAS: BÚSQUEDA APROXIMADA POR NOMBRE
 // * =============================================================
-public class UT5_ClasesObjetosHerenciaAvanzado {
-    public static void main(String[] args) {
-    // 🧭 Guía de la demo:
-    // 1) Creación de objetos (Builder y constructor)
-    // 2) Herencia + polimorfismo (Personas y Animales)
-    // 3) Interfaces (capacidades Volador/Nadador y Pagable)
-    // 4) Composición (Curso) y utilidades (Estadisticas)
-    // 5) Genéricos (Box<T>) y sobrecarga (Printer)
+// ? Índice invertido de trigramas sobre Persona (y por herencia Estudiante/Empleado).
+// ? - Normaliza acentos y mayúsculas: "María" y "maria" generan los mismos trigramas.
+// ? - Puntúa con Jaccard (trigramas comunes / trigramas totales) y devuelve el top-k.
+// ? - Se registra como ObservadorPersona: setNombre reindexa solo a esa persona.
+// ! Un cambio de nombre da a la persona un nuevo docId y deja el antiguo como hueco;
+// ! cuando los huecos superan a los vivos se compacta el índice entero.
+class IndiceNombres implements ObservadorPersona {
+    private static final int CAPACIDAD_INICIAL = 16;
 
-        // ✅ Builder + constructor
-        Persona personaBuilt = new Persona.Builder()
-                .nombre("Laura")
-                .edad(28)
-                .rol(Rol.ADMIN)
-                .build();
+    // ? Resultado de una búsqueda: persona + similitud en [0, 1]
+    static final class Coincidencia {
+        private final Persona persona;
+        private final double similitud;
 
-        Estudiante est = new Estudiante("Carlos", 22, "Java Básico", 120.0);
-        Empleado prof = new Empleado("María", 35, 1500.0, 350.0);
+        Coincidencia(Persona persona, double similitud) {
+            this.persona = persona;
+            this.similitud = similitud;
+        }
 
-        personaBuilt.saludar();
-        est.saludar();
-        est.estudiar();
-        prof.saludar();
-        prof.impartir();
-        System.out.println("💰 Pago estudiante: " + est.calcularPago());
-        System.out.println("💰 Pago empleado: " + prof.calcularPago());
+        public Persona getPersona() { return persona; }
+        public double getSimilitud() { return similitud; }
 
-        // 🐾 Polimorfismo con animales
-        List<Animal> zoologico = List.of(
-                new Perro("Rex"),
-                new Gato("Misu"),
-                new Ave("Golondrina"),
-                new Pez("Nemo")
-        );
-        System.out.println("\n🔊 Sonidos en el zoológico:");
-        for (Animal a : zoologico) a.hacerSonido();
+        @Override
+        public String toString() { return persona.getNombre() + String.format(" (%.2f)", similitud); }
+    }
 
-        // Capacidades específicas por interfaces
-        System.out.println("\n🌊 / 🕊️ Acciones especiales:");
-        for (Animal a : zoologico) {
-            if (a instanceof Volador v) v.volar();
-            if (a instanceof Nadador n) n.nadar();
+    // ? Lista de docIds creciente (los docIds se asignan en orden)
+    private static final class Postings {
+        int[] docs = new int[4];
+        int tamano;
+
+        void agregar(int doc) {
+            if (tamano == docs.length) docs = Arrays.copyOf(docs, tamano * 2);
+            docs[tamano++] = doc;
         }
+    }
 
-        // 🎓 Composición: Curso con participantes
-        Curso cursoJava = new Curso("Java Avanzado");
-        cursoJava.agregarParticipante(personaBuilt);
-        cursoJava.agregarParticipante(est);
-        cursoJava.agregarParticipante(prof);
-        cursoJava.listarParticipantes();
-        System.out.println("Ingresos totales curso: " + cursoJava.ingresosTotales());
+    private final ReentrantReadWriteLock cerrojo = new ReentrantReadWriteLock();
+    private final Map<Long, Postings> postings = new HashMap<>();
+    private final Map<Persona, Integer> docPorPersona = new HashMap<>();
+    private Persona[] personas = new Persona[CAPACIDAD_INICIAL];  // docId -> persona (null = hueco)
+    private int[] numeroGramas = new int[CAPACIDAD_INICIAL];       // docId -> trigramas distintos
+    private int siguienteDoc;
+    private int huecos;
 
-        // 📊 Estadísticas y genéricos
-        List<Persona> personas = List.of(personaBuilt, est, prof);
-        System.out.println("Promedio edad: " + Estadisticas.promedioEdad(personas));
+    // ? Contadores reutilizables por hilo para no reservar un int[n] en cada consulta
+    private final ThreadLocal<int[]> contadores = ThreadLocal.withInitial(() -> new int[0]);
 
-        Box<String> boxTexto = new Box<>("Mensaje en caja");
-        Box<Integer> boxNumero = new Box<>(42);
-        System.out.println(boxTexto);
-        System.out.println(boxNumero);
+    public IndiceNombres() {
+        Persona.registrarObservador(this);
+    }
 
-        // 🧪 Overloading
-        Printer.imprimir("Hola");
-        Printer.imprimir(123);
-        Printer.imprimir(est);
+    // * Deja de seguir los cambios de nombre (el índice sigue siendo consultable)
+    public void cerrar() {
+        Persona.eliminarObservador(this);
+    }
 
-        // ! Manejo de excepción de validación (demostración rápida)
+    public void agregar(Persona p) {
+        cerrojo.writeLock().lock();
         try {
-            est.setEdad(-5); // Disparará excepción
-        } catch (IllegalArgumentException ex) {
-            System.out.println("⚠️ Error capturado: " + ex.getMessage());
+            if (!docPorPersona.containsKey(p)) indexar(p);
+        } finally {
+            cerrojo.writeLock().unlock();
         }
+    }
 
-        System.out.println("\n✅ Demostración completa finalizada.");
+    public boolean eliminar(Persona p) {
+        cerrojo.writeLock().lock();
+        try {
+            Integer doc = docPorPersona.remove(p);
+            if (doc == null) return false;
+            liberar(doc);
+            return true;
+        } finally {
+            cerrojo.writeLock().unlock();
+        }
+    }
 
-        // ! Nota pedagógica:
-        // Si compilas TODOS los archivos de la carpeta a la vez, podrían existir
-        // colisiones de nombres (Animal, Perro, Gato) con otras unidades UT5.
-        // ▶ Recomendación: compila/ejecuta cada archivo de forma independiente.
+    public int size() {
+        cerrojo.readLock().lock();
+        try {
+            return docPorPersona.size();
+        } finally {
+            cerrojo.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void nombreCambiado(Persona persona, String anterior) {
+        cerrojo.writeLock().lock();
+        try {
+            Integer doc = docPorPersona.remove(persona);
+            if (doc == null) return;  // ? No está indexada: nada que hacer
+            liberar(doc);
+            indexar(persona);
+        } finally {
+            cerrojo.writeLock().unlock();
+        }
+    }
+
+    // * Top-k personas cuyo nombre se parece más a la consulta (similitud > 0)
+    public List<Coincidencia> buscar(String consulta, int k) {
+        if (k <= 0) throw new IllegalArgumentException("k debe ser positivo");
+        long[] gramas = trigramas(normalizar(consulta));
+        if (gramas.length == 0) return List.of();
+        cerrojo.readLock().lock();
+        try {
+            int[] cuenta = contadores.get();
+            if (cuenta.length < siguienteDoc) {
+                cuenta = new int[personas.length];
+                contadores.set(cuenta);
+            }
+            // ? Acumulamos trigramas comunes y recordamos qué docs tocamos para limpiar después
+            Postings tocados = new Postings();
+            for (long g : gramas) {
+                Postings lista = postings.get(g);
+                if (lista == null) continue;
+                int[] docs = lista.docs;
+                for (int i = 0; i < lista.tamano; i++) {
+                    int d = docs[i];
+                    if (cuenta[d]++ == 0) tocados.agregar(d);
+                }
+            }
+            // ? Min-heap de tamaño k: la raíz es la peor coincidencia conservada
+            PriorityQueue<Coincidencia> mejores = new PriorityQueue<>(k + 1,
+                    (a, b) -> Double.compare(a.similitud, b.similitud));
+            for (int i = 0; i < tocados.tamano; i++) {
+                int d = tocados.docs[i];
+                int comunes = cuenta[d];
+                cuenta[d] = 0;
+                if (personas[d] == null) continue;  // ? Hueco de un nombre anterior
+                double similitud = comunes / (double) (gramas.length + numeroGramas[d] - comunes);
+                if (mejores.size() < k) {
+                    mejores.add(new Coincidencia(personas[d], similitud));
+                } else if (similitud > mejores.peek().similitud) {
+                    mejores.poll();
+                    mejores.add(new Coincidencia(personas[d], similitud));
+                }
+            }
+            List<Coincidencia> resultado = new ArrayList<>(mejores);
+            resultado.sort((a, b) -> Double.compare(b.similitud, a.similitud));
+            return resultado;
+        } finally {
+            cerrojo.readLock().unlock();
+        }
+    }
+
+    // * Estimación de candidatos para "nombre contiene fragmento" (-1 si el fragmento es demasiado corto)
+    public int estimarContiene(String fragmento) {
+        long[] gramas = trigramasInteriores(normalizar(fragmento));
+        if (gramas.length == 0) return -1;
+        cerrojo.readLock().lock();
+        try {
+            int minimo = Integer.MAX_VALUE;
+            for (long g : gramas) {
+                Postings lista = postings.get(g);
+                minimo = Math.min(minimo, lista == null ? 0 : lista.tamano);
+            }
+            return minimo;
+        } finally {
+            cerrojo.readLock().unlock();
+        }
+    }
+
+    // * Personas cuyo nombre normalizado tiene todos los trigramas del fragmento.
+    // ? Es un superconjunto de las que lo contienen: el filtro exacto lo aplica quien pregunta.
+    // ? null si el fragmento (normalizado) tiene menos de 3 caracteres y el índice no sirve.
+    public List<Persona> candidatosQueContienen(String fragmento) {
+        long[] gramas = trigramasInteriores(normalizar(fragmento));
+        if (gramas.length == 0) return null;
+        cerrojo.readLock().lock();
+        try {
+            Postings[] listas = new Postings[gramas.length];
+            for (int i = 0; i < gramas.length; i++) {
+                listas[i] = postings.get(gramas[i]);
+                if (listas[i] == null) return List.of();
+            }
+            // ? Se recorre la lista más corta y se busca cada doc en las demás (todas van crecientes)
+            Arrays.sort(listas, (a, b) -> Integer.compare(a.tamano, b.tamano));
+            List<Persona> resultado = new ArrayList<>();
+            Postings menor = listas[0];
+            siguiente:
+            for (int i = 0; i < menor.tamano; i++) {
+                int d = menor.docs[i];
+                for (int j = 1; j < listas.length; j++) {
+                    if (Arrays.binarySearch(listas[j].docs, 0, listas[j].tamano, d) < 0) continue siguiente;
+                }
+                if (personas[d] != null) resultado.add(personas[d]);
+            }
+            return resultado;
+        } finally {
+            cerrojo.readLock().unlock();
+        }
+    }
+
+    // * Minúsculas, sin tildes ni diéresis y con espacios colapsados
+    static String normalizar(String texto) {
+        if (texto == null) return "";
+        String sinMarcas = Normalizer.normalize(texto, Normalizer.Form.NFD).replaceAll("\\p{M}+", "");
+        return sinMarcas.toLowerCase(Locale.ROOT).trim().replaceAll("\\s+", " ");
+    }
+
+    // ? Trigramas distintos de " texto " (con bordes), cada uno empaquetado en un long
+    static long[] trigramas(String normalizado) {
+        if (normalizado.isEmpty()) return new long[0];
+        String t = " " + normalizado + " ";
+        long[] gramas = new long[t.length() - 2];
+        for (int i = 0; i < gramas.length; i++) {
+            gramas[i] = ((long) t.charAt(i) << 32) | ((long) t.charAt(i + 1) << 16) | t.charAt(i + 2);
+        }
+        Arrays.sort(gramas);
+        int distintos = 0;
+        for (int i = 0; i < gramas.length; i++) {
+            if (i == 0 || gramas[i] != gramas[i - 1]) gramas[distintos++] = gramas[i];
+        }
+        return Arrays.copyOf(gramas, distintos);
+    }
+
+    // ? Trigramas sin bordes: los que aparecen sí o sí en cualquier texto que contenga al fragmento
+    private static long[] trigramasInteriores(String normalizado) {
+        if (normalizado.length() < 3) return new long[0];
+        long[] gramas = trigramas(normalizado);
+        long izquierdo = ((long) ' ' << 32) | ((long) normalizado.charAt(0) << 16) | normalizado.charAt(1);
+        int n = normalizado.length();
+        long derecho = ((long) normalizado.charAt(n - 2) << 32) | ((long) normalizado.charAt(n - 1) << 16) | ' ';
+        int interiores = 0;
+        for (long g : gramas) {
+            if (g != izquierdo && g != derecho) gramas[interiores++] = g;
+        }
+        return Arrays.copyOf(gramas, interiores);
+    }
+
+    private void indexar(Persona p) {
+        if (siguienteDoc == personas.length) {
+            personas = Arrays.copyOf(personas, siguienteDoc * 2);
+            numeroGramas = Arrays.copyOf(numeroGramas, siguienteDoc * 2);
+        }
+        int doc = siguienteDoc++;
+        long[] gramas = trigramas(normalizar(p.getNombre()));
+        personas[doc] = p;
+        numeroGramas[doc] = gramas.length;
+        docPorPersona.put(p, doc);
+        for (long g : gramas) postings.computeIfAbsent(g, x -> new Postings()).agregar(doc);
+    }
+
+    private void liberar(int doc) {
+        personas[doc] = null;
+        huecos++;
+        if (huecos > docPorPersona.size()) compactar();
+    }
+
+    // ! Reconstruye todo con docIds consecutivos (amortizado: solo tras muchos cambios)
+    private void compactar() {
+        Persona[] vivas = new Persona[docPorPersona.size()];
+        int n = 0;
+        for (int d = 0; d < siguienteDoc; d++) {
+            if (personas[d] != null) vivas[n++] = personas[d];
+        }
+        postings.clear();
+        docPorPersona.clear();
+        personas = new Persona[Math.max(CAPACIDAD_INICIAL, n * 2)];
+        numeroGramas = new int[personas.length];
+        siguienteDoc = 0;
+        huecos = 0;
+        for (int i = 0; i < n; i++) indexar(vivas[i]);
+    }
+}
+
+// * =============================================================
+// * PLANTILLA PARTICIONADA POR ROL (ENUMMAP)
+// * =============================================================
+// ? Un segmento por valor de Rol dentro de un EnumMap (array interno indexado por ordinal).
+// ? - contar(rol) es O(1): tamaño del segmento.
+// ? - forEach(rol, ...) recorre solo los miembros de ese rol.
+// ? - setRol mueve a la persona de segmento (borrado O(1) intercambiando con el último).
+// ! Personas con rol null son miembros sin segmento: no cuentan en ningún rol, pero la
+// ! plantilla las sigue y entran en su segmento en cuanto reciben un rol.
+// ! El índice recuerda en qué segmento puso a cada persona y, al recibir un aviso, la
+// ! lleva al rol que tiene AHORA (no al del aviso): con dos setRol concurrentes los avisos
+// ! pueden llegar desordenados, pero el último en ejecutarse ya ve el rol definitivo.
+class PlantillaPorRol implements ObservadorPersona {
+    // ? Array compacto de miembros de un rol
+    private static final class Segmento {
+        Persona[] miembros = new Persona[16];
+        int tamano;
+    }
+
+    // ? Dónde está cada persona dentro de la plantilla (rol null = sin segmento)
+    private static final class Ubicacion {
+        Rol rol;
+        int posicion;
+    }
+
+    private final EnumMap<Rol, Segmento> segmentos = new EnumMap<>(Rol.class);
+    private final Map<Persona, Ubicacion> posiciones = new HashMap<>();
+
+    public PlantillaPorRol() {
+        for (Rol r : Rol.values()) segmentos.put(r, new Segmento());
+        Persona.registrarObservador(this);
+    }
+
+    // * Deja de seguir los cambios de rol
+    public void cerrar() {
+        Persona.eliminarObservador(this);
+    }
+
+    public synchronized void agregar(Persona p) {
+        if (posiciones.containsKey(p)) return;
+        if (p.getRol() == null) {
+            posiciones.put(p, new Ubicacion());  // ? Sin segmento hasta que tenga rol
+        } else {
+            insertar(p, p.getRol());
+        }
+    }
+
+    public synchronized boolean eliminar(Persona p) {
+        Ubicacion ubicacion = posiciones.remove(p);
+        if (ubicacion == null) return false;
+        if (ubicacion.rol != null) quitar(ubicacion);
+        return true;
+    }
+
+    public synchronized int contar(Rol rol) {
+        return segmentos.get(rol).tamano;
+    }
+
+    // ? Todos los miembros, también los que no tienen rol
+    public synchronized int total() {
+        return posiciones.size();
+    }
+
+    // ? Copia de los miembros del rol (orden no garantizado)
+    public synchronized List<Persona> miembros(Rol rol) {
+        Segmento seg = segmentos.get(rol);
+        return List.of(Arrays.copyOf(seg.miembros, seg.tamano));
+    }
+
+    // ! La acción se ejecuta con el cerrojo tomado: no debe llamar a setRol
+    public synchronized void forEach(Rol rol, Consumer<? super Persona> accion) {
+        Segmento seg = segmentos.get(rol);
+        for (int i = 0; i < seg.tamano; i++) accion.accept(seg.miembros[i]);
+    }
+
+    @Override
+    public synchronized void rolCambiado(Persona persona, Rol anterior) {
+        Ubicacion ubicacion = posiciones.get(persona);
+        if (ubicacion == null) return;  // ? No pertenece a esta plantilla
+        Rol actual = persona.getRol();
+        if (actual == ubicacion.rol) return;  // ? Ya está donde debe (aviso atrasado)
+        if (ubicacion.rol != null) quitar(ubicacion);
+        if (actual == null) {
+            ubicacion.rol = null;
+        } else {
+            insertar(persona, actual);
+        }
+    }
+
+    private void insertar(Persona p, Rol rol) {
+        Segmento seg = segmentos.get(rol);
+        if (seg.tamano == seg.miembros.length) seg.miembros = Arrays.copyOf(seg.miembros, seg.tamano * 2);
+        seg.miembros[seg.tamano] = p;
+        Ubicacion ubicacion = posiciones.computeIfAbsent(p, x -> new Ubicacion());
+        ubicacion.rol = rol;
+        ubicacion.posicion = seg.tamano++;
+    }
+
+    // ? Borrado O(1): el último miembro ocupa el hueco
+    private void quitar(Ubicacion ubicacion) {
+        Segmento seg = segmentos.get(ubicacion.rol);
+        int ultimo = --seg.tamano;
+        if (ubicacion.posicion != ultimo) {
+            Persona movida = seg.miembros[ultimo];
+            seg.miembros[ubicacion.posicion] = movida;
+            posiciones.get(movida).posicion = ubicacion.posicion;
+        }
+        seg.miembros[ultimo] = null;
+    }
+}
+
+// * =============================================================
+// * CACHÉ DE LECTURA CON ADMISIÓN W-TINYLFU
+// * =============================================================
+// ? Fuente lenta de personas (base de datos, fichero, servicio...)
+interface CargadorPersonas {
+    Persona cargar(String id);  // null si no existe
+}
+
+// ? Cargador de prueba respaldado por un fichero "id;nombre;edad;rol" (una persona por línea).
+// ? Cada carga recorre el fichero: simula a propósito un almacenamiento lento.
+class CargadorPersonasFichero implements CargadorPersonas {
+    private final Path fichero;
+
+    public CargadorPersonasFichero(Path fichero) { this.fichero = fichero; }
+
+    // * Escribe personas en el formato que entiende este cargador
+    public static void guardar(Path fichero, List<Persona> personas) throws IOException {
+        List<String> lineas = new ArrayList<>();
+        for (Persona p : personas) {
+            lineas.add(p.getId() + ";" + p.getNombre() + ";" + p.getEdad() + ";" + p.getRol());
+        }
+        Files.write(fichero, lineas, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public Persona cargar(String id) {
+        try (Stream<String> lineas = Files.lines(fichero, StandardCharsets.UTF_8)) {
+            return lineas.filter(l -> l.startsWith(id + ";"))
+                    .findFirst()
+                    .map(l -> {
+                        String[] campos = l.split(";", -1);
+                        return new Persona.Builder().id(campos[0]).nombre(campos[1])
+                                .edad(Integer.parseInt(campos[2])).rol(Rol.valueOf(campos[3])).build();
+                    })
+                    .orElse(null);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
+
+// ? Caché read-through por Identificable.getId() con política W-TinyLFU:
+// ?  - VENTANA (1%): LRU pequeña que absorbe ráfagas de elementos nuevos.
+// ?  - PRINCIPAL (99%): SLRU con segmento de PRUEBA y segmento PROTEGIDO (80%).
+// ?  - Un Count-Min Sketch (4 filas, contadores de 0 a 15 que se dividen a la mitad
+// ?    cada 10×capacidad accesos) estima la frecuencia de cada id.
+// ? Lo que sale de la ventana solo entra en la principal si es más frecuente que
+// ? la víctima de PRUEBA: un escaneo de ids raros no expulsa a los ids calientes.
+// ! Límites: número de entradas y peso total (según el pesador).
+// ! Fallos concurrentes del mismo id comparten una única carga (CompletableFuture).
+class CachePersonas {
+    // ? Entrada de la caché: la persona y su peso
+    private static final class Nodo {
+        final Persona persona;
+        final int peso;
+        Nodo(Persona persona, int peso) { this.persona = persona; this.peso = peso; }
+    }
+
+    private final CargadorPersonas cargador;
+    private final ToIntFunction<Persona> pesador;
+    private final long pesoMaximo;
+    private final int capacidadVentana;
+    private final int capacidadPrincipal;
+    private final int capacidadProtegido;
+
+    // * Segmentos LRU (orden de inserción; la cabeza es la víctima). Protegidos por 'this'.
+    private final LinkedHashMap<String, Nodo> ventana = new LinkedHashMap<>();
+    private final LinkedHashMap<String, Nodo> prueba = new LinkedHashMap<>();
+    private final LinkedHashMap<String, Nodo> protegido = new LinkedHashMap<>();
+    private long pesoTotal;
+
+    // * Count-Min Sketch
+    private final byte[][] frecuencias;
+    private final int mascaraSketch;
+    private final int tamanoMuestra;
+    private int muestras;
+
+    private final Map<String, CompletableFuture<Persona>> enVuelo = new ConcurrentHashMap<>();
+    private final LongAdder aciertos = new LongAdder();
+    private final LongAdder fallos = new LongAdder();
+    private final LongAdder cargas = new LongAdder();
+    private final LongAdder expulsiones = new LongAdder();
+
+    public CachePersonas(CargadorPersonas cargador, int maxEntradas, long pesoMaximo, ToIntFunction<Persona> pesador) {
+        if (maxEntradas < 2 || pesoMaximo <= 0) throw new IllegalArgumentException("Límites de caché inválidos");
+        this.cargador = cargador;
+        this.pesador = pesador;
+        this.pesoMaximo = pesoMaximo;
+        this.capacidadVentana = Math.max(1, maxEntradas / 100);
+        this.capacidadPrincipal = maxEntradas - capacidadVentana;
+        this.capacidadProtegido = Math.max(1, capacidadPrincipal * 8 / 10);
+        int ancho = Integer.highestOneBit(Math.max(16, maxEntradas - 1)) << 1;
+        this.frecuencias = new byte[4][ancho];
+        this.mascaraSketch = ancho - 1;
+        this.tamanoMuestra = 10 * maxEntradas;
+    }
+
+    // ? Solo límite por número de entradas (todas pesan 1)
+    public CachePersonas(CargadorPersonas cargador, int maxEntradas) {
+        this(cargador, maxEntradas, maxEntradas, p -> 1);
+    }
+
+    // * Devuelve la persona de la caché o la carga (una sola vez aunque la pidan varios hilos)
+    public Persona get(String id) {
+        Persona enCache = buscar(id);
+        if (enCache != null) {
+            aciertos.increment();
+            return enCache;
+        }
+        fallos.increment();
+        CompletableFuture<Persona> nueva = new CompletableFuture<>();
+        CompletableFuture<Persona> existente = enVuelo.putIfAbsent(id, nueva);
+        if (existente != null) return existente.join();  // ? Otro hilo ya la está cargando
+        try {
+            Persona persona = consultar(id);  // ? Pudo cargarse entre el fallo y el putIfAbsent
+            if (persona == null) {
+                cargas.increment();
+                persona = cargador.cargar(id);
+            }
+            if (persona != null) {
+                if (!id.equals(persona.getId())) throw new IllegalStateException("El cargador devolvió otro id: " + persona.getId());
+                insertar(id, persona);
+            }
+            nueva.complete(persona);
+            return persona;
+        } catch (RuntimeException e) {
+            nueva.completeExceptionally(e);
+            throw e;
+        } finally {
+            enVuelo.remove(id, nueva);
+        }
+    }
+
+    public synchronized void invalidar(String id) {
+        Nodo n = ventana.remove(id);
+        if (n == null) n = prueba.remove(id);
+        if (n == null) n = protegido.remove(id);
+        if (n != null) pesoTotal -= n.peso;
+    }
+
+    public synchronized int size() { return ventana.size() + prueba.size() + protegido.size(); }
+    public synchronized long getPesoTotal() { return pesoTotal; }
+    public long getAciertos() { return aciertos.sum(); }
+    public long getFallos() { return fallos.sum(); }
+    public long getCargas() { return cargas.sum(); }
+    public long getExpulsiones() { return expulsiones.sum(); }
+
+    public double tasaAciertos() {
+        long total = aciertos.sum() + fallos.sum();
+        return total == 0 ? 0.0 : aciertos.sum() / (double) total;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("CachePersonas{entradas=%d, peso=%d, aciertos=%d, fallos=%d, cargas=%d, expulsiones=%d, tasa=%.2f}",
+                size(), getPesoTotal(), getAciertos(), getFallos(), getCargas(), getExpulsiones(), tasaAciertos());
+    }
+
+    // ? Lectura sin efectos sobre frecuencia ni recencia
+    private synchronized Persona consultar(String id) {
+        Nodo n = ventana.get(id);
+        if (n == null) n = prueba.get(id);
+        if (n == null) n = protegido.get(id);
+        return n == null ? null : n.persona;
+    }
+
+    // ? Acierto: registra la frecuencia y actualiza la recencia de su segmento
+    private synchronized Persona buscar(String id) {
+        registrarAcceso(id);
+        Nodo n = ventana.remove(id);
+        if (n != null) {
+            ventana.put(id, n);
+            return n.persona;
+        }
+        n = prueba.remove(id);
+        if (n != null) {
+            // * Segundo acceso en la principal: pasa a PROTEGIDO
+            protegido.put(id, n);
+            if (protegido.size() > capacidadProtegido) {
+                Map.Entry<String, Nodo> degradado = primero(protegido);
+                protegido.remove(degradado.getKey());
+                prueba.put(degradado.getKey(), degradado.getValue());
+            }
+            return n.persona;
+        }
+        n = protegido.remove(id);
+        if (n != null) {
+            protegido.put(id, n);
+            return n.persona;
+        }
+        return null;
+    }
+
+    private synchronized void insertar(String id, Persona persona) {
+        if (ventana.containsKey(id) || prueba.containsKey(id) || protegido.containsKey(id)) return;
+        Nodo nodo = new Nodo(persona, pesador.applyAsInt(persona));
+        ventana.put(id, nodo);
+        pesoTotal += nodo.peso;
+        while (ventana.size() > capacidadVentana) {
+            Map.Entry<String, Nodo> candidato = primero(ventana);
+            ventana.remove(candidato.getKey());
+            admitir(candidato.getKey(), candidato.getValue());
+        }
+        // ! Límite de peso: se expulsa primero de PRUEBA, luego PROTEGIDO y por último VENTANA
+        while (pesoTotal > pesoMaximo) {
+            LinkedHashMap<String, Nodo> segmento = !prueba.isEmpty() ? prueba : !protegido.isEmpty() ? protegido : ventana;
+            Map.Entry<String, Nodo> victima = primero(segmento);
+            segmento.remove(victima.getKey());
+            expulsar(victima.getValue());
+        }
+    }
+
+    // ? Filtro de admisión TinyLFU: gana el más frecuente (a igualdad, se queda la víctima)
+    private void admitir(String id, Nodo candidato) {
+        if (prueba.size() + protegido.size() < capacidadPrincipal) {
+            prueba.put(id, candidato);
+            return;
+        }
+        LinkedHashMap<String, Nodo> segmento = prueba.isEmpty() ? protegido : prueba;
+        Map.Entry<String, Nodo> victima = primero(segmento);
+        if (frecuencia(id) > frecuencia(victima.getKey())) {
+            segmento.remove(victima.getKey());
+            expulsar(victima.getValue());
+            prueba.put(id, candidato);
+        } else {
+            expulsar(candidato);
+        }
+    }
+
+    private void expulsar(Nodo nodo) {
+        pesoTotal -= nodo.peso;
+        expulsiones.increment();
+    }
+
+    private static Map.Entry<String, Nodo> primero(LinkedHashMap<String, Nodo> segmento) {
+        Iterator<Map.Entry<String, Nodo>> it = segmento.entrySet().iterator();
+        return it.next();
+    }
+
+    // * Count-Min Sketch: 4 posiciones derivadas del hash, contadores saturados en 15
+    private void registrarAcceso(String id) {
+        int h = mezclar(id.hashCode());
+        for (int fila = 0; fila < 4; fila++) {
+            int i = indice(h, fila);
+            if (frecuencias[fila][i] < 15) frecuencias[fila][i]++;
+        }
+        if (++muestras >= tamanoMuestra) envejecer();
+    }
+
+    private int frecuencia(String id) {
+        int h = mezclar(id.hashCode());
+        int minimo = 15;
+        for (int fila = 0; fila < 4; fila++) minimo = Math.min(minimo, frecuencias[fila][indice(h, fila)]);
+        return minimo;
+    }
+
+    // ! Envejecimiento: dividir a la mitad olvida la popularidad antigua
+    private void envejecer() {
+        for (byte[] fila : frecuencias) {
+            for (int i = 0; i < fila.length; i++) fila[i] >>= 1;
+        }
+        muestras /= 2;
+    }
+
+    private int indice(int hash, int fila) {
+        int h = hash * (0x9E3779B9 + 2 * fila + 1);
+        return (h ^ (h >>> 16)) & mascaraSketch;
+    }
+
+    private static int mezclar(int h) {
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        return h;
+    }
+}
+
+// * =============================================================
+// * ARNÉS DE ESTRÉS CON HISTOGRAMAS DE LATENCIA
+// * =============================================================
+// ? Histograma log-lineal al estilo HDR: 64 sub-cubos por potencia de 2 (error < 1,6%)
+// ? desde 1 ns hasta ~2^40 ns, en un array fijo de contadores (sin objetos por muestra).
+class HistogramaLatencias {
+    private static final int SUB_BITS = 6;
+    private static final int SUB_CUBOS = 1 << SUB_BITS;          // 64
+    private static final int MAX_DESPLAZAMIENTO = 40;
+    private final long[] cuentas = new long[2 * SUB_CUBOS + MAX_DESPLAZAMIENTO * SUB_CUBOS];
+    private long total;
+    private long maximo;
+    private long minimo = Long.MAX_VALUE;
+    private double suma;
+
+    public void registrar(long nanos) {
+        long v = Math.max(0, nanos);
+        cuentas[indice(v)]++;
+        total++;
+        suma += v;
+        if (v > maximo) maximo = v;
+        if (v < minimo) minimo = v;
+    }
+
+    public void sumar(HistogramaLatencias otro) {
+        for (int i = 0; i < cuentas.length; i++) cuentas[i] += otro.cuentas[i];
+        total += otro.total;
+        suma += otro.suma;
+        maximo = Math.max(maximo, otro.maximo);
+        minimo = Math.min(minimo, otro.minimo);
+    }
+
+    // * Valor (límite superior del cubo) por debajo del cual queda el percentil pedido
+    public long percentil(double p) {
+        if (total == 0) return 0;
+        long objetivo = Math.max(1, (long) Math.ceil(total * p / 100.0));
+        long acumulado = 0;
+        for (int i = 0; i < cuentas.length; i++) {
+            acumulado += cuentas[i];
+            if (acumulado >= objetivo) return Math.min(maximo, limiteSuperior(i));
+        }
+        return maximo;
+    }
+
+    public long getTotal() { return total; }
+    public long getMaximo() { return maximo; }
+    public long getMinimo() { return total == 0 ? 0 : minimo; }
+    public double getMedia() { return total == 0 ? 0 : suma / total; }
+
+    // ? Valores < 128 van directos; el resto por (potencia de 2, 6 bits siguientes)
+    private static int indice(long v) {
+        if (v < 2 * SUB_CUBOS) return (int) v;
+        int desplazamiento = Math.min(MAX_DESPLAZAMIENTO, 63 - Long.numberOfLeadingZeros(v) - SUB_BITS);
+        long sub = Math.min(2 * SUB_CUBOS - 1, v >>> desplazamiento);
+        return 2 * SUB_CUBOS + (desplazamiento - 1) * SUB_CUBOS + (int) (sub - SUB_CUBOS);
+    }
+
+    private static long limiteSuperior(int i) {
+        if (i < 2 * SUB_CUBOS) return i;
+        int desplazamiento = (i - 2 * SUB_CUBOS) / SUB_CUBOS + 1;
+        long sub = (i - 2 * SUB_CUBOS) % SUB_CUBOS + SUB_CUBOS;
+        return ((sub + 1) << desplazamiento) - 1;
+    }
+}
+
+// ? Arnés de carga en bucle cerrado: N hilos ejecutan una mezcla ponderada de operaciones.
+// ? - Con ritmo objetivo (ops/s por hilo) cada petición tiene una hora prevista de salida:
+// ?   la latencia "corregida" se mide desde esa hora, no desde que el hilo quedó libre.
+// ? - Sin ritmo objetivo solo hay latencia de servicio (la corrección no es posible).
+// ? - Tras el calentamiento, cada hilo usa sus propios histogramas y se suman al final.
+// ? - Los resultados se guardan en CSV con una etiqueta de versión para comparar ejecuciones.
+class ArnesEstres {
+    // ? Resultado por operación
+    static final class Resultado {
+        final String version;
+        final String operacion;
+        final long operaciones;
+        final double opsPorSegundo;
+        final HistogramaLatencias servicio;
+        final HistogramaLatencias corregida;
+
+        Resultado(String version, String operacion, double segundos, HistogramaLatencias servicio, HistogramaLatencias corregida) {
+            this.version = version;
+            this.operacion = operacion;
+            this.operaciones = servicio.getTotal();
+            this.opsPorSegundo = servicio.getTotal() / segundos;
+            this.servicio = servicio;
+            this.corregida = corregida;
+        }
+
+        static String cabeceraCsv() {
+            return "version,operacion,operaciones,ops_s,p50_us,p99_us,p999_us,max_us,p99_corregido_us,p999_corregido_us";
+        }
+
+        String aCsv() {
+            return String.format(Locale.ROOT, "%s,%s,%d,%.1f,%.2f,%.2f,%.2f,%.2f,%.2f,%.2f", version, operacion, operaciones,
+                    opsPorSegundo, us(servicio.percentil(50)), us(servicio.percentil(99)), us(servicio.percentil(99.9)),
+                    us(servicio.getMaximo()), us(corregida.percentil(99)), us(corregida.percentil(99.9)));
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%-14s %9d ops %11.0f ops/s  p50=%8.2fµs p99=%8.2fµs p99.9=%8.2fµs max=%9.2fµs (p99.9 corregido=%.2fµs)",
+                    operacion, operaciones, opsPorSegundo, us(servicio.percentil(50)), us(servicio.percentil(99)),
+                    us(servicio.percentil(99.9)), us(servicio.getMaximo()), us(corregida.percentil(99.9)));
+        }
+
+        private static double us(long nanos) { return nanos / 1000.0; }
+    }
+
+    private final String version;
+    private final int hilos;
+    private final long calentamientoMs;
+    private final long duracionMs;
+    private final double opsPorSegundoPorHilo;
+    private final Map<String, Runnable> operaciones = new LinkedHashMap<>();
+    private final Map<String, Integer> pesos = new LinkedHashMap<>();
+
+    // * opsPorSegundoPorHilo = 0 → sin límite de ritmo (bucle cerrado puro)
+    public ArnesEstres(String version, int hilos, long calentamientoMs, long duracionMs, double opsPorSegundoPorHilo) {
+        if (hilos <= 0 || duracionMs <= 0) throw new IllegalArgumentException("Configuración de carga inválida");
+        this.version = version;
+        this.hilos = hilos;
+        this.calentamientoMs = calentamientoMs;
+        this.duracionMs = duracionMs;
+        this.opsPorSegundoPorHilo = opsPorSegundoPorHilo;
+    }
+
+    public ArnesEstres operacion(String nombre, int peso, Runnable accion) {
+        if (peso <= 0) throw new IllegalArgumentException("El peso debe ser positivo");
+        operaciones.put(nombre, accion);
+        pesos.put(nombre, peso);
+        return this;
+    }
+
+    // * Carga de ejemplo sobre el dominio: matricular en Cursos, consultar ingresos y mutar Personas
+    public static ArnesEstres cargaDominio(String version, int hilos, long calentamientoMs, long duracionMs, double ritmo) {
+        Curso[] cursos = new Curso[64];
+        for (int i = 0; i < cursos.length; i++) cursos[i] = new Curso("Curso-" + i);
+        Persona[] personas = new Persona[10_000];
+        for (int i = 0; i < personas.length; i++) personas[i] = new Persona("Persona " + i, 20 + i % 40);
+        return new ArnesEstres(version, hilos, calentamientoMs, duracionMs, ritmo)
+                .operacion("matricular", 30, () -> {
+                    ThreadLocalRandom r = ThreadLocalRandom.current();
+                    cursos[r.nextInt(cursos.length)].agregarParticipante(personas[r.nextInt(personas.length)]);
+                })
+                .operacion("ingresos", 5, () -> cursos[ThreadLocalRandom.current().nextInt(cursos.length)].ingresosTotales())
+                .operacion("mutarPersona", 65, () -> {
+                    ThreadLocalRandom r = ThreadLocalRandom.current();
+                    Persona p = personas[r.nextInt(personas.length)];
+                    switch (r.nextInt(3)) {
+                        case 0: p.setNombre("Persona " + r.nextInt(1000)); break;
+                        case 1: p.setEdad(18 + r.nextInt(60)); break;
+                        default: p.setRol(Rol.values()[r.nextInt(3)]);
+                    }
+                });
+    }
+
+    public List<Resultado> ejecutar() throws InterruptedException {
+        String[] nombres = operaciones.keySet().toArray(new String[0]);
+        Runnable[] acciones = new Runnable[nombres.length];
+        int[] acumulados = new int[nombres.length];
+        int pesoTotal = 0;
+        for (int i = 0; i < nombres.length; i++) {
+            acciones[i] = operaciones.get(nombres[i]);
+            pesoTotal += pesos.get(nombres[i]);
+            acumulados[i] = pesoTotal;
+        }
+        final int pesoMezcla = pesoTotal;
+        long intervalo = opsPorSegundoPorHilo > 0 ? (long) (1e9 / opsPorSegundoPorHilo) : 0;
+        HistogramaLatencias[][] servicio = new HistogramaLatencias[hilos][nombres.length];
+        HistogramaLatencias[][] corregida = new HistogramaLatencias[hilos][nombres.length];
+        CountDownLatch salida = new CountDownLatch(1);
+        Thread[] trabajadores = new Thread[hilos];
+        long[] inicioMedicion = new long[1];
+
+        for (int h = 0; h < hilos; h++) {
+            final int hilo = h;
+            for (int i = 0; i < nombres.length; i++) {
+                servicio[h][i] = new HistogramaLatencias();
+                corregida[h][i] = new HistogramaLatencias();
+            }
+            trabajadores[h] = new Thread(() -> {
+                try {
+                    salida.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                long inicio = inicioMedicion[0];
+                long finCalentamiento = inicio + calentamientoMs * 1_000_000L;
+                long fin = finCalentamiento + duracionMs * 1_000_000L;
+                long prevista = System.nanoTime();
+                ThreadLocalRandom r = ThreadLocalRandom.current();
+                while (true) {
+                    if (intervalo > 0) {
+                        // ? Esperar a la hora prevista (si vamos tarde, se sale en seguida)
+                        while (System.nanoTime() < prevista) Thread.onSpinWait();
+                    }
+                    long t0 = System.nanoTime();
+                    if (t0 >= fin) break;
+                    int sorteo = r.nextInt(pesoMezcla);
+                    int op = 0;
+                    while (acumulados[op] <= sorteo) op++;
+                    acciones[op].run();
+                    long t1 = System.nanoTime();
+                    if (t0 >= finCalentamiento) {
+                        servicio[hilo][op].registrar(t1 - t0);
+                        if (intervalo > 0) {
+                            corregida[hilo][op].registrar(t1 - prevista);
+                        } else {
+                            corregida[hilo][op].registrar(t1 - t0);
+                        }
+                    }
+                    prevista = intervalo > 0 ? prevista + intervalo : t1;
+                }
+            }, "estres-" + h);
+            trabajadores[h].start();
+        }
+        inicioMedicion[0] = System.nanoTime();
+        salida.countDown();
+        for (Thread t : trabajadores) t.join();
+
+        double segundos = duracionMs / 1000.0;
+        List<Resultado> resultados = new ArrayList<>();
+        HistogramaLatencias totalServicio = new HistogramaLatencias();
+        HistogramaLatencias totalCorregida = new HistogramaLatencias();
+        for (int i = 0; i < nombres.length; i++) {
+            HistogramaLatencias s = new HistogramaLatencias();
+            HistogramaLatencias c = new HistogramaLatencias();
+            for (int h = 0; h < hilos; h++) {
+                s.sumar(servicio[h][i]);
+                c.sumar(corregida[h][i]);
+            }
+            totalServicio.sumar(s);
+            totalCorregida.sumar(c);
+            resultados.add(new Resultado(version, nombres[i], segundos, s, c));
+        }
+        resultados.add(new Resultado(version, "TOTAL", segundos, totalServicio, totalCorregida));
+        return resultados;
+    }
+
+    public static void guardarCsv(Path fichero, List<Resultado> resultados) throws IOException {
+        List<String> lineas = new ArrayList<>();
+        lineas.add(Resultado.cabeceraCsv());
+        for (Resultado r : resultados) lineas.add(r.aCsv());
+        Files.write(fichero, lineas, StandardCharsets.UTF_8);
+    }
+
+    // * Compara dos CSV (base vs nueva): variación en % de cada métrica por operación
+    public static List<String> comparar(Path base, Path nueva) throws IOException {
+        Map<String, String[]> filasBase = leerCsv(base);
+        Map<String, String[]> filasNueva = leerCsv(nueva);
+        String[] cabecera = Resultado.cabeceraCsv().split(",");
+        List<String> informe = new ArrayList<>();
+        for (Map.Entry<String, String[]> e : filasNueva.entrySet()) {
+            String[] b = filasBase.get(e.getKey());
+            if (b == null) continue;
+            StringBuilder linea = new StringBuilder(e.getKey() + " [" + b[0] + " → " + e.getValue()[0] + "]:");
+            for (int i = 3; i < cabecera.length; i++) {
+                double vb = Double.parseDouble(b[i]);
+                double vn = Double.parseDouble(e.getValue()[i]);
+                double cambio = vb == 0 ? 0 : (vn - vb) / vb * 100;
+                linea.append(String.format(Locale.ROOT, " %s %+.1f%%", cabecera[i], cambio));
+            }
+            informe.add(linea.toString());
+        }
+        return informe;
+    }
+
+    private static Map<String, String[]> leerCsv(Path fichero) throws IOException {
+        Map<String, String[]> filas = new LinkedHashMap<>();
+        List<String> lineas = Files.readAllLines(fichero, StandardCharsets.UTF_8);
+        for (int i = 1; i < lineas.size(); i++) {
+            String[] campos = lineas.get(i).split(",");
+            filas.put(campos[1], campos);
+        }
+        return filas;
+    }
+}
+
+// * =============================================================
+// * CODEC JSON EN STREAMING (SIN REFLEXIÓN)
+// * =============================================================
+// ! Copia reducida del núcleo JSON de UT5_ClasesObjetosCompleto (cada archivo se compila
+// ! por separado y no pueden compartir clases): solo lo que necesita CodecPersona
+// ! (sin booleanos). Un arreglo en el lector o el escritor debe hacerse en los dos archivos.
+// ? Escritor JSON sobre un ByteBuffer fijo: codifica UTF-8 directamente en el array
+// ? del búfer y lo vuelca al canal cuando se llena (memoria constante con arrays enormes).
+// ? Las claves van precodificadas (clave("nombre") → "nombre":) para no recodificarlas.
+// ! Una sola profundidad de anidamiento por bit: máximo 62 niveles.
+class EscritorJson {
+    private final WritableByteChannel destino;
+    private final ByteBuffer buffer;
+    private final byte[] datos;
+    private int pos;
+    private int profundidad;
+    private long primeros = 1;          // bit d = siguiente elemento en nivel d es el primero
+    private boolean despuesDeClave;
+
+    public EscritorJson(WritableByteChannel destino, int capacidad) {
+        if (capacidad < 64) throw new IllegalArgumentException("Capacidad mínima: 64 bytes");
+        this.destino = destino;
+        this.buffer = ByteBuffer.allocate(capacidad);
+        this.datos = buffer.array();
+    }
+
+    public static byte[] clave(String nombre) {
+        return ('"' + nombre + "\":").getBytes(StandardCharsets.UTF_8);
+    }
+
+    // * Valor constante precodificado (p. ej. "ADMIN" con comillas)
+    public static byte[] literal(String texto) {
+        return ('"' + texto + '"').getBytes(StandardCharsets.UTF_8);
+    }
+
+    public EscritorJson inicioObjeto() throws IOException { return abrir((byte) '{'); }
+    public EscritorJson finObjeto() throws IOException { return cerrar((byte) '}'); }
+    public EscritorJson inicioArray() throws IOException { return abrir((byte) '['); }
+    public EscritorJson finArray() throws IOException { return cerrar((byte) ']'); }
+
+    public EscritorJson campo(byte[] clave) throws IOException {
+        separador();
+        crudo(clave);
+        despuesDeClave = true;
+        return this;
+    }
+
+    public EscritorJson valor(String texto) throws IOException {
+        if (texto == null) return nulo();
+        separador();
+        asegurar(1);
+        datos[pos++] = '"';
+        for (int i = 0; i < texto.length(); i++) {
+            char c = texto.charAt(i);
+            if (pos + 12 > datos.length) vaciar();
+            if (c >= 0x20 && c < 0x80) {
+                if (c == '"' || c == '\\') datos[pos++] = '\\';
+                datos[pos++] = (byte) c;
+            } else if (c < 0x20) {
+                escaparControl(c);
+            } else if (c < 0x800) {
+                datos[pos++] = (byte) (0xC0 | (c >> 6));
+                datos[pos++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < texto.length() && Character.isLowSurrogate(texto.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, texto.charAt(++i));
+                datos[pos++] = (byte) (0xF0 | (cp >> 18));
+                datos[pos++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                datos[pos++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                datos[pos++] = (byte) (0x80 | (cp & 0x3F));
+            } else {
+                datos[pos++] = (byte) (0xE0 | (c >> 12));
+                datos[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                datos[pos++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        asegurar(1);
+        datos[pos++] = '"';
+        return this;
+    }
+
+    public EscritorJson valor(long numero) throws IOException {
+        separador();
+        asegurar(20);
+        if (numero == Long.MIN_VALUE) {
+            crudo(Long.toString(numero).getBytes(StandardCharsets.US_ASCII));
+            return this;
+        }
+        if (numero < 0) {
+            datos[pos++] = '-';
+            numero = -numero;
+        }
+        int inicio = pos;
+        do {
+            datos[pos++] = (byte) ('0' + numero % 10);
+            numero /= 10;
+        } while (numero != 0);
+        for (int i = inicio, j = pos - 1; i < j; i++, j--) {   // * Los dígitos salen al revés
+            byte t = datos[i];
+            datos[i] = datos[j];
+            datos[j] = t;
+        }
+        return this;
+    }
+
+    // ? NaN e infinitos no existen en JSON: se escriben como null
+    public EscritorJson valor(double numero) throws IOException {
+        if (Double.isNaN(numero) || Double.isInfinite(numero)) return nulo();
+        if (numero == (long) numero && Math.abs(numero) < 1e15) {
+            valor((long) numero);
+            asegurar(2);
+            datos[pos++] = '.';
+            datos[pos++] = '0';
+            return this;
+        }
+        separador();
+        crudo(Double.toString(numero).getBytes(StandardCharsets.US_ASCII));
+        return this;
+    }
+
+    // * Valor precodificado con literal(...)
+    public EscritorJson valorLiteral(byte[] literal) throws IOException {
+        separador();
+        crudo(literal);
+        return this;
+    }
+
+    public EscritorJson nulo() throws IOException {
+        separador();
+        crudo(NULO);
+        return this;
+    }
+
+    // * Escribe en el canal lo que quede en el búfer
+    public void vaciar() throws IOException {
+        buffer.clear().limit(pos);
+        while (buffer.hasRemaining()) destino.write(buffer);
+        pos = 0;
+    }
+
+    private static final byte[] NULO = {'n', 'u', 'l', 'l'};
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    private EscritorJson abrir(byte simbolo) throws IOException {
+        separador();
+        if (++profundidad > 62) throw new IOException("JSON demasiado anidado");
+        primeros |= 1L << profundidad;
+        asegurar(1);
+        datos[pos++] = simbolo;
+        return this;
+    }
+
+    private EscritorJson cerrar(byte simbolo) throws IOException {
+        profundidad--;
+        asegurar(1);
+        datos[pos++] = simbolo;
+        return this;
+    }
+
+    // ! La coma va delante de todo elemento salvo el primero del nivel y el valor tras una clave
+    private void separador() throws IOException {
+        if (despuesDeClave) {
+            despuesDeClave = false;
+            return;
+        }
+        long bit = 1L << profundidad;
+        if ((primeros & bit) != 0) {
+            primeros &= ~bit;
+        } else {
+            asegurar(1);
+            datos[pos++] = ',';
+        }
+    }
+
+    private void escaparControl(char c) {
+        datos[pos++] = '\\';
+        switch (c) {
+            case '\n': datos[pos++] = 'n'; break;
+            case '\r': datos[pos++] = 'r'; break;
+            case '\t': datos[pos++] = 't'; break;
+            default:
+                datos[pos++] = 'u';
+                datos[pos++] = '0';
+                datos[pos++] = '0';
+                datos[pos++] = HEX[c >> 4];
+                datos[pos++] = HEX[c & 0xF];
+        }
+    }
+
+    private void crudo(byte[] bytes) throws IOException {
+        if (bytes.length > datos.length) {
+            vaciar();
+            ByteBuffer grande = ByteBuffer.wrap(bytes);
+            while (grande.hasRemaining()) destino.write(grande);
+            return;
+        }
+        asegurar(bytes.length);
+        System.arraycopy(bytes, 0, datos, pos, bytes.length);
+        pos += bytes.length;
+    }
+
+    private void asegurar(int bytes) throws IOException {
+        if (pos + bytes > datos.length) vaciar();
+    }
+}
+
+// ? Lector JSON incremental: rellena un ByteBuffer fijo desde el canal según avanza.
+// ? Las claves se comparan byte a byte con las del codec (sin crear Strings);
+// ? las claves desconocidas se saltan con su valor completo.
+// ! Los errores de sintaxis se lanzan como IOException con la posición del byte.
+class LectorJson {
+    public static final int FIN = -1;
+
+    private final ReadableByteChannel origen;
+    private final ByteBuffer buffer;
+    private final byte[] datos;
+    private int pos;
+    private int lim;
+    private long consumidos;
+    private int profundidad;
+    private long primeros;
+    private char[] texto = new char[64];
+    private byte[] claveLeida = new byte[32];
+
+    public LectorJson(ReadableByteChannel origen, int capacidad) {
+        if (capacidad < 64) throw new IllegalArgumentException("Capacidad mínima: 64 bytes");
+        this.origen = origen;
+        this.buffer = ByteBuffer.allocate(capacidad);
+        this.datos = buffer.array();
+    }
+
+    // * Nombres tal y como los espera siguienteCampo/leerOpcion
+    public static byte[][] nombres(String... nombres) {
+        byte[][] resultado = new byte[nombres.length][];
+        for (int i = 0; i < nombres.length; i++) resultado[i] = nombres[i].getBytes(StandardCharsets.UTF_8);
+        return resultado;
+    }
+
+    // ? false si el valor es null
+    public boolean inicioObjeto() throws IOException { return abrir('{'); }
+    public boolean inicioArray() throws IOException { return abrir('['); }
+
+    // * Índice de la siguiente clave conocida, o FIN al cerrar el objeto
+    public int siguienteCampo(byte[][] campos) throws IOException {
+        while (siguienteMiembro('}')) {
+            int n = leerCadenaCruda();
+            esperar(':');
+            int indice = buscar(campos, n);
+            if (indice >= 0) return indice;
+            saltarValor();
+        }
+        return FIN;
+    }
+
+    // * true si el array tiene otro elemento (consume la coma), false si se ha cerrado
+    public boolean siguienteElemento() throws IOException {
+        return siguienteMiembro(']');
+    }
+
+    public String leerString() throws IOException {
+        int c = saltarEspacios();
+        if (c == 'n') {
+            literal(NULO);
+            return null;
+        }
+        esperar('"');
+        int n = 0;
+        while (true) {
+            // ? Camino rápido: tramo ASCII sin escapes dentro del búfer actual
+            int b;
+            while (pos < lim && (b = datos[pos]) > 0 && b != '"' && b != '\\') {
+                if (n == texto.length) texto = Arrays.copyOf(texto, n * 2);
+                texto[n++] = (char) b;
+                pos++;
+            }
+            b = leerByte();
+            if (b == '"') break;
+            if (n + 2 > texto.length) texto = Arrays.copyOf(texto, texto.length * 2);
+            if (b == '\\') {
+                texto[n++] = leerEscape();
+            } else if (b < 0x80) {
+                texto[n++] = (char) b;
+            } else if (b < 0xE0) {
+                texto[n++] = (char) (((b & 0x1F) << 6) | continuacion());
+            } else if (b < 0xF0) {
+                texto[n++] = (char) (((b & 0x0F) << 12) | (continuacion() << 6) | continuacion());
+            } else {
+                int cp = ((b & 0x07) << 18) | (continuacion() << 12) | (continuacion() << 6) | continuacion();
+                texto[n++] = Character.highSurrogate(cp);
+                texto[n++] = Character.lowSurrogate(cp);
+            }
+        }
+        return new String(texto, 0, n);
+    }
+
+    // * Índice de la opción (cadena) leída entre las dadas; -1 si es null o desconocida
+    public int leerOpcion(byte[][] opciones) throws IOException {
+        if (saltarEspacios() == 'n') {
+            literal(NULO);
+            return -1;
+        }
+        esperar('"');
+        int n = leerCadenaCruda();
+        return buscar(opciones, n);
+    }
+
+    // ! Se acumula en negativo (como Long.parseLong): así cabe también Long.MIN_VALUE
+    public long leerLong() throws IOException {
+        int c = saltarEspacios();
+        boolean negativo = c == '-';
+        if (negativo) pos++;
+        long limite = negativo ? Long.MIN_VALUE : -Long.MAX_VALUE;
+        long minimoAntesDePor10 = limite / 10;
+        long valor = 0;
+        int digitos = 0;
+        while ((c = mirar()) >= '0' && c <= '9') {
+            pos++;
+            int d = c - '0';
+            if (valor < minimoAntesDePor10 || valor * 10 < limite + d) throw error("Número entero fuera de rango");
+            valor = valor * 10 - d;
+            digitos++;
+        }
+        if (digitos == 0) throw error("Se esperaba un número");
+        return negativo ? valor : -valor;
+    }
+
+    public int leerInt() throws IOException {
+        long valor = leerLong();
+        if (valor < Integer.MIN_VALUE || valor > Integer.MAX_VALUE) throw error("Entero fuera de rango");
+        return (int) valor;
+    }
+
+    // ? Enteros y decimales cortos se calculan sin crear objetos; el resto con Double.parseDouble
+    public double leerDouble() throws IOException {
+        int c = saltarEspacios();
+        if (c == 'n') {
+            literal(NULO);
+            return Double.NaN;
+        }
+        int n = 0;
+        while ((c = mirar()) != -1 && (c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E' || (c >= '0' && c <= '9'))) {
+            if (n == texto.length) texto = Arrays.copyOf(texto, n * 2);
+            texto[n++] = (char) c;
+            pos++;
+        }
+        if (n == 0) throw error("Se esperaba un número");
+        long mantisa = 0;
+        int decimales = -1;
+        int digitos = 0;
+        int inicio = texto[0] == '-' ? 1 : 0;
+        boolean simple = n - inicio <= 16;
+        for (int i = inicio; i < n && simple; i++) {
+            char d = texto[i];
+            if (d >= '0' && d <= '9') {
+                mantisa = mantisa * 10 + (d - '0');
+                digitos++;
+                if (decimales >= 0) decimales++;
+            } else if (d == '.' && decimales < 0) {
+                decimales = 0;
+            } else {
+                simple = false;
+            }
+        }
+        if (simple && digitos > 0 && decimales <= POTENCIAS.length - 1 && mantisa < (1L << 53)) {
+            double valor = decimales > 0 ? mantisa / POTENCIAS[decimales] : mantisa;
+            return inicio == 1 ? -valor : valor;
+        }
+        try {
+            return Double.parseDouble(new String(texto, 0, n));
+        } catch (NumberFormatException e) {
+            throw error("Número inválido");
+        }
+    }
+
+    // * Salta un valor completo (cadena, número, literal, objeto o array)
+    public void saltarValor() throws IOException {
+        int c = saltarEspacios();
+        if (c == '"') {
+            pos++;
+            int b;
+            while ((b = leerByte()) != '"') {
+                if (b == '\\') leerByte();
+            }
+        } else if (c == '{' || c == '[') {
+            int nivel = 0;
+            do {
+                int b = leerByte();
+                if (b == '{' || b == '[') nivel++;
+                else if (b == '}' || b == ']') nivel--;
+                else if (b == '"') {
+                    while ((b = leerByte()) != '"') {
+                        if (b == '\\') leerByte();
+                    }
+                }
+            } while (nivel > 0);
+        } else {
+            while ((c = mirar()) != -1 && c != ',' && c != '}' && c != ']' && c > ' ') pos++;
+        }
+    }
+
+    private static final byte[] NULO = {'n', 'u', 'l', 'l'};
+    private static final double[] POTENCIAS = {1, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+            1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+    private boolean abrir(char simbolo) throws IOException {
+        if (saltarEspacios() == 'n') {
+            literal(NULO);
+            return false;
+        }
+        esperar(simbolo);
+        if (++profundidad > 62) throw error("JSON demasiado anidado");
+        primeros |= 1L << profundidad;
+        return true;
+    }
+
+    private boolean siguienteMiembro(char cierre) throws IOException {
+        int c = saltarEspacios();
+        if (c == cierre) {
+            pos++;
+            profundidad--;
+            return false;
+        }
+        long bit = 1L << profundidad;
+        if ((primeros & bit) != 0) {
+            primeros &= ~bit;
+        } else {
+            esperar(',');
+        }
+        if (cierre == '}') {
+            saltarEspacios();
+            esperar('"');
+        }
+        return true;
+    }
+
+    // ? Bytes de una cadena sin decodificar (para comparar con claves y opciones)
+    private int leerCadenaCruda() throws IOException {
+        int n = 0;
+        int b;
+        while ((b = leerByte()) != '"') {
+            if (b == '\\') b = leerEscape();
+            if (n == claveLeida.length) claveLeida = Arrays.copyOf(claveLeida, n * 2);
+            claveLeida[n++] = (byte) b;
+        }
+        return n;
+    }
+
+    private int buscar(byte[][] candidatos, int n) {
+        for (int i = 0; i < candidatos.length; i++) {
+            byte[] candidato = candidatos[i];
+            if (candidato.length == n && Arrays.equals(candidato, 0, n, claveLeida, 0, n)) return i;
+        }
+        return -1;
+    }
+
+    private char leerEscape() throws IOException {
+        int e = leerByte();
+        switch (e) {
+            case 'n': return '\n';
+            case 'r': return '\r';
+            case 't': return '\t';
+            case 'b': return '\b';
+            case 'f': return '\f';
+            case 'u':
+                int cp = 0;
+                for (int i = 0; i < 4; i++) cp = (cp << 4) | Character.digit(leerByte(), 16);
+                return (char) cp;
+            default: return (char) e;   // ? \" \\ \/
+        }
+    }
+
+    private int continuacion() throws IOException {
+        return leerByte() & 0x3F;
+    }
+
+    private void literal(byte[] esperado) throws IOException {
+        for (byte b : esperado) {
+            if (leerByte() != b) throw error("Literal inválido");
+        }
+    }
+
+    private void esperar(char simbolo) throws IOException {
+        if (leerByte() != simbolo) throw error("Se esperaba '" + simbolo + "'");
+    }
+
+    private int saltarEspacios() throws IOException {
+        int c;
+        while ((c = mirar()) == ' ' || c == '\n' || c == '\r' || c == '\t') pos++;
+        if (c == -1) throw error("Fin de datos inesperado");
+        return c;
+    }
+
+    private int mirar() throws IOException {
+        if (pos == lim && !rellenar()) return -1;
+        return datos[pos] & 0xFF;
+    }
+
+    private int leerByte() throws IOException {
+        if (pos == lim && !rellenar()) throw error("Fin de datos inesperado");
+        return datos[pos++] & 0xFF;
+    }
+
+    private boolean rellenar() throws IOException {
+        consumidos += lim;
+        buffer.clear();
+        int leidos;
+        do {
+            leidos = origen.read(buffer);
+        } while (leidos == 0);
+        pos = 0;
+        lim = Math.max(0, buffer.position());
+        return leidos > 0;
+    }
+
+    private IOException error(String mensaje) {
+        return new IOException("JSON inválido en el byte " + (consumidos + pos) + ": " + mensaje);
+    }
+}
+
+// ? Codec escrito a mano para un tipo: sin reflexión, campos precodificados.
+// ? escribirTodos/leerTodos tratan arrays enormes de elemento en elemento.
+interface CodecJson<T> {
+    void escribir(T valor, EscritorJson salida) throws IOException;
+
+    // ? null si el valor JSON es null
+    T leer(LectorJson entrada) throws IOException;
+
+    default void escribirTodos(Iterable<? extends T> valores, EscritorJson salida) throws IOException {
+        salida.inicioArray();
+        for (T valor : valores) escribir(valor, salida);
+        salida.finArray();
+        salida.vaciar();
+    }
+
+    default long leerTodos(LectorJson entrada, Consumer<? super T> destino) throws IOException {
+        long leidos = 0;
+        if (!entrada.inicioArray()) return 0;
+        while (entrada.siguienteElemento()) {
+            destino.accept(leer(entrada));
+            leidos++;
+        }
+        return leidos;
+    }
+}
+
+// ? Codec de la jerarquía Persona: un campo "tipo" distingue Persona, Estudiante y Empleado.
+// ? Al leer se admiten los campos en cualquier orden; los que no aplican al tipo se ignoran.
+// ! Se conserva el id: Persona se reconstruye con el Builder y las subclases con su constructor con id.
+class CodecPersona implements CodecJson<Persona> {
+    private static final byte[] TIPO = EscritorJson.clave("tipo");
+    private static final byte[] ID = EscritorJson.clave("id");
+    private static final byte[] NOMBRE = EscritorJson.clave("nombre");
+    private static final byte[] EDAD = EscritorJson.clave("edad");
+    private static final byte[] ROL = EscritorJson.clave("rol");
+    private static final byte[] CURSO_ACTUAL = EscritorJson.clave("cursoActual");
+    private static final byte[] CUOTA_MENSUAL = EscritorJson.clave("cuotaMensual");
+    private static final byte[] SALARIO_BASE = EscritorJson.clave("salarioBase");
+    private static final byte[] BONUS = EscritorJson.clave("bonus");
+    private static final byte[][] CAMPOS = LectorJson.nombres("tipo", "id", "nombre", "edad", "rol",
+            "cursoActual", "cuotaMensual", "salarioBase", "bonus");
+
+    private static final String[] NOMBRES_TIPOS = {"Persona", "Estudiante", "Empleado"};
+    private static final byte[][] TIPOS = LectorJson.nombres(NOMBRES_TIPOS);
+    private static final byte[][] TIPOS_LITERALES = new byte[NOMBRES_TIPOS.length][];
+    private static final Rol[] ROLES = Rol.values();
+    private static final byte[][] NOMBRES_ROLES = new byte[ROLES.length][];
+    private static final byte[][] ROLES_LITERALES = new byte[ROLES.length][];
+    static {
+        for (int i = 0; i < NOMBRES_TIPOS.length; i++) TIPOS_LITERALES[i] = EscritorJson.literal(NOMBRES_TIPOS[i]);
+        for (int i = 0; i < ROLES.length; i++) {
+            NOMBRES_ROLES[i] = ROLES[i].name().getBytes(StandardCharsets.UTF_8);
+            ROLES_LITERALES[i] = EscritorJson.literal(ROLES[i].name());
+        }
+    }
+
+    @Override
+    public void escribir(Persona p, EscritorJson salida) throws IOException {
+        if (p == null) {
+            salida.nulo();
+            return;
+        }
+        int tipo = p instanceof Estudiante ? 1 : p instanceof Empleado ? 2 : 0;
+        salida.inicioObjeto();
+        salida.campo(TIPO).valorLiteral(TIPOS_LITERALES[tipo]);
+        salida.campo(ID).valor(p.getId());
+        salida.campo(NOMBRE).valor(p.getNombre());
+        salida.campo(EDAD).valor(p.getEdad());
+        salida.campo(ROL);
+        if (p.getRol() == null) salida.nulo(); else salida.valorLiteral(ROLES_LITERALES[p.getRol().ordinal()]);
+        if (tipo == 1) {
+            Estudiante e = (Estudiante) p;
+            salida.campo(CURSO_ACTUAL).valor(e.getCursoActual());
+            salida.campo(CUOTA_MENSUAL).valor(e.getCuotaMensual());
+        } else if (tipo == 2) {
+            Empleado e = (Empleado) p;
+            salida.campo(SALARIO_BASE).valor(e.getSalarioBase());
+            salida.campo(BONUS).valor(e.getBonus());
+        }
+        salida.finObjeto();
+    }
+
+    @Override
+    public Persona leer(LectorJson entrada) throws IOException {
+        if (!entrada.inicioObjeto()) return null;
+        int tipo = 0;
+        String id = null;
+        String nombre = null;
+        int edad = 0;
+        Rol rol = null;
+        String cursoActual = null;
+        double cuotaMensual = 0;
+        double salarioBase = 0;
+        double bonus = 0;
+        int campo;
+        while ((campo = entrada.siguienteCampo(CAMPOS)) != LectorJson.FIN) {
+            switch (campo) {
+                case 0:
+                    tipo = entrada.leerOpcion(TIPOS);
+                    if (tipo < 0) throw new IOException("Tipo de persona desconocido");
+                    break;
+                case 1: id = entrada.leerString(); break;
+                case 2: nombre = entrada.leerString(); break;
+                case 3: edad = entrada.leerInt(); break;
+                case 4:
+                    int r = entrada.leerOpcion(NOMBRES_ROLES);
+                    rol = r < 0 ? null : ROLES[r];
+                    break;
+                case 5: cursoActual = entrada.leerString(); break;
+                case 6: cuotaMensual = entrada.leerDouble(); break;
+                case 7: salarioBase = entrada.leerDouble(); break;
+                default: bonus = entrada.leerDouble();
+            }
+        }
+        if (id == null) throw new IOException("Persona sin id");
+        try {
+            switch (tipo) {
+                case 1: return new Estudiante(id, nombre, edad, rol, cursoActual, cuotaMensual);
+                case 2: return new Empleado(id, nombre, edad, rol, salarioBase, bonus);
+                default: return new Persona.Builder().id(id).nombre(nombre).edad(edad).rol(rol == null ? Rol.ALUMNO : rol).build();
+            }
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Persona " + id + " inválida: " + e.getMessage(), e);
+        }
+    }
+}
+
+// * =============================================================
+// * CAPTURA DE CAMBIOS (CDC) HACIA UNA RÉPLICA EN OTRO PROCESO
+// * =============================================================
+// ? Anillo en un fichero mapeado en memoria, compartido por dos JVM del mismo equipo.
+// ? Cabecera (256 bytes):
+// ?   [0]   mágico, [4] versión, [8] capacidad del anillo (bytes)
+// ?   [64]  cola: posición lógica hasta la que hay registros publicados (escritor)
+// ?   [72]  última secuencia publicada
+// ?   [128] checkpoint: posición lógica ya aplicada por el seguidor
+// ?   [136] secuencia del checkpoint, [144] latido del seguidor (nanoTime del último sondeo)
+// ? (cola y checkpoint en líneas de caché distintas: cada proceso escribe solo la suya)
+// ? Registro (alineado a 8): secuencia (long), nanoTime (long), longitud (int), tipo (byte),
+// ?   rol (byte, -1 = null), 2 bytes libres, edad (int), id y nombre (short + UTF-8).
+// ? Persona limita id y nombre a 256 caracteres (≤ 768 bytes UTF-8 cada uno): cualquier
+// ? persona válida cabe en MAX_REGISTRO.
+// ! Con el anillo lleno el escritor espera al seguidor, pero solo si su latido es reciente (< 1 s):
+// ! sin seguidor vivo sobrescribe, y un seguidor que vuelva más de una vuelta atrás lo
+// ! detecta (desbordamiento) y debe resincronizarse desde un volcado completo.
+final class AnilloCambios {
+    static final int MAGICO = 0x43444331;            // "CDC1"
+    static final int VERSION = 1;
+    static final int CABECERA = 256;
+    static final int POS_COLA = 64;
+    static final int POS_SECUENCIA = 72;
+    static final int POS_CHECKPOINT = 128;
+    static final int POS_SECUENCIA_CHECKPOINT = 136;
+    static final int POS_LATIDO = 144;
+    static final long LATIDO_MAXIMO = 1_000_000_000L;
+    static final int CABECERA_REGISTRO = 32;
+    static final int MAX_REGISTRO = 8192;
+
+    static final byte RELLENO = 0;
+    static final byte ALTA = 1;
+    static final byte NOMBRE = 2;
+    static final byte EDAD = 3;
+    static final byte ROL = 4;
+
+    // ? Acceso atómico (release/acquire) a los long de la cabecera compartida
+    static final VarHandle LARGOS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    private AnilloCambios() {}
+
+    // * Abre (o crea) el fichero y lo mapea entero; capacidad solo se usa al crearlo
+    static MappedByteBuffer mapear(Path fichero, int capacidad) throws IOException {
+        try (FileChannel canal = FileChannel.open(fichero, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            boolean nuevo = canal.size() == 0;
+            if (nuevo) {
+                if (capacidad < 64 * MAX_REGISTRO || capacidad % 8 != 0) {
+                    throw new IllegalArgumentException("Capacidad mínima " + 64 * MAX_REGISTRO + " bytes y múltiplo de 8");
+                }
+                canal.write(ByteBuffer.allocate(1), CABECERA + (long) capacidad - 1);  // ? Reserva el tamaño completo
+            }
+            MappedByteBuffer mapa = canal.map(FileChannel.MapMode.READ_WRITE, 0, canal.size());
+            mapa.order(ByteOrder.nativeOrder());
+            if (nuevo) {
+                mapa.putInt(4, VERSION);
+                mapa.putInt(8, capacidad);
+                mapa.putInt(0, MAGICO);
+            } else if (mapa.getInt(0) != MAGICO || mapa.getInt(4) != VERSION) {
+                throw new IOException("El fichero no es un anillo de cambios válido: " + fichero);
+            }
+            return mapa;
+        }
+    }
+
+    static int longitudAlineada(int bytes) {
+        return (bytes + 7) & ~7;
+    }
+}
+
+// ? Lado escritor: observa los setters de Persona y publica cada cambio con la fila completa
+// ? (id, nombre, edad, rol), así aplicar un evento en la réplica es siempre un upsert.
+// ! Un único escritor por fichero; los setters de varios hilos se serializan aquí.
+class PublicadorCambios implements ObservadorPersona {
+    private final MappedByteBuffer anillo;
+    private final int capacidad;
+    private long cola;
+    private long secuencia;
+    private long descartados;
+
+    public PublicadorCambios(Path fichero, int capacidad) throws IOException {
+        this.anillo = AnilloCambios.mapear(fichero, capacidad);
+        this.capacidad = anillo.getInt(8);
+        this.cola = (long) AnilloCambios.LARGOS.getAcquire(anillo, AnilloCambios.POS_COLA);
+        this.secuencia = (long) AnilloCambios.LARGOS.getAcquire(anillo, AnilloCambios.POS_SECUENCIA);
+        Persona.registrarObservador(this);
+    }
+
+    // * Deja de publicar cambios (el fichero sigue disponible para el seguidor)
+    public void cerrar() {
+        Persona.eliminarObservador(this);
+    }
+
+    // * Publica el estado actual (p. ej. al arrancar, para que la réplica conozca a todos)
+    public void publicarAlta(Persona p) {
+        publicar(AnilloCambios.ALTA, p);
+    }
+
+    @Override
+    public void nombreCambiado(Persona persona, String anterior) { publicar(AnilloCambios.NOMBRE, persona); }
+
+    @Override
+    public void edadCambiada(Persona persona, int anterior) { publicar(AnilloCambios.EDAD, persona); }
+
+    @Override
+    public void rolCambiado(Persona persona, Rol anterior) { publicar(AnilloCambios.ROL, persona); }
+
+    public synchronized long getSecuencia() {
+        return secuencia;
+    }
+
+    // ? Cambios que no cabían en un registro (la réplica debe resincronizarse si no es 0)
+    public synchronized long getDescartados() {
+        return descartados;
+    }
+
+    private synchronized void publicar(byte tipo, Persona p) {
+        byte[] id = p.getId().getBytes(StandardCharsets.UTF_8);
+        byte[] nombre = p.getNombre().getBytes(StandardCharsets.UTF_8);
+        int longitud = AnilloCambios.longitudAlineada(AnilloCambios.CABECERA_REGISTRO + 4 + id.length + nombre.length);
+        // ! Nunca se lanza desde aquí: el setter ya cambió el campo y quedarían otros
+        // ! observadores sin aviso. Con los límites de Persona esto no debería ocurrir.
+        if (longitud > AnilloCambios.MAX_REGISTRO) {
+            descartados++;
+            System.out.println("⚠️ Cambio de " + p.getId() + " descartado: registro de " + longitud + " bytes");
+            return;
+        }
+        int pos = (int) (cola % capacidad);
+        int hastaElFinal = capacidad - pos;
+        esperarHueco(cola + (hastaElFinal < longitud ? hastaElFinal : 0) + longitud);
+        if (hastaElFinal < longitud) {
+            // ? No cabe antes del final: se marca el hueco como relleno y se sigue desde el principio
+            if (hastaElFinal >= AnilloCambios.CABECERA_REGISTRO) {
+                int base = AnilloCambios.CABECERA + pos;
+                anillo.putLong(base, 0);
+                anillo.putInt(base + 16, hastaElFinal);
+                anillo.put(base + 20, AnilloCambios.RELLENO);
+            }
+            cola += hastaElFinal;
+            pos = 0;
+        }
+        int base = AnilloCambios.CABECERA + pos;
+        anillo.putLong(base, ++secuencia);
+        anillo.putLong(base + 8, System.nanoTime());
+        anillo.putInt(base + 16, longitud);
+        anillo.put(base + 20, tipo);
+        anillo.put(base + 21, (byte) (p.getRol() == null ? -1 : p.getRol().ordinal()));
+        anillo.putInt(base + 24, p.getEdad());
+        anillo.putShort(base + 28, (short) id.length);
+        anillo.put(base + 30, id);
+        anillo.putShort(base + 30 + id.length, (short) nombre.length);
+        anillo.put(base + 32 + id.length, nombre);
+        cola += longitud;
+        // ! Publicación: el seguidor solo lee hasta la cola, que se escribe después del registro
+        AnilloCambios.LARGOS.setRelease(anillo, AnilloCambios.POS_SECUENCIA, secuencia);
+        AnilloCambios.LARGOS.setRelease(anillo, AnilloCambios.POS_COLA, cola);
+    }
+
+    // ? Deja siempre un margen de dos registros: así el seguidor nunca ve un lote a medio sobrescribir
+    private void esperarHueco(long fin) {
+        long limite = capacidad - 2L * AnilloCambios.MAX_REGISTRO;
+        while (fin - (long) AnilloCambios.LARGOS.getAcquire(anillo, AnilloCambios.POS_CHECKPOINT) > limite) {
+            long latido = (long) AnilloCambios.LARGOS.getAcquire(anillo, AnilloCambios.POS_LATIDO);
+            if (System.nanoTime() - latido > AnilloCambios.LATIDO_MAXIMO) return;  // ? Sin seguidor vivo
+            Thread.onSpinWait();
+        }
+    }
+}
+
+// ? Lado seguidor (normalmente otra JVM): lee en lotes todo lo publicado desde su posición,
+// ? lo aplica a una réplica en memoria y guarda el checkpoint en la cabecera tras cada lote.
+// ? Al reabrir el fichero continúa desde el checkpoint (si sigue dentro del anillo);
+// ? la réplica en memoria no se guarda: quien reinicie el seguidor debe recargarla de un volcado.
+// ? Espera activa breve (onSpinWait) para mantener el retraso en microsegundos.
+// ! Cada lote se lee y valida entero en un área de preparación y solo se aplica a la réplica
+// ! después de comprobar que el escritor no lo ha pisado: un lote corrupto no deja rastro.
+class SeguidorCambios {
+    // ? Fila replicada de una persona
+    static final class Fila {
+        final String nombre;
+        final int edad;
+        final Rol rol;
+
+        Fila(String nombre, int edad, Rol rol) {
+            this.nombre = nombre;
+            this.edad = edad;
+            this.rol = rol;
+        }
+
+        @Override
+        public String toString() { return nombre + " (" + edad + ", " + rol + ")"; }
+    }
+
+    // ? Cambio leído del anillo y pendiente de aplicar (fase de preparación del lote)
+    private static final class Pendiente {
+        final String id;
+        final Fila fila;
+        final long instante;
+
+        Pendiente(String id, Fila fila, long instante) {
+            this.id = id;
+            this.fila = fila;
+            this.instante = instante;
+        }
+    }
+
+    private static final Rol[] ROLES = Rol.values();
+
+    private final MappedByteBuffer anillo;
+    private final int capacidad;
+    private final Map<String, Fila> replica = new ConcurrentHashMap<>();
+    private final HistogramaLatencias retraso = new HistogramaLatencias();
+    private final List<Pendiente> lote = new ArrayList<>();
+    private long posicion;
+    private volatile long secuencia;
+    private long lotes;
+    private volatile boolean activo = true;
+
+    public SeguidorCambios(Path fichero) throws IOException {
+        this.anillo = AnilloCambios.mapear(fichero, 0);
+        this.capacidad = anillo.getInt(8);
+        this.posicion = (long) AnilloCambios.LARGOS.getAcquire(anillo, AnilloCambios.POS_CHECKPOINT);
+        this.secuencia = (long) AnilloCambios.LARGOS.getAcquire(anillo, AnilloCambios.POS_SECUENCIA_CHECKPOINT);
+    }
+
+    // * Aplica todo lo publicado desde la última vez (un lote). Devuelve los eventos aplicados.
+    public int sondear() {
+        AnilloCambios.LARGOS.setRelease(anillo, AnilloCambios.POS_LATIDO, System.nanoTime());
+        long cola = (long) AnilloCambios.LARGOS.getAcquire(anillo, AnilloCambios.POS_COLA);
+        if (cola == posicion) return 0;
+        comprobarDesbordamiento(cola);
+        // * Fase 1: leer y validar el lote sin tocar la réplica
+        lote.clear();
+        long pos = posicion;
+        long sec = secuencia;
+        String error = null;
+        while (pos < cola && error == null) {
+            int fisica = (int) (pos % capacidad);
+            int hastaElFinal = capacidad - fisica;
+            if (hastaElFinal < AnilloCambios.CABECERA_REGISTRO) {
+                pos += hastaElFinal;   // ? Hueco demasiado pequeño para un registro
+                continue;
+            }
+            int base = AnilloCambios.CABECERA + fisica;
+            int longitud = anillo.getInt(base + 16);
+            // ! Una longitud rota (p. ej. 0) haría girar este bucle para siempre
+            if (longitud < AnilloCambios.CABECERA_REGISTRO || longitud > AnilloCambios.MAX_REGISTRO
+                    || longitud % 8 != 0 || longitud > hastaElFinal || pos + longitud > cola) {
+                error = "Longitud de registro inválida: " + longitud + " en la posición " + pos;
+                break;
+            }
+            if (anillo.get(base + 20) != AnilloCambios.RELLENO) {
+                long s = anillo.getLong(base);
+                if (s != sec + 1) {
+                    error = "Secuencia " + s + " tras " + sec;
+                    break;
+                }
+                Pendiente p = leer(base, longitud);
+                if (p == null) {
+                    error = "Registro " + s + " mal formado";
+                    break;
+                }
+                sec = s;
+                lote.add(p);
+            }
+            pos += longitud;
+        }
+        // ! Si el escritor ha dado la vuelta mientras leíamos, el lote puede estar corrupto
+        // ! (margen: un relleno más el registro que pueda estar escribiendo ahora mismo).
+        // ! Se comprueba antes de aplicar nada y antes de dar por buena la validación.
+        comprobarDesbordamiento((long) AnilloCambios.LARGOS.getAcquire(anillo, AnilloCambios.POS_COLA) + 2 * AnilloCambios.MAX_REGISTRO);
+        if (error != null) {
+            lote.clear();
+            throw new IllegalStateException(error);
+        }
+        // * Fase 2: aplicar el lote ya validado y avanzar el checkpoint
+        long ahora = System.nanoTime();
+        for (Pendiente p : lote) {
+            replica.put(p.id, p.fila);
+            retraso.registrar(ahora - p.instante);
+        }
+        int aplicados = lote.size();
+        lote.clear();
+        posicion = pos;
+        secuencia = sec;
+        lotes++;
+        AnilloCambios.LARGOS.setRelease(anillo, AnilloCambios.POS_SECUENCIA_CHECKPOINT, secuencia);
+        AnilloCambios.LARGOS.setRelease(anillo, AnilloCambios.POS_CHECKPOINT, posicion);
+        return aplicados;
+    }
+
+    // * Bucle del proceso seguidor: sondea hasta detener()
+    public void seguir() {
+        int vacios = 0;
+        while (activo) {
+            if (sondear() > 0) {
+                vacios = 0;
+            } else if (++vacios < 10_000) {
+                Thread.onSpinWait();
+            } else {
+                Thread.yield();   // ? Sin cambios durante un rato: ceder la CPU sin dormir
+            }
+        }
+    }
+
+    public void detener() { activo = false; }
+
+    public Fila get(String id) { return replica.get(id); }
+    public int size() { return replica.size(); }
+    public long getSecuencia() { return secuencia; }
+    public long getLotes() { return lotes; }
+    public HistogramaLatencias getRetraso() { return retraso; }
+
+    // ? Decodifica un registro; null si sus longitudes internas no caben en 'longitud'
+    private Pendiente leer(int base, int longitud) {
+        int r = anillo.get(base + 21);
+        int edad = anillo.getInt(base + 24);
+        int largoId = anillo.getShort(base + 28);
+        if (largoId < 0 || 32 + largoId > longitud || r >= ROLES.length) return null;
+        int largoNombre = anillo.getShort(base + 30 + largoId);
+        if (largoNombre < 0 || AnilloCambios.CABECERA_REGISTRO + largoId + largoNombre > longitud) return null;
+        byte[] bytes = new byte[Math.max(largoId, largoNombre)];
+        anillo.get(base + 30, bytes, 0, largoId);
+        String id = new String(bytes, 0, largoId, StandardCharsets.UTF_8);
+        anillo.get(base + 32 + largoId, bytes, 0, largoNombre);
+        String nombre = new String(bytes, 0, largoNombre, StandardCharsets.UTF_8);
+        return new Pendiente(id, new Fila(nombre, edad, r < 0 ? null : ROLES[r]), anillo.getLong(base + 8));
+    }
+
+    private void comprobarDesbordamiento(long cola) {
+        if (cola - posicion > capacidad) {
+            throw new IllegalStateException("El seguidor se ha quedado más de una vuelta atrás: hay que resincronizar");
+        }
+    }
+}
+
+// * =============================================================
+// * ALMACÉN DE PERSONAS FRAGMENTADO (HASH CONSISTENTE)
+// * =============================================================
+// ? Las personas se reparten por getId() entre N fragmentos independientes.
+// ? Anillo de hash consistente: cada fragmento aporta V nodos virtuales (hash de 64 bits);
+// ? un id pertenece al primer nodo virtual con hash >= hash(id) (dando la vuelta al final).
+// ? Cada fragmento guarda sus personas ordenadas por (hash, id), de modo que un tramo del
+// ? anillo es un subMap: al añadir o quitar un fragmento solo se recorren y mueven los
+// ? tramos cuyo dueño cambia (≈ 1/N de las claves), nunca el almacén entero.
+// ! Migración en caliente:
+// !  - Durante el cambio conviven el anillo nuevo y el anterior. Las lecturas miran
+// !    nuevo → anterior → nuevo (la migración copia antes de borrar: no hay falsos fallos).
+// !  - Escrituras y movimientos de una clave se serializan con candados por franjas.
+// !  - Un candado de época garantiza que ninguna escritura siga usando el anillo viejo
+// !    cuando empieza la copia.
+// ! Los fragmentos son particiones dentro de esta JVM; otro proceso podría ocupar su lugar
+// ! exponiendo las mismas operaciones (get/put/remove/tramo).
+class AlmacenPersonasFragmentado {
+    // ? Clave ordenada por hash y, a igualdad de hash, por id (id null = después de todos: cota de tramo)
+    private static final class Clave implements Comparable<Clave> {
+        final long hash;
+        final String id;
+
+        Clave(long hash, String id) {
+            this.hash = hash;
+            this.id = id;
+        }
+
+        @Override
+        public int compareTo(Clave o) {
+            int c = Long.compare(hash, o.hash);
+            if (c != 0 || id == o.id) return c;
+            if (id == null) return 1;
+            if (o.id == null) return -1;
+            return id.compareTo(o.id);
+        }
+    }
+
+    // ? Partición: mapa concurrente ordenado por (hash, id)
+    static final class Fragmento {
+        private final String nombre;
+        private final ConcurrentSkipListMap<Clave, Persona> datos = new ConcurrentSkipListMap<>();
+
+        Fragmento(String nombre) { this.nombre = nombre; }
+
+        public String getNombre() { return nombre; }
+        public int size() { return datos.size(); }
+    }
+
+    // ? Anillo inmutable: hashes de los nodos virtuales ordenados y su fragmento
+    private static final class Anillo {
+        final long[] hashes;
+        final Fragmento[] duenos;
+
+        Anillo(List<Fragmento> fragmentos, int virtuales) {
+            TreeMap<Long, Fragmento> nodos = new TreeMap<>();
+            for (Fragmento f : fragmentos) {
+                for (int v = 0; v < virtuales; v++) {
+                    nodos.put(hash(f.nombre + "#" + v), f);   // ? Colisión de 64 bits: se queda el último
+                }
+            }
+            hashes = new long[nodos.size()];
+            duenos = new Fragmento[nodos.size()];
+            int i = 0;
+            for (Map.Entry<Long, Fragmento> e : nodos.entrySet()) {
+                hashes[i] = e.getKey();
+                duenos[i++] = e.getValue();
+            }
+        }
+
+        Fragmento dueno(long hash) {
+            int i = Arrays.binarySearch(hashes, hash);
+            if (i < 0) i = -i - 1;
+            return duenos[i == hashes.length ? 0 : i];
+        }
+    }
+
+    // ? Estado publicado: anillo actual y, solo durante una migración, el anterior
+    private static final class Estado {
+        final Anillo actual;
+        final Anillo anterior;
+        final List<Fragmento> fragmentos;
+
+        Estado(Anillo actual, Anillo anterior, List<Fragmento> fragmentos) {
+            this.actual = actual;
+            this.anterior = anterior;
+            this.fragmentos = fragmentos;
+        }
+    }
+
+    private static final int FRANJAS = 1024;
+
+    private final int virtuales;
+    private final Object[] franjas = new Object[FRANJAS];
+    private final ReentrantReadWriteLock epoca = new ReentrantReadWriteLock();
+    private final Object cambioTopologia = new Object();
+    private final ExecutorService escaneos;
+    private volatile Estado estado;
+
+    public AlmacenPersonasFragmentado(int fragmentos, int virtuales) {
+        if (fragmentos <= 0 || virtuales <= 0) throw new IllegalArgumentException("Configuración de fragmentos inválida");
+        this.virtuales = virtuales;
+        for (int i = 0; i < FRANJAS; i++) franjas[i] = new Object();
+        List<Fragmento> iniciales = new ArrayList<>();
+        for (int i = 0; i < fragmentos; i++) iniciales.add(new Fragmento("fragmento-" + i));
+        this.estado = new Estado(new Anillo(iniciales, virtuales), null, List.copyOf(iniciales));
+        this.escaneos = Executors.newFixedThreadPool(Math.max(1, Math.min(fragmentos, Runtime.getRuntime().availableProcessors())), r -> {
+            Thread t = new Thread(r, "escaneo-fragmentos");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    // * Lectura sin candados
+    // ? Si el estado cambió durante un fallo, se repite: la clave pudo moverse con el estado viejo en la mano
+    public Persona get(String id) {
+        Clave clave = clave(id);
+        while (true) {
+            Estado e = estado;
+            Fragmento dueno = e.actual.dueno(clave.hash);
+            Persona p = dueno.datos.get(clave);
+            if (p == null && e.anterior != null) {
+                p = e.anterior.dueno(clave.hash).datos.get(clave);
+                if (p == null) p = dueno.datos.get(clave);   // ? Pudo moverse entre las dos lecturas
+            }
+            if (p != null || estado == e) return p;
+        }
+    }
+
+    public void put(Persona p) {
+        Clave clave = clave(p.getId());
+        epoca.readLock().lock();
+        try {
+            Estado e = estado;
+            synchronized (franja(clave)) {
+                Fragmento dueno = e.actual.dueno(clave.hash);
+                dueno.datos.put(clave, p);
+                if (e.anterior != null) {
+                    Fragmento viejo = e.anterior.dueno(clave.hash);
+                    if (viejo != dueno) viejo.datos.remove(clave);
+                }
+            }
+        } finally {
+            epoca.readLock().unlock();
+        }
+    }
+
+    public Persona remove(String id) {
+        Clave clave = clave(id);
+        epoca.readLock().lock();
+        try {
+            Estado e = estado;
+            synchronized (franja(clave)) {
+                Persona borrada = e.actual.dueno(clave.hash).datos.remove(clave);
+                if (e.anterior != null) {
+                    Persona vieja = e.anterior.dueno(clave.hash).datos.remove(clave);
+                    if (borrada == null) borrada = vieja;
+                }
+                return borrada;
+            }
+        } finally {
+            epoca.readLock().unlock();
+        }
+    }
+
+    // * Nombre del fragmento que guarda (o guardaría) un id
+    public String fragmentoDe(String id) {
+        return estado.actual.dueno(clave(id).hash).nombre;
+    }
+
+    public long size() {
+        long total = 0;
+        for (Fragmento f : estado.fragmentos) total += f.size();
+        return total;
+    }
+
+    // * Personas por fragmento (para ver el reparto)
+    public Map<String, Integer> reparto() {
+        Map<String, Integer> reparto = new LinkedHashMap<>();
+        for (Fragmento f : estado.fragmentos) reparto.put(f.nombre, f.size());
+        return reparto;
+    }
+
+    // * Escaneo en paralelo: un hilo por fragmento, resultados concatenados
+    public List<Persona> filtrar(Predicate<? super Persona> filtro) throws InterruptedException {
+        Estado e = estado;
+        List<Callable<List<Persona>>> tareas = new ArrayList<>();
+        for (Fragmento f : e.fragmentos) {
+            tareas.add(() -> {
+                List<Persona> encontradas = new ArrayList<>();
+                for (Map.Entry<Clave, Persona> entrada : f.datos.entrySet()) {
+                    if (esDueno(e, f, entrada.getKey()) && filtro.test(entrada.getValue())) {
+                        encontradas.add(entrada.getValue());
+                    }
+                }
+                return encontradas;
+            });
+        }
+        List<Persona> resultado = new ArrayList<>();
+        for (Future<List<Persona>> parcial : escaneos.invokeAll(tareas)) {
+            try {
+                resultado.addAll(parcial.get());
+            } catch (ExecutionException ex) {
+                throw new IllegalStateException("Fallo al escanear un fragmento", ex.getCause());
+            }
+        }
+        return resultado;
+    }
+
+    // * Añade un fragmento en caliente. Devuelve cuántas personas se han movido.
+    public long agregarFragmento(String nombre) {
+        synchronized (cambioTopologia) {
+            List<Fragmento> nuevos = new ArrayList<>(estado.fragmentos);
+            for (Fragmento f : nuevos) {
+                if (f.nombre.equals(nombre)) throw new IllegalArgumentException("Ya existe el fragmento " + nombre);
+            }
+            nuevos.add(new Fragmento(nombre));
+            return migrar(nuevos, nuevos);
+        }
+    }
+
+    // * Quita un fragmento en caliente: sus tramos pasan a los siguientes nodos del anillo
+    public long eliminarFragmento(String nombre) {
+        synchronized (cambioTopologia) {
+            List<Fragmento> todos = estado.fragmentos;
+            List<Fragmento> quedan = new ArrayList<>();
+            for (Fragmento f : todos) {
+                if (!f.nombre.equals(nombre)) quedan.add(f);
+            }
+            if (quedan.size() == todos.size()) throw new IllegalArgumentException("No existe el fragmento " + nombre);
+            if (quedan.isEmpty()) throw new IllegalStateException("No se puede quitar el último fragmento");
+            return migrar(quedan, todos);
+        }
+    }
+
+    public void cerrar() {
+        escaneos.shutdownNow();
+    }
+
+    // ! 'visibles' incluye al fragmento saliente mientras se vacía (lecturas y escaneos lo consultan)
+    private long migrar(List<Fragmento> nuevos, List<Fragmento> visibles) {
+        Anillo viejo = estado.actual;
+        Anillo nuevo = new Anillo(nuevos, virtuales);
+        publicar(new Estado(nuevo, viejo, List.copyOf(visibles)));
+
+        // ? Fronteras de ambos anillos: cada tramo (a, b] tiene un único dueño viejo y uno nuevo
+        TreeSet<Long> fronteras = new TreeSet<>();
+        for (long h : viejo.hashes) fronteras.add(h);
+        for (long h : nuevo.hashes) fronteras.add(h);
+        long movidas = 0;
+        long previa = fronteras.last();
+        boolean primera = true;
+        for (long frontera : fronteras) {
+            Fragmento origen = viejo.dueno(frontera);
+            Fragmento destino = nuevo.dueno(frontera);
+            if (origen != destino) {
+                Clave desde = new Clave(previa, null);
+                Clave hasta = new Clave(frontera, null);
+                if (primera) {
+                    // ? El primer tramo da la vuelta: (última frontera, MAX] ∪ [MIN, primera frontera]
+                    movidas += mover(origen, destino, desde, false, new Clave(Long.MAX_VALUE, null));
+                    movidas += mover(origen, destino, new Clave(Long.MIN_VALUE, ""), true, hasta);
+                } else {
+                    movidas += mover(origen, destino, desde, false, hasta);
+                }
+            }
+            previa = frontera;
+            primera = false;
+        }
+        publicar(new Estado(nuevo, null, List.copyOf(nuevos)));
+        return movidas;
+    }
+
+    // ? Mueve de un fragmento a otro las claves del tramo [desde|(desde, hasta], clave a clave
+    private long mover(Fragmento origen, Fragmento destino, Clave desde, boolean incluirDesde, Clave hasta) {
+        NavigableMap<Clave, Persona> tramo = origen.datos.subMap(desde, incluirDesde, hasta, true);
+        long movidas = 0;
+        for (Clave clave : tramo.keySet()) {
+            synchronized (franja(clave)) {
+                Persona p = origen.datos.get(clave);
+                if (p == null) continue;                    // ? Borrada mientras tanto
+                destino.datos.putIfAbsent(clave, p);        // ? Una escritura nueva gana
+                origen.datos.remove(clave);
+                movidas++;
+            }
+        }
+        return movidas;
+    }
+
+    // ! El candado de época espera a las escrituras que aún usan el estado anterior
+    private void publicar(Estado nuevo) {
+        epoca.writeLock().lock();
+        try {
+            estado = nuevo;
+        } finally {
+            epoca.writeLock().unlock();
+        }
+    }
+
+    // ? En mitad de una migración una clave puede estar copiada en dos fragmentos: cuenta una vez
+    private static boolean esDueno(Estado e, Fragmento f, Clave clave) {
+        Fragmento dueno = e.actual.dueno(clave.hash);
+        if (dueno == f) return true;
+        return e.anterior != null && e.anterior.dueno(clave.hash) == f && !dueno.datos.containsKey(clave);
+    }
+
+    private Object franja(Clave clave) {
+        return franjas[(int) (clave.hash >>> 54) & (FRANJAS - 1)];
+    }
+
+    private static Clave clave(String id) {
+        return new Clave(hash(id), id);
+    }
+
+    // ? FNV-1a de 64 bits + mezcla final de MurmurHash3 (buen reparto en todo el anillo)
+    static long hash(String texto) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < texto.length(); i++) {
+            h ^= texto.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
+
+// * =============================================================
+// * CONSULTAS SOBRE PERSONAS: DSL + PLANIFICADOR + FILTROS COMPILADOS
+// * =============================================================
+// ? Índice por edad (TreeMap edad → personas); sigue los cambios de setEdad
+// ! Guarda la edad con la que indexó a cada persona y la recoloca según su edad actual:
+// ! los avisos de dos setEdad concurrentes pueden llegar en cualquier orden.
+class IndiceEdadesPersona implements ObservadorPersona {
+    private final TreeMap<Integer, Set<Persona>> porEdad = new TreeMap<>();
+    private final Map<Persona, Integer> edadIndexada = new HashMap<>();
+
+    public IndiceEdadesPersona() {
+        Persona.registrarObservador(this);
+    }
+
+    // * Deja de seguir los cambios de edad
+    public void cerrar() {
+        Persona.eliminarObservador(this);
+    }
+
+    public synchronized void agregar(Persona p) {
+        if (!edadIndexada.containsKey(p)) colocar(p, p.getEdad());
+    }
+
+    public synchronized boolean eliminar(Persona p) {
+        Integer edad = edadIndexada.remove(p);
+        if (edad == null) return false;
+        sacar(p, edad);
+        return true;
+    }
+
+    public synchronized int contar(int desde, int hasta) {
+        if (desde > hasta) return 0;
+        int n = 0;
+        for (Set<Persona> grupo : porEdad.subMap(desde, true, hasta, true).values()) n += grupo.size();
+        return n;
+    }
+
+    public synchronized List<Persona> personas(int desde, int hasta) {
+        List<Persona> resultado = new ArrayList<>();
+        if (desde > hasta) return resultado;
+        for (Set<Persona> grupo : porEdad.subMap(desde, true, hasta, true).values()) resultado.addAll(grupo);
+        return resultado;
+    }
+
+    public synchronized int size() { return edadIndexada.size(); }
+
+    @Override
+    public synchronized void edadCambiada(Persona persona, int anterior) {
+        Integer indexada = edadIndexada.get(persona);
+        if (indexada == null) return;  // ? No está indexada
+        int actual = persona.getEdad();
+        if (indexada == actual) return;  // ? Aviso atrasado: ya está en su sitio
+        sacar(persona, indexada);
+        colocar(persona, actual);
+    }
+
+    private void colocar(Persona p, int edad) {
+        porEdad.computeIfAbsent(edad, e -> new HashSet<>()).add(p);
+        edadIndexada.put(p, edad);
+    }
+
+    private void sacar(Persona p, int edad) {
+        Set<Persona> grupo = porEdad.get(edad);
+        grupo.remove(p);
+        if (grupo.isEmpty()) porEdad.remove(edad);
+    }
+}
+
+// ? Colección de personas con sus índices (rol, edad y nombre) mantenidos a la vez.
+// ? Las consultas se crean con consulta() y se planifican contra estos índices.
+class CatalogoPersonas {
+    final List<Persona> personas = new ArrayList<>();   // ? Protegida por el monitor del catálogo
+    final PlantillaPorRol porRol = new PlantillaPorRol();
+    final IndiceEdadesPersona porEdad = new IndiceEdadesPersona();
+    final IndiceNombres porNombre = new IndiceNombres();
+
+    public synchronized void agregar(Persona p) {
+        personas.add(p);
+        porRol.agregar(p);
+        porEdad.agregar(p);
+        porNombre.agregar(p);
+    }
+
+    public synchronized int size() { return personas.size(); }
+
+    public ConsultaPersonas consulta() { return new ConsultaPersonas(this); }
+
+    // * Deja de seguir los cambios (los índices quedan congelados)
+    public void cerrar() {
+        porRol.cerrar();
+        porEdad.cerrar();
+        porNombre.cerrar();
+    }
+}
+
+// ? Filtro compilado de una consulta
+interface FiltroPersona {
+    boolean test(Persona persona);
+}
+
+// ? Convierte un MethodHandle (Persona)boolean en una clase oculta cuyo test() lo invoca
+// ? desde un campo static final. Para el JIT ese campo es una constante: inlinea el árbol
+// ? entero de getters y comparadores igual que si el filtro estuviera escrito a mano.
+// ? (Invocar un MethodHandle guardado en un campo normal no se puede inlinear.)
+// ! El bytecode se escribe a mano (sin ASM): tres métodos sin saltos, sin StackMapTable.
+final class CompiladorFiltros {
+    private CompiladorFiltros() {}
+
+    static FiltroPersona compilar(MethodHandle filtro) {
+        try {
+            MethodHandles.Lookup clase = MethodHandles.lookup().defineHiddenClassWithClassData(
+                    PLANTILLA, filtro.asType(MethodType.methodType(boolean.class, Persona.class)), true);
+            return (FiltroPersona) clase.findConstructor(clase.lookupClass(), MethodType.methodType(void.class)).invoke();
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException("No se pudo compilar el filtro", t);
+        }
+    }
+
+    // * final class FiltroCompilado implements FiltroPersona {
+    // *     private static final MethodHandle MH = MethodHandles.classData(lookup(), "_", MethodHandle.class);
+    // *     public boolean test(Persona p) { return (boolean) MH.invokeExact(p); }
+    // * }
+    private static final byte[] PLANTILLA = generar();
+
+    private static byte[] generar() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(61);                                              // Java 17
+            String[] utf8 = {
+                "FiltroCompilado", "java/lang/Object", "FiltroPersona", "MH",          // 1-4
+                "Ljava/lang/invoke/MethodHandle;", "<init>", "()V", "Code",          // 5-8
+                "test", "(LPersona;)Z", "java/lang/invoke/MethodHandle", "invokeExact", // 9-12
+                "<clinit>", "java/lang/invoke/MethodHandles", "lookup",              // 13-15
+                "()Ljava/lang/invoke/MethodHandles$Lookup;", "classData",             // 16-17
+                "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/Class;)Ljava/lang/Object;", "_" // 18-19
+            };
+            out.writeShort(utf8.length + 16 + 1);
+            for (String s : utf8) {
+                out.writeByte(1);
+                out.writeUTF(s);
+            }
+            // ? 20-25 clases y cadenas, 26-35 nombres-tipo y referencias
+            clase(out, 1);              // 20 FiltroCompilado
+            clase(out, 2);              // 21 Object
+            clase(out, 3);              // 22 FiltroPersona
+            clase(out, 11);             // 23 MethodHandle
+            clase(out, 14);             // 24 MethodHandles
+            out.writeByte(8);           // 25 String "_"
+            out.writeShort(19);
+            nombreTipo(out, 6, 7);      // 26 <init>:()V
+            referencia(out, 10, 21, 26);  // 27 Object.<init>
+            nombreTipo(out, 4, 5);      // 28 MH:MethodHandle
+            referencia(out, 9, 20, 28);   // 29 campo MH
+            nombreTipo(out, 12, 10);    // 30 invokeExact:(Persona)Z
+            referencia(out, 10, 23, 30);  // 31 MethodHandle.invokeExact
+            nombreTipo(out, 15, 16);    // 32 lookup
+            referencia(out, 10, 24, 32);  // 33 MethodHandles.lookup
+            nombreTipo(out, 17, 18);    // 34 classData
+            referencia(out, 10, 24, 34);  // 35 MethodHandles.classData
+
+            out.writeShort(0x0030);     // final super
+            out.writeShort(20);
+            out.writeShort(21);
+            out.writeShort(1);
+            out.writeShort(22);
+
+            out.writeShort(1);          // campo MH
+            out.writeShort(0x001A);
+            out.writeShort(4);
+            out.writeShort(5);
+            out.writeShort(0);
+
+            out.writeShort(3);
+            metodo(out, 0x0001, 6, 7, 1, 1, new byte[] {
+                0x2A, (byte) 0xB7, 0, 27, (byte) 0xB1 });                          // aload_0; invokespecial; return
+            metodo(out, 0x0001, 9, 10, 2, 2, new byte[] {
+                (byte) 0xB2, 0, 29, 0x2B, (byte) 0xB6, 0, 31, (byte) 0xAC });      // getstatic; aload_1; invokevirtual; ireturn
+            metodo(out, 0x0008, 13, 7, 3, 0, new byte[] {
+                (byte) 0xB8, 0, 33, 0x12, 25, 0x12, 23, (byte) 0xB8, 0, 35,          // lookup(); ldc "_"; ldc MethodHandle; classData
+                (byte) 0xC0, 0, 23, (byte) 0xB3, 0, 29, (byte) 0xB1 });             // checkcast; putstatic; return
+            out.writeShort(0);          // sin atributos de clase
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void clase(DataOutputStream out, int nombre) throws IOException {
+        out.writeByte(7);
+        out.writeShort(nombre);
+    }
+
+    private static void nombreTipo(DataOutputStream out, int nombre, int tipo) throws IOException {
+        out.writeByte(12);
+        out.writeShort(nombre);
+        out.writeShort(tipo);
+    }
+
+    private static void referencia(DataOutputStream out, int etiqueta, int clase, int nombreTipo) throws IOException {
+        out.writeByte(etiqueta);
+        out.writeShort(clase);
+        out.writeShort(nombreTipo);
+    }
+
+    private static void metodo(DataOutputStream out, int acceso, int nombre, int descriptor, int pila, int locales, byte[] codigo) throws IOException {
+        out.writeShort(acceso);
+        out.writeShort(nombre);
+        out.writeShort(descriptor);
+        out.writeShort(1);
+        out.writeShort(8);          // "Code"
+        out.writeInt(12 + codigo.length);
+        out.writeShort(pila);
+        out.writeShort(locales);
+        out.writeInt(codigo.length);
+        out.write(codigo);
+        out.writeShort(0);          // sin tabla de excepciones
+        out.writeShort(0);          // sin atributos
+    }
+}
+
+// ? DSL de consultas: donde(EDAD).entre(18, 25).y(ROL).igual(Rol.ALUMNO).y(NOMBRE).contiene("Ana")
+// ? Planificador: estima cuántas filas devuelve cada condición con índice y arranca por la
+// ? más selectiva (o recorre el catálogo si ninguna ayuda). El resto de condiciones se
+// ? compila en un único MethodHandle (Persona)boolean encadenado con guardWithTest y se fija
+// ? como constante en una clase oculta (CompiladorFiltros): el JIT lo inlinea entero y el
+// ? bucle final cuesta lo mismo que uno escrito a mano.
+// ! Solo conjunciones (AND). La condición de nombre usa el índice como superconjunto y
+// ! se vuelve a comprobar siempre en el filtro.
+class ConsultaPersonas {
+    // ? Campos consultables: nombre + getter como MethodHandle. Una clase por tipo para que
+    // ? donde(...) ofrezca solo los operadores que tienen sentido (entre, en, contiene...).
+    abstract static class Campo {
+        final String nombre;
+        final MethodHandle getter;
+
+        private Campo(String nombre, String metodo, Class<?> tipo) {
+            this.nombre = nombre;
+            this.getter = buscarVirtual(Persona.class, metodo, MethodType.methodType(tipo));
+        }
+    }
+
+    static final class CampoEntero extends Campo {
+        private CampoEntero(String nombre, String metodo) { super(nombre, metodo, int.class); }
+    }
+
+    static final class CampoRol extends Campo {
+        private CampoRol(String nombre, String metodo) { super(nombre, metodo, Rol.class); }
+    }
+
+    static final class CampoTexto extends Campo {
+        private CampoTexto(String nombre, String metodo) { super(nombre, metodo, String.class); }
+    }
+
+    public static final CampoEntero EDAD = new CampoEntero("edad", "getEdad");
+    public static final CampoRol ROL = new CampoRol("rol", "getRol");
+    public static final CampoTexto NOMBRE = new CampoTexto("nombre", "getNombre");
+    public static final CampoTexto ID = new CampoTexto("id", "getId");
+
+    // ? Condición ya construida: su filtro compilado, su coste relativo y cómo usar un índice
+    private static final class Condicion {
+        final String descripcion;
+        final MethodHandle filtro;
+        final int coste;                         // ? Comparaciones baratas primero en el AND
+        final ToIntFunction<CatalogoPersonas> estimar;        // -1 = sin índice
+        final Function<CatalogoPersonas, List<Persona>> candidatos;
+        final boolean exacta;                    // ? El índice ya garantiza la condición
+
+        Condicion(String descripcion, MethodHandle filtro, int coste, ToIntFunction<CatalogoPersonas> estimar,
+                  Function<CatalogoPersonas, List<Persona>> candidatos, boolean exacta) {
+            this.descripcion = descripcion;
+            this.filtro = filtro;
+            this.coste = coste;
+            this.estimar = estimar;
+            this.candidatos = candidatos;
+            this.exacta = exacta;
+        }
+    }
+
+    // * Pasos del DSL según el tipo del campo
+    public final class PasoEntero {
+        private final CampoEntero campo;
+
+        private PasoEntero(CampoEntero campo) { this.campo = campo; }
+
+        public ConsultaPersonas entre(int desde, int hasta) {
+            MethodHandle filtro = MethodHandles.filterArguments(
+                    MethodHandles.insertArguments(ENTRE, 0, desde, hasta), 0, campo.getter);
+            boolean conIndice = campo == EDAD;
+            return agregar(new Condicion(campo.nombre + " entre " + desde + " y " + hasta, filtro, 0,
+                    conIndice ? c -> c.porEdad.contar(desde, hasta) : c -> -1,
+                    conIndice ? c -> c.porEdad.personas(desde, hasta) : null, conIndice));
+        }
+
+        public ConsultaPersonas igual(int valor) { return entre(valor, valor); }
+        public ConsultaPersonas minimo(int valor) { return entre(valor, Integer.MAX_VALUE); }
+        public ConsultaPersonas maximo(int valor) { return entre(Integer.MIN_VALUE, valor); }
+    }
+
+    public final class PasoRol {
+        private PasoRol() {}
+
+        public ConsultaPersonas igual(Rol rol) { return en(rol); }
+
+        public ConsultaPersonas en(Rol... roles) {
+            if (roles.length == 0) throw new IllegalArgumentException("Indica al menos un rol");
+            long mascara = 0;
+            for (Rol r : roles) mascara |= 1L << r.ordinal();
+            final long conjunto = mascara;
+            MethodHandle filtro = MethodHandles.filterArguments(
+                    MethodHandles.insertArguments(EN_CONJUNTO, 0, conjunto), 0, ROL.getter);
+            List<Rol> lista = List.of(roles);
+            return agregar(new Condicion("rol en " + lista, filtro, 0,
+                    c -> {
+                        int n = 0;
+                        for (Rol r : lista) n += c.porRol.contar(r);
+                        return n;
+                    },
+                    c -> {
+                        List<Persona> miembros = new ArrayList<>();
+                        for (Rol r : EnumSet.copyOf(lista)) miembros.addAll(c.porRol.miembros(r));
+                        return miembros;
+                    }, true));
+        }
+    }
+
+    public final class PasoTexto {
+        private final CampoTexto campo;
+
+        private PasoTexto(CampoTexto campo) { this.campo = campo; }
+
+        public ConsultaPersonas igual(String texto) {
+            return texto(campo.nombre + " = '" + texto + "'", IGUAL_TEXTO, texto);
+        }
+
+        public ConsultaPersonas empiezaPor(String prefijo) {
+            return texto(campo.nombre + " empieza por '" + prefijo + "'", EMPIEZA_POR, prefijo);
+        }
+
+        public ConsultaPersonas contiene(String fragmento) {
+            return texto(campo.nombre + " contiene '" + fragmento + "'", CONTIENE, fragmento);
+        }
+
+        // ? Las tres se pueden acelerar con el índice de trigramas (todas implican "contiene")
+        private ConsultaPersonas texto(String descripcion, MethodHandle comparador, String valor) {
+            MethodHandle filtro = MethodHandles.filterArguments(
+                    MethodHandles.insertArguments(comparador, 0, valor), 0, campo.getter);
+            boolean conIndice = campo == NOMBRE;
+            return agregar(new Condicion(descripcion, filtro, 1,
+                    conIndice ? c -> c.porNombre.estimarContiene(valor) : c -> -1,
+                    conIndice ? c -> c.porNombre.candidatosQueContienen(valor) : null, false));
+        }
+    }
+
+    private final CatalogoPersonas catalogo;
+    private final List<Condicion> condiciones = new ArrayList<>();
+    // ? Un filtro compilado por conjunto de condiciones residuales: repetir la consulta
+    // ? reutiliza la misma clase ya calentada por el JIT en vez de generar otra
+    private final Map<List<Condicion>, FiltroPersona> compilados = new HashMap<>();
+    private boolean usarIndices = true;
+
+    ConsultaPersonas(CatalogoPersonas catalogo) { this.catalogo = catalogo; }
+
+    public PasoEntero donde(CampoEntero campo) { return new PasoEntero(campo); }
+    public PasoRol donde(CampoRol campo) { return new PasoRol(); }
+    public PasoTexto donde(CampoTexto campo) { return new PasoTexto(campo); }
+
+    // * Alias para encadenar: ...entre(18, 25).y(ROL)...
+    public PasoEntero y(CampoEntero campo) { return donde(campo); }
+    public PasoRol y(CampoRol campo) { return donde(campo); }
+    public PasoTexto y(CampoTexto campo) { return donde(campo); }
+
+    // * Fuerza el recorrido completo (para comparar con el plan con índices)
+    public ConsultaPersonas sinIndices() {
+        usarIndices = false;
+        return this;
+    }
+
+    // * Descripción del plan elegido
+    public String explicar() {
+        return planificar().toString();
+    }
+
+    public List<Persona> ejecutar() {
+        Plan plan = planificar();
+        FiltroPersona filtro = compilados.computeIfAbsent(plan.residuales, ConsultaPersonas::compilar);
+        if (plan.candidatos != null) return filtrar(plan.candidatos, filtro);
+        synchronized (catalogo) {
+            return filtrar(catalogo.personas, filtro);
+        }
+    }
+
+    private static List<Persona> filtrar(List<Persona> candidatos, FiltroPersona filtro) {
+        List<Persona> resultado = new ArrayList<>();
+        for (int i = 0, n = candidatos.size(); i < n; i++) {
+            Persona p = candidatos.get(i);
+            if (filtro.test(p)) resultado.add(p);
+        }
+        return resultado;
+    }
+
+    // ? Plan: de dónde salen los candidatos y qué filtro compilado se les aplica
+    private static final class Plan {
+        final String origen;
+        final List<Persona> candidatos;   // null = recorrer el catálogo
+        final List<Condicion> residuales;
+
+        Plan(String origen, List<Persona> candidatos, List<Condicion> residuales) {
+            this.origen = origen;
+            this.candidatos = candidatos;
+            this.residuales = residuales;
+        }
+
+        @Override
+        public String toString() {
+            List<String> descripciones = new ArrayList<>();
+            for (Condicion c : residuales) descripciones.add(c.descripcion);
+            return origen + " → filtro compilado " + descripciones;
+        }
+    }
+
+    private Plan planificar() {
+        Condicion mejor = null;
+        int mejorEstimacion = catalogo.size();
+        if (usarIndices) {
+            for (Condicion c : condiciones) {
+                int estimacion = c.estimar.applyAsInt(catalogo);
+                if (estimacion >= 0 && estimacion < mejorEstimacion) {
+                    mejor = c;
+                    mejorEstimacion = estimacion;
+                }
+            }
+        }
+        List<Persona> candidatos = mejor == null ? null : mejor.candidatos.apply(catalogo);
+        if (candidatos == null) mejor = null;   // ? El índice no pudo responder (p. ej. fragmento corto)
+        List<Condicion> residuales = new ArrayList<>();
+        for (Condicion c : condiciones) {
+            if (c != mejor || !c.exacta) residuales.add(c);
+        }
+        residuales.sort(Comparator.comparingInt(c -> c.coste));
+        String origen = mejor == null
+                ? "RECORRIDO del catálogo (" + catalogo.size() + " personas)"
+                : "ÍNDICE [" + mejor.descripcion + "] (" + candidatos.size() + " candidatos)";
+        return new Plan(origen, candidatos, residuales);
+    }
+
+    // * Encadena las condiciones (la más barata primero) y fija el resultado en una clase oculta
+    private static FiltroPersona compilar(List<Condicion> residuales) {
+        MethodHandle filtro = VERDADERO;
+        for (int i = residuales.size() - 1; i >= 0; i--) {
+            filtro = filtro == VERDADERO ? residuales.get(i).filtro
+                    : MethodHandles.guardWithTest(residuales.get(i).filtro, filtro, FALSO);
+        }
+        return CompiladorFiltros.compilar(filtro);
+    }
+
+    private ConsultaPersonas agregar(Condicion condicion) {
+        condiciones.add(condicion);
+        return this;
+    }
+
+    // * Comparadores elementales (el valor de la condición va primero para fijarlo con insertArguments)
+    static boolean entre(int desde, int hasta, int valor) { return valor >= desde && valor <= hasta; }
+    static boolean enConjunto(long mascara, Rol rol) { return rol != null && (mascara & (1L << rol.ordinal())) != 0; }
+    static boolean igualTexto(String esperado, String valor) { return esperado.equals(valor); }
+    static boolean empiezaPor(String prefijo, String valor) { return valor != null && valor.startsWith(prefijo); }
+    static boolean contiene(String fragmento, String valor) { return valor != null && valor.contains(fragmento); }
+
+    private static final MethodHandle ENTRE = buscarEstatico("entre", int.class, int.class, int.class);
+    private static final MethodHandle EN_CONJUNTO = buscarEstatico("enConjunto", long.class, Rol.class);
+    private static final MethodHandle IGUAL_TEXTO = buscarEstatico("igualTexto", String.class, String.class);
+    private static final MethodHandle EMPIEZA_POR = buscarEstatico("empiezaPor", String.class, String.class);
+    private static final MethodHandle CONTIENE = buscarEstatico("contiene", String.class, String.class);
+    private static final MethodHandle VERDADERO =
+            MethodHandles.dropArguments(MethodHandles.constant(boolean.class, true), 0, Persona.class);
+    private static final MethodHandle FALSO =
+            MethodHandles.dropArguments(MethodHandles.constant(boolean.class, false), 0, Persona.class);
+
+    private static MethodHandle buscarEstatico(String nombre, Class<?>... parametros) {
+        try {
+            return MethodHandles.lookup().findStatic(ConsultaPersonas.class, nombre, MethodType.methodType(boolean.class, parametros));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static MethodHandle buscarVirtual(Class<?> clase, String nombre, MethodType tipo) {
+        try {
+            return MethodHandles.lookup().findVirtual(clase, nombre, tipo);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
+
+// * =============================================================
+// * SIMULACIÓN DE ANIMALES POR TICKS (MULTINÚCLEO)
+// * =============================================================
+// ? Motor por ticks: en cada tick todos los animales actúan una vez.
+// ? - La población se parte en trozos de tamaño fijo. Cada tick es una tarea de
+// ?   ForkJoinPool que divide el rango de trozos por la mitad hasta quedarse con uno;
+// ?   los hilos sin trabajo roban mitades pendientes a los demás (work stealing), así
+// ?   un trozo lento no deja núcleos parados.
+// ? - pool.invoke() no vuelve hasta que acaban todos los trozos: es la barrera entre
+// ?   ticks (ningún animal empieza el tick N+1 antes de que el resto termine el N).
+// ? - Con periodo > 0 el tick N se programa en inicio + N·periodo (ritmo constante, sin
+// ?   deriva). Si un tick no cabe en su periodo el siguiente sale sin esperar y se cuenta
+// ?   como atrasado. Sin periodo no hay hora prevista: no se mide retraso.
+// ! La acción corre en paralelo: el estado compartido que toque debe ser thread-safe.
+class SimulacionAnimales implements AutoCloseable {
+    @FunctionalInterface
+    interface AccionTick {
+        void actuar(Animal animal, long tick);
+    }
+
+    // ? Duración de cada tick y retraso de su inicio respecto a la hora prevista
+    static final class Informe {
+        final long ticks;
+        final long animales;
+        final long atrasados;
+        final double segundos;
+        final HistogramaLatencias duracion;
+        final HistogramaLatencias retraso;
+
+        Informe(long ticks, long animales, long atrasados, double segundos, HistogramaLatencias duracion, HistogramaLatencias retraso) {
+            this.ticks = ticks;
+            this.animales = animales;
+            this.atrasados = atrasados;
+            this.segundos = segundos;
+            this.duracion = duracion;
+            this.retraso = retraso;
+        }
+
+        @Override
+        public String toString() {
+            String texto = String.format(Locale.ROOT, "%d ticks × %d animales, %.1f ticks/s | tick p50=%.2fms p99=%.2fms max=%.2fms",
+                    ticks, animales, ticks / segundos, ms(duracion.percentil(50)), ms(duracion.percentil(99)), ms(duracion.getMaximo()));
+            if (retraso.getTotal() == 0) return texto;  // ? Ejecución sin periodo
+            return texto + String.format(Locale.ROOT, " | retraso p99=%.2fms | atrasados=%d", ms(retraso.percentil(99)), atrasados);
+        }
+
+        private static double ms(long nanos) { return nanos / 1e6; }
+    }
+
+    private final Animal[] animales;
+    private final int tamanoTrozo;
+    private final int numeroTrozos;
+    private final AccionTick accion;
+    private final ForkJoinPool pool;
+    private long tick;
+
+    SimulacionAnimales(List<? extends Animal> animales, int tamanoTrozo, int paralelismo, AccionTick accion) {
+        if (tamanoTrozo <= 0 || paralelismo <= 0) throw new IllegalArgumentException("Parámetros de simulación inválidos");
+        this.animales = animales.toArray(new Animal[0]);
+        this.tamanoTrozo = tamanoTrozo;
+        this.numeroTrozos = (this.animales.length + tamanoTrozo - 1) / tamanoTrozo;
+        this.accion = accion;
+        this.pool = new ForkJoinPool(paralelismo);
+    }
+
+    public long getTick() { return tick; }
+
+    /**
+     * Avanza 'ticks' ticks. periodoNanos = 0: sin pausa entre ticks (máximo ritmo).
+     */
+    public Informe ejecutar(int ticks, long periodoNanos) {
+        HistogramaLatencias duracion = new HistogramaLatencias();
+        HistogramaLatencias retraso = new HistogramaLatencias();
+        long atrasados = 0;
+        long inicio = System.nanoTime();
+        for (int k = 0; k < ticks; k++) {
+            long previsto = inicio + k * periodoNanos;
+            long espera;
+            while ((espera = previsto - System.nanoTime()) > 0) LockSupport.parkNanos(espera);
+            long t0 = System.nanoTime();
+            if (numeroTrozos > 0) pool.invoke(new Trozos(0, numeroTrozos, tick));
+            long fin = System.nanoTime();
+            duracion.registrar(fin - t0);
+            if (periodoNanos > 0) {
+                retraso.registrar(t0 - previsto);
+                if (fin - previsto > periodoNanos) atrasados++;
+            }
+            tick++;
+        }
+        return new Informe(ticks, animales.length, atrasados, (System.nanoTime() - inicio) / 1e9, duracion, retraso);
+    }
+
+    @Override
+    public void close() {
+        pool.shutdown();
+    }
+
+    // ? Rango [desde, hasta) de trozos; se parte hasta que queda uno solo
+    private final class Trozos extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int desde;
+        private final int hasta;
+        private final long tickActual;
+
+        Trozos(int desde, int hasta, long tickActual) {
+            this.desde = desde;
+            this.hasta = hasta;
+            this.tickActual = tickActual;
+        }
+
+        @Override
+        protected void compute() {
+            if (hasta - desde == 1) {
+                int fin = Math.min(animales.length, (desde + 1) * tamanoTrozo);
+                for (int i = desde * tamanoTrozo; i < fin; i++) accion.actuar(animales[i], tickActual);
+                return;
+            }
+            int medio = (desde + hasta) >>> 1;
+            Trozos derecha = new Trozos(medio, hasta, tickActual);
+            derecha.fork();
+            new Trozos(desde, medio, tickActual).compute();
+            derecha.join();
+        }
+    }
+}
+
+// * =============================================================
+// * CLASE PRINCIPAL (MAIN): DEMOSTRACIÓN INTEGRAL
+// * =============================================================
+public class UT5_ClasesObjetosHerenciaAvanzado {
+    public static void main(String[] args) {
+        // ? Modo seguidor (segunda JVM): java UT5_ClasesObjetosHerenciaAvanzado --seguidor <fichero>
+        if (args.length == 2 && args[0].equals("--seguidor")) {
+            ejecutarSeguidor(Path.of(args[1]));
+            return;
+        }
+        // ? Medición del codec JSON con un array grande: java UT5_ClasesObjetosHerenciaAvanzado --rendimiento-json
+        if (args.length == 1 && args[0].equals("--rendimiento-json")) {
+            medirRendimientoJson(200_000);
+            return;
+        }
+        // ? Bytes reservados por persona, Builder frente a lote: java UT5_ClasesObjetosHerenciaAvanzado --rendimiento-lote
+        if (args.length == 1 && args[0].equals("--rendimiento-lote")) {
+            medirAsignacionesLote(200_000);
+            return;
+        }
+        // ? Simulación con un millón de animales: java UT5_ClasesObjetosHerenciaAvanzado --rendimiento-animales
+        if (args.length == 1 && args[0].equals("--rendimiento-animales")) {
+            medirSimulacionAnimales(1_000_000);
+            return;
+        }
+
+    // 🧭 Guía de la demo:
+    // 1) Creación de objetos (Builder y constructor)
+    // 2) Herencia + polimorfismo (Personas y Animales)
+    // 3) Interfaces (capacidades Volador/Nadador y Pagable)
+    // 4) Composición (Curso) y utilidades (Estadisticas)
+    // 5) Genéricos (Box<T>) y sobrecarga (Printer)
+
+        // ✅ Builder + constructor
+        Persona personaBuilt = new Persona.Builder()
+                .nombre("Laura")
+                .edad(28)
+                .rol(Rol.ADMIN)
+                .build();
+
+        Estudiante est = new Estudiante("Carlos", 22, "Java Básico", 120.0);
+        Empleado prof = new Empleado("María", 35, 1500.0, 350.0);
+
+        personaBuilt.saludar();
+        est.saludar();
+        est.estudiar();
+        prof.saludar();
+        prof.impartir();
+        System.out.println("💰 Pago estudiante: " + est.calcularPago());
+        System.out.println("💰 Pago empleado: " + prof.calcularPago());
+
+        // 🐾 Polimorfismo con animales
+        List<Animal> zoologico = List.of(
+                new Perro("Rex"),
+                new Gato("Misu"),
+                new Ave("Golondrina"),
+                new Pez("Nemo")
+        );
+        System.out.println("\n🔊 Sonidos en el zoológico:");
+        for (Animal a : zoologico) a.hacerSonido();
+
+        // Capacidades específicas por interfaces
+        System.out.println("\n🌊 / 🕊️ Acciones especiales:");
+        for (Animal a : zoologico) {
+            if (a instanceof Volador v) v.volar();
+            if (a instanceof Nadador n) n.nadar();
+        }
+
+        // 🎓 Composición: Curso con participantes
+        Curso cursoJava = new Curso("Java Avanzado");
+        cursoJava.agregarParticipante(personaBuilt);
+        cursoJava.agregarParticipante(est);
+        cursoJava.agregarParticipante(prof);
+        cursoJava.listarParticipantes();
+        System.out.println("Ingresos totales curso: " + cursoJava.ingresosTotales());
+
+        // 📊 Estadísticas y genéricos
+        List<Persona> personas = List.of(personaBuilt, est, prof);
+        System.out.println("Promedio edad: " + Estadisticas.promedioEdad(personas));
+
+        Box<String> boxTexto = new Box<>("Mensaje en caja");
+        Box<Integer> boxNumero = new Box<>(42);
+        System.out.println(boxTexto);
+        System.out.println(boxNumero);
+
+        // 🧪 Overloading
+        Printer.imprimir("Hola");
+        Printer.imprimir(123);
+        Printer.imprimir(est);
+
+        // ! Manejo de excepción de validación (demostración rápida)
+        try {
+            est.setEdad(-5); // Disparará excepción
+        } catch (IllegalArgumentException ex) {
+            System.out.println("⚠️ Error capturado: " + ex.getMessage());
+        }
+
+        // 🔍 Búsqueda aproximada por nombre (acentos y mayúsculas no importan)
+        IndiceNombres indiceNombres = new IndiceNombres();
+        for (Persona p : personas) indiceNombres.agregar(p);
+        System.out.println("\n🔍 'maria' → " + indiceNombres.buscar("maria", 3));
+        est.setNombre("Carolina");  // El índice se actualiza solo
+        System.out.println("🔍 'karolina' → " + indiceNombres.buscar("karolina", 3));
+        indiceNombres.cerrar();
+
+        // 👥 Plantilla por rol: conteos O(1) que siguen a setRol
+        PlantillaPorRol plantilla = new PlantillaPorRol();
+        for (Persona p : personas) plantilla.agregar(p);
+        est.setRol(Rol.ADMIN);
+        for (Rol r : Rol.values()) System.out.println("👥 " + r + ": " + plantilla.contar(r));
+        plantilla.cerrar();
+
+        // 🗄️ Caché de lectura delante de un almacén lento (fichero temporal)
+        try {
+            Path almacen = Files.createTempFile("personas", ".txt");
+            CargadorPersonasFichero.guardar(almacen, personas);
+            CachePersonas cache = new CachePersonas(new CargadorPersonasFichero(almacen), 100);
+            for (int i = 0; i < 5; i++) cache.get(personaBuilt.getId());
+            cache.get(prof.getId());
+            System.out.println("🗄️ " + cache);
+            Files.delete(almacen);
+        } catch (IOException e) {
+            System.out.println("⚠️ No se pudo usar el fichero temporal: " + e.getMessage());
+        }
+
+        // 🏭 Construcción en lote: arrays paralelos en lugar de un Builder por persona
+        // ? Bytes reservados por persona frente al Builder: --rendimiento-lote
+        Persona[] equipo = Persona.crearEnLote(new String[] {"Ana", "Luis", "Eva"}, new int[] {31, 45, 27},
+                new Rol[] {Rol.PROFESOR, Rol.ADMIN, Rol.ALUMNO});
+        System.out.println("🏭 Creadas en lote: " + Arrays.toString(equipo));
+
+        // 🔥 Arnés de estrés: 4 hilos, 200 ms de calentamiento y 500 ms de medición a 20k ops/s por hilo
+        try {
+            List<ArnesEstres.Resultado> resultados = ArnesEstres.cargaDominio("demo", 4, 200, 500, 20_000).ejecutar();
+            System.out.println("\n🔥 Resultados de la prueba de carga:");
+            for (ArnesEstres.Resultado r : resultados) System.out.println("  " + r);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        // 🔤 JSON sin reflexión: escribir y leer la jerarquía Persona en streaming
+        try {
+            CodecPersona codec = new CodecPersona();
+            ByteArrayOutputStream json = new ByteArrayOutputStream();
+            EscritorJson escritor = new EscritorJson(Channels.newChannel(json), 8192);
+            codec.escribirTodos(List.of(personaBuilt, est, prof), escritor);
+            System.out.println("\n🔤 JSON: " + json.toString(StandardCharsets.UTF_8));
+            List<Persona> leidas = new ArrayList<>();
+            codec.leerTodos(new LectorJson(Channels.newChannel(new ByteArrayInputStream(json.toByteArray())), 8192), leidas::add);
+            System.out.println("🔤 Leídas: " + leidas);
+            // ? Rendimiento con 200.000 personas: java UT5_ClasesObjetosHerenciaAvanzado --rendimiento-json
+        } catch (IOException e) {
+            System.out.println("⚠️ Error de JSON: " + e.getMessage());
+        }
+
+        // 🔁 CDC: los setters de Persona se replican a través de un fichero mapeado en memoria
+        // ? Aquí el seguidor es un hilo; en producción es otra JVM con --seguidor <fichero>
+        try {
+            Path ficheroCambios = Files.createTempFile("cambios-personas", ".anillo");
+            PublicadorCambios publicador = new PublicadorCambios(ficheroCambios, 1 << 20);
+            SeguidorCambios seguidor = new SeguidorCambios(ficheroCambios);
+            Thread hiloSeguidor = new Thread(seguidor::seguir, "seguidor-cambios");
+            hiloSeguidor.start();
+            publicador.publicarAlta(est);
+            publicador.publicarAlta(prof);
+            // ! El retraso de microsegundos exige que el seguidor tenga un núcleo propio:
+            // ! con una sola CPU ambos hilos se turnan y se mide el reparto del planificador
+            for (int i = 0; i < 20_000; i++) {
+                est.setEdad(20 + i % 10);
+                prof.setNombre("María " + (i % 7));
+            }
+            // ! Si el seguidor muere (p. ej. por desbordamiento) no hay que esperarle para siempre
+            while (seguidor.getSecuencia() < publicador.getSecuencia() && hiloSeguidor.isAlive()) Thread.onSpinWait();
+            if (seguidor.getSecuencia() < publicador.getSecuencia()) {
+                System.out.println("⚠️ El seguidor se detuvo en la secuencia " + seguidor.getSecuencia()
+                        + " de " + publicador.getSecuencia());
+            }
+            seguidor.detener();
+            hiloSeguidor.join();
+            publicador.cerrar();
+            HistogramaLatencias retraso = seguidor.getRetraso();
+            System.out.println("\n🔁 Réplica: " + seguidor.get(est.getId()) + " / " + seguidor.get(prof.getId()));
+            System.out.printf(Locale.ROOT, "🔁 %d eventos en %d lotes, retraso p50=%.1fµs p99=%.1fµs%n",
+                    seguidor.getSecuencia(), seguidor.getLotes(), retraso.percentil(50) / 1000.0, retraso.percentil(99) / 1000.0);
+            Files.delete(ficheroCambios);
+        } catch (IOException e) {
+            System.out.println("⚠️ No se pudo crear el anillo de cambios: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        // 🧩 Almacén fragmentado por id con hash consistente (4 fragmentos × 128 nodos virtuales)
+        int n = 20_000;
+        String[] nombres = new String[n];
+        int[] edades = new int[n];
+        Rol[] roles = new Rol[n];
+        for (int i = 0; i < n; i++) {
+            nombres[i] = "Persona" + (i % 100);
+            edades[i] = 18 + i % 50;
+            roles[i] = Rol.values()[i % 3];
+        }
+        AlmacenPersonasFragmentado almacen = new AlmacenPersonasFragmentado(4, 128);
+        Persona[] poblacion = Persona.crearEnLote(nombres, edades, roles);
+        for (Persona p : poblacion) almacen.put(p);
+        System.out.println("\n🧩 Reparto inicial: " + almacen.reparto());
+        // ? Añadir un fragmento mueve ~1/5 de las personas; quitar otro reparte solo las suyas
+        System.out.println("🧩 Movidas al añadir fragmento-4: " + almacen.agregarFragmento("fragmento-4") + " → " + almacen.reparto());
+        System.out.println("🧩 Movidas al quitar fragmento-1: " + almacen.eliminarFragmento("fragmento-1") + " → " + almacen.reparto());
+        try {
+            System.out.println("🧩 Administradores de 60 años o más (escaneo en paralelo): "
+                    + almacen.filtrar(p -> p.getRol() == Rol.ADMIN && p.getEdad() >= 60).size());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        System.out.println("🧩 " + poblacion[12345].getId() + " está en " + almacen.fragmentoDe(poblacion[12345].getId())
+                + ": " + almacen.get(poblacion[12345].getId()));
+        almacen.cerrar();
+
+        // 🔎 Consultas con planificador: índices de rol, edad y nombre + filtro compilado
+        CatalogoPersonas catalogo = new CatalogoPersonas();
+        for (Persona p : poblacion) catalogo.agregar(p);
+        ConsultaPersonas consulta = catalogo.consulta()
+                .donde(ConsultaPersonas.EDAD).entre(18, 25)
+                .y(ConsultaPersonas.ROL).igual(Rol.ALUMNO)
+                .y(ConsultaPersonas.NOMBRE).contiene("Persona1");
+        System.out.println("\n🔎 Plan: " + consulta.explicar());
+        System.out.println("🔎 Resultados: " + consulta.ejecutar().size());
+        ConsultaPersonas porNombre = catalogo.consulta().donde(ConsultaPersonas.NOMBRE).igual("Persona42");
+        System.out.println("🔎 Plan: " + porNombre.explicar() + " → " + porNombre.ejecutar().size());
+        catalogo.cerrar();
+
+        // 🐾 Simulación por ticks: primero una manada pequeña con las acciones reales
+        // ? Un solo hilo para que la salida por consola salga en orden
+        List<Animal> granja = List.of(new Perro("Toby"), new Gato("Misi"), new Ave("Piolín"), new Pez("Nemo"));
+        SimulacionAnimales.AccionTick accionReal = (animal, tick) -> {
+            animal.hacerSonido();
+            if (animal instanceof Volador volador) volador.volar();
+            if (animal instanceof Nadador nadador) nadador.nadar();
+        };
+        System.out.println();
+        try (SimulacionAnimales simulacion = new SimulacionAnimales(granja, 2, 1, accionReal)) {
+            System.out.println("🐾 " + simulacion.ejecutar(2, 0));
+        }
+
+        // ? Un millón de animales repartidos entre todos los núcleos: --rendimiento-animales
+
+        System.out.println("\n✅ Demostración completa finalizada.");
+
+        // ! Nota pedagógica:
+        // Si compilas TODOS los archivos de la carpeta a la vez, podrían existir
+        // colisiones de nombres (Animal, Perro, Gato) con otras unidades UT5.
+        // ▶ Recomendación: compila/ejecuta cada archivo de forma independiente.
+    }
+
+    // * Bytes reservados por persona: Builder frente a crearEnLote (3 rondas: vale la última, con el JIT caliente)
+    private static void medirAsignacionesLote(int n) {
+        String[] nombres = new String[n];
+        int[] edades = new int[n];
+        Rol[] roles = new Rol[n];
+        for (int i = 0; i < n; i++) {
+            nombres[i] = "Persona" + (i % 100);
+            edades[i] = 18 + i % 50;
+            roles[i] = Rol.values()[i % 3];
+        }
+        for (int ronda = 0; ronda < 3; ronda++) {
+            long antes = bytesReservados();
+            Persona[] conBuilder = new Persona[n];
+            for (int i = 0; i < n; i++) {
+                conBuilder[i] = new Persona.Builder().nombre(nombres[i]).edad(edades[i]).rol(roles[i]).build();
+            }
+            long builder = bytesReservados() - antes;
+            antes = bytesReservados();
+            Persona[] enLote = Persona.crearEnLote(nombres, edades, roles);
+            long lote = bytesReservados() - antes;
+            if (ronda == 2 && builder > 0) {
+                System.out.println("🏭 Bytes/persona → Builder: " + builder / n + ", lote: " + lote / n
+                        + " (" + enLote.length + " personas)");
+            }
+        }
+    }
+
+    // * Simula 'n' animales por tick repartidos en trozos entre todos los núcleos (5 ticks de calentamiento)
+    private static void medirSimulacionAnimales(int n) {
+        List<Animal> manada = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            switch (i % 4) {
+                case 0: manada.add(new Perro("Perro" + i)); break;
+                case 1: manada.add(new Gato("Gato" + i)); break;
+                case 2: manada.add(new Ave("Ave" + i)); break;
+                default: manada.add(new Pez("Pez" + i)); break;
+            }
+        }
+        // ? hacerSonido/volar/nadar imprimen por consola: aquí cada acción solo se cuenta
+        LongAdder sonidos = new LongAdder();
+        LongAdder vuelos = new LongAdder();
+        LongAdder nados = new LongAdder();
+        SimulacionAnimales.AccionTick accion = (animal, tick) -> {
+            sonidos.increment();
+            if (animal instanceof Volador) vuelos.increment();
+            else if (animal instanceof Nadador) nados.increment();
+        };
+        try (SimulacionAnimales simulacion = new SimulacionAnimales(manada, 4096, Runtime.getRuntime().availableProcessors(), accion)) {
+            simulacion.ejecutar(5, 0);  // calentamiento
+            SimulacionAnimales.Informe informe = simulacion.ejecutar(20, 100_000_000L);  // 10 ticks/s
+            System.out.println("\n🐾 " + informe);
+            System.out.println("🐾 Tras " + simulacion.getTick() + " ticks: " + sonidos.sum() + " sonidos, "
+                    + vuelos.sum() + " vuelos, " + nados.sum() + " nados");
+        }
+    }
+
+    // * Escribe y lee 'n' personas en JSON (3 rondas: la última, con el JIT ya caliente, es la que cuenta)
+    // ? El JSON no se construye como String en ningún momento
+    private static void medirRendimientoJson(int n) {
+        String[] nombres = new String[n];
+        int[] edades = new int[n];
+        Rol[] roles = new Rol[n];
+        for (int i = 0; i < n; i++) {
+            nombres[i] = "Persona" + (i % 100);
+            edades[i] = 18 + i % 50;
+            roles[i] = Rol.values()[i % 3];
+        }
+        List<Persona> muchas = Arrays.asList(Persona.crearEnLote(nombres, edades, roles));
+        CodecPersona codec = new CodecPersona();
+        ByteArrayOutputStream json = new ByteArrayOutputStream();
+        try {
+            for (int ronda = 0; ronda < 3; ronda++) {
+                json.reset();
+                long t0 = System.nanoTime();
+                codec.escribirTodos(muchas, new EscritorJson(Channels.newChannel(json), 64 * 1024));
+                long t1 = System.nanoTime();
+                long leidos = codec.leerTodos(new LectorJson(Channels.newChannel(new ByteArrayInputStream(json.toByteArray())), 64 * 1024), p -> { });
+                long t2 = System.nanoTime();
+                if (ronda == 2) {
+                    double mb = json.size() / 1e6;
+                    System.out.printf(Locale.ROOT, "🔤 %d personas, %.1f MB → escritura %.0f MB/s, lectura %.0f MB/s%n",
+                            leidos, mb, mb / ((t1 - t0) / 1e9), mb / ((t2 - t1) / 1e9));
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("⚠️ Error de JSON: " + e.getMessage());
+        }
+    }
+
+    // * Proceso seguidor: aplica los cambios del anillo e informa cada segundo (Ctrl+C para salir)
+    private static void ejecutarSeguidor(Path fichero) {
+        try {
+            SeguidorCambios seguidor = new SeguidorCambios(fichero);
+            Thread hilo = new Thread(seguidor::seguir, "seguidor-cambios");
+            hilo.setDaemon(true);
+            hilo.start();
+            while (hilo.isAlive()) {
+                Thread.sleep(1000);
+                System.out.printf(Locale.ROOT, "🔁 secuencia=%d personas=%d lotes=%d retraso p99=%.1fµs%n", seguidor.getSecuencia(),
+                        seguidor.size(), seguidor.getLotes(), seguidor.getRetraso().percentil(99) / 1000.0);
+            }
+        } catch (IOException e) {
+            System.out.println("⚠️ No se pudo abrir el anillo: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // ? Bytes reservados por el hilo actual (-1 si la JVM no lo permite)
+    private static long bytesReservados() {
+        java.lang.management.ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+        if (mx instanceof com.sun.management.ThreadMXBean sun) {
+            return sun.getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
     }
 }
 
@@ -76,7 +76,9 @@
  * ```
  */
 
-import java.util.ArrayList; 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
 
 // * 📖 EJEMPLO DE HERENCIA EN JAVA
 // ────────────────────────────────────────────────────────────
@@ -128,14 +130,86 @@ interface Vehiculo {
 
 // ? Clase que implementa la interfaz
 class Coche implements Vehiculo {
+    static final int ACELERACION = 10;  // km/h que suma acelerar()
+    static final int FRENADA = 5;       // km/h que resta frenar()
+
+    private int velocidad;
+
+    public int getVelocidad() {
+        return velocidad;
+    }
+
+    // ! La velocidad nunca es negativa: se corrige a 0
+    public void setVelocidad(int velocidad) {
+        this.velocidad = Math.max(0, velocidad);
+    }
+
     @Override
     public void acelerar() {
-        System.out.println("El coche acelera.");
+        setVelocidad(velocidad + ACELERACION);
+        System.out.println("El coche acelera: " + velocidad + " km/h.");
     }
 
     @Override
     public void frenar() {
-        System.out.println("El coche frena.");
+        setVelocidad(velocidad - FRENADA);
+        System.out.println("El coche frena: " + velocidad + " km/h.");
+    }
+}
+
+// * 📖 FLOTA DE COCHES EN ARRAYS PRIMITIVOS
+// ────────────────────────────────────────────────────────────
+// ? Millones de coches sin un objeto por coche: las velocidades van en un int[] y las
+// ? órdenes de cada paso en un byte[] que guarda directamente el cambio de velocidad
+// ? (+ACELERACION, -FRENADA o 0). Así el paso es un bucle sin saltos,
+// ?     v[i] = max(0, v[i] + orden[i])
+// ? que el compilador JIT convierte en instrucciones SIMD (varios coches por instrucción).
+// ? Mismo resultado que Coche: v ≥ 0 siempre, así que max(0, v + 10) = v + 10 y
+// ? max(0, v - 5) es el recorte a 0 de frenar(); incluso el desbordamiento de int acaba en 0.
+class FlotaCoches {
+    private static final byte ORDEN_ACELERAR = (byte) Coche.ACELERACION;
+    private static final byte ORDEN_FRENAR = (byte) -Coche.FRENADA;
+
+    private final int[] velocidades;
+    private final byte[] ordenes;
+
+    public FlotaCoches(int coches) {
+        velocidades = new int[coches];
+        ordenes = new byte[coches];
+    }
+
+    public int tamano() { return velocidades.length; }
+
+    public int getVelocidad(int coche) { return velocidades[coche]; }
+
+    // * Órdenes del próximo paso (un coche sin orden mantiene su velocidad)
+    public void ordenarAcelerar(int coche) { ordenes[coche] = ORDEN_ACELERAR; }
+    public void ordenarFrenar(int coche) { ordenes[coche] = ORDEN_FRENAR; }
+
+    // ? Aplica las órdenes pendientes a toda la flota y las borra
+    public void aplicarOrdenes() {
+        int[] v = velocidades;
+        byte[] o = ordenes;
+        for (int i = 0; i < v.length; i++) {
+            v[i] = Math.max(0, v[i] + o[i]);
+        }
+        Arrays.fill(o, (byte) 0);
+    }
+
+    public void acelerarTodos() {
+        int[] v = velocidades;
+        for (int i = 0; i < v.length; i++) v[i] = Math.max(0, v[i] + Coche.ACELERACION);
+    }
+
+    public void frenarTodos() {
+        int[] v = velocidades;
+        for (int i = 0; i < v.length; i++) v[i] = Math.max(0, v[i] - Coche.FRENADA);
+    }
+
+    public long velocidadTotal() {
+        long total = 0;
+        for (int velocidad : velocidades) total += velocidad;
+        return total;
     }
 }
 
@@ -144,6 +218,12 @@ class Coche implements Vehiculo {
 // ? Creamos una lista de animales y ejecutamos su método `hacerSonido()`
 public class UT5_HerenciaPolimorfismoInterfaces {
     public static void main(String[] args) {
+        // ? Rendimiento con un millón de coches: java UT5_HerenciaPolimorfismoInterfaces --rendimiento-flota
+        if (args.length == 1 && args[0].equals("--rendimiento-flota")) {
+            medirFlota(1_000_000, 100);
+            return;
+        }
+
         // Lista de animales
         ArrayList<Animal> animales = new ArrayList<>();
         animales.add(new Perro("Rex"));
@@ -159,10 +239,60 @@ public class UT5_HerenciaPolimorfismoInterfaces {
         Coche miCoche = new Coche();
         miCoche.acelerar();
         miCoche.frenar();
+        miCoche.frenar();  // ! No baja de 0
+
+        // 🚗 Flota: las mismas reglas que Coche, comprobadas coche a coche con 1.000 coches
+        // ? Rendimiento con un millón de coches: --rendimiento-flota
+        FlotaCoches flota = new FlotaCoches(1_000);
+        Coche[] coches = new Coche[flota.tamano()];
+        for (int c = 0; c < coches.length; c++) coches[c] = new Coche();
+        Random azar = new Random(42);
+        int recortes = 0;
+        for (int paso = 0; paso < 100; paso++) {
+            for (int c = 0; c < flota.tamano(); c++) {
+                int orden = azar.nextInt(3);
+                // ? Mismo cálculo que acelerar()/frenar(), sin imprimir cada cambio
+                if (orden == 1) {
+                    flota.ordenarAcelerar(c);
+                    coches[c].setVelocidad(coches[c].getVelocidad() + Coche.ACELERACION);
+                } else if (orden == 2) {
+                    flota.ordenarFrenar(c);
+                    if (coches[c].getVelocidad() < Coche.FRENADA) recortes++;
+                    coches[c].setVelocidad(coches[c].getVelocidad() - Coche.FRENADA);
+                }
+            }
+            flota.aplicarOrdenes();
+        }
+        int distintos = 0;
+        for (int c = 0; c < coches.length; c++) {
+            if (flota.getVelocidad(c) != coches[c].getVelocidad()) distintos++;
+        }
+        System.out.println("🚗 100 pasos de " + flota.tamano() + " coches: " + recortes + " frenadas recortadas a 0, "
+                + distintos + " coches distintos de Coche, velocidad media " + flota.velocidadTotal() / flota.tamano() + " km/h");
 
         // ! ✅ TAREA PARA EL ALUMNO:
         // * 1️⃣ Crea una clase `Ave` que herede de `Animal` y sobrescriba el método `hacerSonido()`.
         // * 2️⃣ Crea una interfaz `Nadador` con el método `nadar()`, e impleméntala en una clase `Pez`.
         // * 3️⃣ Agrega un nuevo método en `Vehiculo` llamado `repostar()` y modifícalo en `Coche`.
     }
+
+    // * Aplica 'pasos' rondas de órdenes aleatorias a 'coches' coches y mide solo aplicarOrdenes()
+    private static void medirFlota(int coches, int pasos) {
+        FlotaCoches flota = new FlotaCoches(coches);
+        Random azar = new Random(42);
+        long nanosAplicando = 0;
+        for (int paso = 0; paso < pasos; paso++) {
+            for (int c = 0; c < flota.tamano(); c++) {
+                int orden = azar.nextInt(3);
+                if (orden == 1) flota.ordenarAcelerar(c);
+                else if (orden == 2) flota.ordenarFrenar(c);
+            }
+            long inicio = System.nanoTime();
+            flota.aplicarOrdenes();
+            nanosAplicando += System.nanoTime() - inicio;
+        }
+        flota.frenarTodos();
+        System.out.printf("🚗 %d pasos de %d coches: %.2f ms por paso, velocidad media %d km/h%n", pasos, flota.tamano(),
+                nanosAplicando / pasos / 1e6, flota.velocidadTotal() / flota.tamano());
+    }
 }